@@ -0,0 +1,234 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+
+/**
+ * Generates the schemas and documents the benchmarks run against into a
+ * temporary directory.  There are two schema sets: "simple", a single XSD,
+ * and "imported", where the record types come through a chain of xs:imports
+ * @author Geoff Williams
+ */
+public class Corpus {
+    public static final String NAMESPACE = "urn:jxmlvalidator:benchmark";
+    public static final String SIMPLE = "simple";
+    public static final String IMPORTED = "imported";
+    public static final int IMPORT_DEPTH = 8;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final File directory;
+
+    public Corpus() throws IOException {
+        directory = Files.createTempDirectory("jxmlvalidator-benchmark").toFile();
+        writeSchemas();
+    }
+
+    /**
+     * Validator logs every result - keep that out of the measurements
+     */
+    public static void quietLogging() {
+        LogManager.getRootLogger().setLevel(Level.OFF);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public void delete() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private void writeSchemas() throws IOException {
+        write("simple.xsd", schema("xs:decimal", ""));
+
+        // imported.xsd -> level1.xsd -> ... -> levelN.xsd, each level
+        // restricting the amount type of the next
+        String levelNs = NAMESPACE + ":level1";
+        write("imported.xsd", schema("l:Amount",
+                "    <xs:import namespace=\"" + levelNs + "\" schemaLocation=\"level1.xsd\"/>\n").replace(
+                "<xs:schema ", "<xs:schema xmlns:l=\"" + levelNs + "\" "));
+        for (int i = 1; i <= IMPORT_DEPTH; i++) {
+            String ns = NAMESPACE + ":level" + i;
+            String nextNs = NAMESPACE + ":level" + (i + 1);
+            StringBuilder sb = new StringBuilder();
+            sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            sb.append("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" targetNamespace=\"").append(ns);
+            sb.append("\" xmlns:n=\"").append(nextNs).append("\">\n");
+            String base = "xs:decimal";
+            if (i < IMPORT_DEPTH) {
+                sb.append("    <xs:import namespace=\"").append(nextNs).append("\" schemaLocation=\"level");
+                sb.append(i + 1).append(".xsd\"/>\n");
+                base = "n:Amount";
+            }
+            sb.append("    <xs:simpleType name=\"Amount\">\n");
+            sb.append("        <xs:restriction base=\"").append(base).append("\">\n");
+            sb.append("            <xs:minInclusive value=\"-").append(1000000000 - (IMPORT_DEPTH - i)).append("\"/>\n");
+            sb.append("        </xs:restriction>\n");
+            sb.append("    </xs:simpleType>\n");
+            sb.append("</xs:schema>\n");
+            write("level" + i + ".xsd", sb.toString());
+        }
+    }
+
+    private String schema(String amountType, String imports) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" targetNamespace=\"" + NAMESPACE + "\"\n" +
+                "           xmlns=\"" + NAMESPACE + "\" elementFormDefault=\"qualified\">\n" +
+                imports +
+                "    <xs:element name=\"records\">\n" +
+                "        <xs:complexType>\n" +
+                "            <xs:sequence>\n" +
+                "                <xs:element name=\"record\" minOccurs=\"0\" maxOccurs=\"unbounded\">\n" +
+                "                    <xs:complexType>\n" +
+                "                        <xs:sequence>\n" +
+                "                            <xs:element name=\"name\" type=\"xs:string\"/>\n" +
+                "                            <xs:element name=\"amount\" type=\"" + amountType + "\"/>\n" +
+                "                            <xs:element name=\"date\" type=\"xs:date\"/>\n" +
+                "                        </xs:sequence>\n" +
+                "                        <xs:attribute name=\"id\" type=\"xs:int\" use=\"required\"/>\n" +
+                "                    </xs:complexType>\n" +
+                "                </xs:element>\n" +
+                "            </xs:sequence>\n" +
+                "        </xs:complexType>\n" +
+                "    </xs:element>\n" +
+                "</xs:schema>\n";
+    }
+
+    private void write(String name, String content) throws IOException {
+        FileUtils.writeStringToFile(new File(directory, name), content, "UTF-8");
+    }
+
+    /**
+     * Get (generating if needed) a document
+     * @param schema SIMPLE or IMPORTED
+     * @param records number of records
+     * @param errors true for a document where every record is invalid
+     */
+    public File document(String schema, int records, boolean errors) throws IOException {
+        File file = new File(directory, schema + "-" + records + (errors ? "-errors" : "-valid") + ".xml");
+        if (! file.exists()) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8));
+            try {
+                writer.write(header(schema));
+                for (int i = 0; i < records; i++) {
+                    writer.write(record(i, errors));
+                }
+                writer.write(footer());
+            } finally {
+                writer.close();
+            }
+        }
+        return file;
+    }
+
+    public static String header(String schema) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<records xmlns=\"" + NAMESPACE + "\"\n" +
+                "         xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" +
+                "         xsi:schemaLocation=\"" + NAMESPACE + " " + schema + ".xsd\">\n";
+    }
+
+    public static String footer() {
+        return "</records>\n";
+    }
+
+    public static String record(int i, boolean errors) {
+        if (errors) {
+            return "    <record id=\"r" + i + "\">\n" +
+                    "        <name>Record " + i + "</name>\n" +
+                    "        <amount>" + i + " pounds</amount>\n" +
+                    "        <date>31/12/2013</date>\n" +
+                    "    </record>\n";
+        } else {
+            return "    <record id=\"" + i + "\">\n" +
+                    "        <name>Record " + i + "</name>\n" +
+                    "        <amount>" + i + ".50</amount>\n" +
+                    "        <date>2013-12-31</date>\n" +
+                    "    </record>\n";
+        }
+    }
+
+    /**
+     * A valid document of (roughly) the given size generated on the fly, so
+     * multi-GB inputs can be validated without needing the disk space
+     */
+    public static class GeneratedDocument extends InputStream {
+        private final long targetBytes;
+        private long produced = 0;
+        private int record = 0;
+        private byte[] chunk;
+        private int position = 0;
+        private boolean finished = false;
+
+        public GeneratedDocument(String schema, long targetBytes) {
+            this.targetBytes = targetBytes;
+            this.chunk = header(schema).getBytes(UTF8);
+        }
+
+        private boolean fill() {
+            if (position < chunk.length) {
+                return true;
+            }
+            if (finished) {
+                return false;
+            }
+            if (produced >= targetBytes) {
+                chunk = footer().getBytes(UTF8);
+                finished = true;
+            } else {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < 64; i++) {
+                    sb.append(record(record++, false));
+                }
+                chunk = sb.toString().getBytes(UTF8);
+            }
+            produced += chunk.length;
+            position = 0;
+            return true;
+        }
+
+        @Override
+        public int read() {
+            return fill() ? chunk[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (! fill()) {
+                return -1;
+            }
+            int count = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, count);
+            position += count;
+            return count;
+        }
+    }
+}
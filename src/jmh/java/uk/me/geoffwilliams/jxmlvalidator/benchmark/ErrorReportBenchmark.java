@@ -0,0 +1,85 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import uk.me.geoffwilliams.jxmlvalidator.ErrorReport;
+
+/**
+ * Cost of accumulating and formatting validation errors, as produced by an
+ * error-heavy document (a few messages repeated on many lines)
+ * @author Geoff Williams
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ErrorReportBenchmark {
+    private static final String[] MESSAGES = {
+        "cvc-datatype-valid.1.2.1: 'r1' is not a valid value for 'integer'.",
+        "cvc-attribute.3: The value 'r1' of attribute 'id' on element 'record' is not valid with respect to its type, 'int'.",
+        "cvc-complex-type.2.4.a: Invalid content was found starting with element 'body'. One of '{to}' is expected.",
+    };
+
+    @Param({"1000", "100000"})
+    public int count;
+
+    private SAXParseException[] exceptions;
+    private ErrorReport populated;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SAXException {
+        exceptions = new SAXParseException[count];
+        for (int i = 0; i < count; i++) {
+            exceptions[i] = new SAXParseException(MESSAGES[i % MESSAGES.length], null, 
+                    "file:/data/feed.xml", i * 5 + 2, 17);
+        }
+        populated = accumulate();
+    }
+
+    @Benchmark
+    public ErrorReport accumulate() throws SAXException {
+        ErrorReport errorReport = new ErrorReport();
+        for (SAXParseException exception : exceptions) {
+            errorReport.error(exception);
+        }
+        return errorReport;
+    }
+
+    @Benchmark
+    public String format() {
+        return populated.toString();
+    }
+}
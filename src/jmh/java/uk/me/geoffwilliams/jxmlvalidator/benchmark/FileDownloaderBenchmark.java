@@ -0,0 +1,149 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.me.geoffwilliams.jxmlvalidator.DownloadCache;
+import uk.me.geoffwilliams.jxmlvalidator.FileDownloader;
+import uk.me.geoffwilliams.jxmlvalidator.Validator;
+
+/**
+ * Fetching and validating documents from a local HTTP server
+ * @author Geoff Williams
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileDownloaderBenchmark {
+    private static final String ETAG = "\"benchmark\"";
+
+    @Param({"10", "20000"})
+    public int records;
+
+    private Corpus corpus;
+    private HttpServer server;
+    private String url;
+    private File cacheDir;
+    private DownloadCache downloadCache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Corpus.quietLogging();
+        corpus = new Corpus();
+        final File document = corpus.document(Corpus.SIMPLE, records, false);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                File file = new File(corpus.getDirectory(), exchange.getRequestURI().getPath().substring(1));
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                } else if (file.isFile()) {
+                    exchange.sendResponseHeaders(200, file.length());
+                    OutputStream os = exchange.getResponseBody();
+                    Files.copy(file.toPath(), os);
+                    os.close();
+                } else {
+                    exchange.sendResponseHeaders(404, -1);
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/" + document.getName();
+        cacheDir = Files.createTempDirectory("jxmlvalidator-benchmark-cache").toFile();
+        downloadCache = new DownloadCache(cacheDir, DownloadCache.DEFAULT_MAX_BYTES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.stop(0);
+        corpus.delete();
+        FileUtils.deleteDirectory(cacheDir);
+    }
+
+    private long drain(InputStream is) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        try {
+            int count;
+            while ((count = is.read(buffer)) != -1) {
+                total += count;
+            }
+        } finally {
+            is.close();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public String downloadFile() throws IOException {
+        String filename = new FileDownloader().downloadFile(url);
+        new File(filename).delete();
+        return filename;
+    }
+
+    @Benchmark
+    public long openStream() throws IOException {
+        return drain(new FileDownloader().openStream(url));
+    }
+
+    @Benchmark
+    public long openStreamNotModified() throws IOException {
+        return drain(new FileDownloader(downloadCache).openStream(url));
+    }
+
+    @Benchmark
+    public int validateUrl() {
+        return new Validator().validate(url);
+    }
+
+    @Benchmark
+    public int validateUrlDownloadFirst() {
+        Validator validator = new Validator();
+        validator.setDownloadFirst(true);
+        return validator.validate(url);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.me.geoffwilliams.jxmlvalidator.Validator;
+
+/**
+ * Validation of very large documents generated on the fly, so multi-GB sizes
+ * need no disk space.  Run with eg -p bytes=4294967296 for a 4GB document;
+ * the small heap makes any regression to buffering the document show up as
+ * an OutOfMemoryError
+ * @author Geoff Williams
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx64m")
+public class StreamingBenchmark {
+
+    @Param({"268435456"})
+    public long bytes;
+
+    @Param({Corpus.SIMPLE, Corpus.IMPORTED})
+    public String schema;
+
+    private Corpus corpus;
+    private String systemId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Corpus.quietLogging();
+        corpus = new Corpus();
+        // the generated stream's relative schema location resolves here
+        systemId = new File(corpus.getDirectory(), "generated.xml").toURI().toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        corpus.delete();
+    }
+
+    @Benchmark
+    public int validateStream() {
+        return new Validator().validate(new Corpus.GeneratedDocument(schema, bytes), systemId);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.me.geoffwilliams.jxmlvalidator.Validator;
+
+/**
+ * Throughput and latency of Validator.validate() on local files
+ * @author Geoff Williams
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidatorBenchmark {
+    private static final int SMALL = 10;
+    private static final int MEDIUM = 20000;
+
+    @Param({"small", "medium"})
+    public String size;
+
+    @Param({Corpus.SIMPLE, Corpus.IMPORTED})
+    public String schema;
+
+    @Param({"valid", "errors"})
+    public String content;
+
+    private Corpus corpus;
+    private String document;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Corpus.quietLogging();
+        corpus = new Corpus();
+        File file = corpus.document(schema, "small".equals(size) ? SMALL : MEDIUM, "errors".equals(content));
+        document = file.getAbsolutePath();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        corpus.delete();
+    }
+
+    @Benchmark
+    public int validate() {
+        return new Validator().validate(document);
+    }
+
+    @Benchmark
+    public int validateDom() {
+        Validator validator = new Validator();
+        validator.setStreaming(false);
+        return validator.validate(document);
+    }
+}
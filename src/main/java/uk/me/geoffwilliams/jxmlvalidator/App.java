@@ -18,19 +18,28 @@
  */
 package uk.me.geoffwilliams.jxmlvalidator;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
-import javax.swing.JFrame;
-import javax.swing.SwingUtilities;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.GnuParser;
 import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.apache.log4j.ConsoleAppender;
 import org.apache.log4j.Level;
 import org.apache.log4j.LogManager;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
+import org.xml.sax.SAXException;
 
 /**
  * Main entry point for program, parsing command line arguments, etc
@@ -43,12 +52,43 @@ public class App {
     public static final int STATUS_ERRORS = 2;
     public static final int STATUS_FATAL = 3;
     public static final int STATUS_GUI_MODE = 200;
+    public static final int STATUS_SERVE_MODE = 201;
     public static final int STATUS_EXCEPTION = 255;
     
     private static Logger logger = LoggerFactory.getLogger(App.class);
     private static final String CMD_OPTION_QUIET = "quiet";
     private static final String CMD_OPTION_VERBOSE = "verbose";
     private static final String CMD_OPTION_CONSOLE = "console";
+    private static final String CMD_OPTION_DOM = "dom";
+    private static final String CMD_OPTION_SPLIT_ELEMENT = "split-element";
+    private static final String CMD_OPTION_WELLFORMED_ONLY = "wellformed-only";
+    private static final String CMD_OPTION_THREADS = "threads";
+    private static final String CMD_OPTION_CATALOG = "catalog";
+    private static final String CMD_OPTION_SCHEMA_CACHE = "schema-cache";
+    private static final String CMD_OPTION_OFFLINE = "offline";
+    private static final String CMD_OPTION_SERVE = "serve";
+    private static final String CMD_OPTION_SERVE_QUEUE = "serve-queue";
+    private static final String CMD_OPTION_SERVE_ALLOW_URI = "serve-allow-uri";
+    private static final String CMD_OPTION_WATCH = "watch";
+    private static final String CMD_OPTION_WATCH_DEBOUNCE = "watch-debounce";
+    private static final String CMD_OPTION_DOWNLOAD = "download";
+    private static final String CMD_OPTION_DOWNLOAD_CACHE = "download-cache";
+    private static final String CMD_OPTION_DOWNLOAD_CACHE_SIZE = "download-cache-size";
+    private static final String CMD_OPTION_MAX_ERRORS = "max-errors";
+    private static final String CMD_OPTION_FAIL_FAST = "fail-fast";
+    private static final String CMD_OPTION_FORMAT = "format";
+    private static final String CMD_OPTION_OUTPUT = "output";
+    private static final String CMD_OPTION_INDEX = "index";
+    private static final String CMD_OPTION_FORCE = "force";
+    private static final String CMD_OPTION_COMPACT_INDEX = "compact-index";
+    private static final String CMD_OPTION_TIMINGS = "timings";
+    private static final String CMD_OPTION_TIMINGS_JSON = "timings-json";
+    private static final String LIST_FILE_PREFIX = "@";
+    private static final String FORMAT_JSON_LINES = "jsonl";
+    private static final String FORMAT_JUNIT = "junit";
+    private static final String FORMAT_SARIF = "sarif";
+    private static final String STANDARD_OUTPUT = "-";
+    private static final long MEGABYTE = 1024 * 1024;
 
     
     public Options createOptions() {
@@ -63,10 +103,107 @@ public class App {
         
         // -nogui
         options.addOption(CMD_OPTION_CONSOLE, false, "disable the GUI and only run on the console");
+
+        // -dom
+        options.addOption(CMD_OPTION_DOM, false, "build a DOM while validating instead of streaming (uses much more memory)");
+
+        // -split-element
+        options.addOption(longOption(CMD_OPTION_SPLIT_ELEMENT, true, "validate each NAME element (or {namespace}NAME) " + 
+                "of a large document separately, -threads at a time.  NAME must be declared globally in the schema; " + 
+                "keys and IDs are not checked across the parts"));
+
+        // -wellformed-only
+        options.addOption(longOption(CMD_OPTION_WELLFORMED_ONLY, false, "only check documents are well-formed XML, " + 
+                "without loading schemas, DTDs or external entities"));
+
+        // -download
+        options.addOption(CMD_OPTION_DOWNLOAD, false, "download URLs to a temporary file before validating instead of streaming them");
+
+        // -download-cache
+        options.addOption(longOption(CMD_OPTION_DOWNLOAD_CACHE, true, "directory to cache downloaded URLs in, revalidated with conditional GETs"));
+
+        // -download-cache-size
+        options.addOption(longOption(CMD_OPTION_DOWNLOAD_CACHE_SIZE, true, "size cap for the download cache in MB (default: " + 
+                DownloadCache.DEFAULT_MAX_BYTES / MEGABYTE + ")"));
+
+        // -catalog
+        options.addOption(CMD_OPTION_CATALOG, true, "OASIS XML catalog mapping remote schemas to local files (may be repeated)");
+
+        // -schema-cache
+        options.addOption(longOption(CMD_OPTION_SCHEMA_CACHE, true, "directory to keep fetched schemas in and reuse " + 
+                "on later runs.  Cached schemas are never refetched; delete the directory to refresh them"));
+
+        // -offline
+        options.addOption(CMD_OPTION_OFFLINE, false, "never fetch schemas from the network, only use the catalog and schema cache");
+
+        // -threads
+        options.addOption(CMD_OPTION_THREADS, true, "number of documents, files in an archive or " + 
+                "-split-element parts to validate in parallel (default: number of cores)");
+
+        // -serve
+        options.addOption(CMD_OPTION_SERVE, true, "keep running and validate documents sent to http://localhost:PORT/validate");
+
+        // -serve-queue
+        options.addOption(longOption(CMD_OPTION_SERVE_QUEUE, true, "number of requests allowed to wait for a worker before " + 
+                "the server answers 503 (default: " + ValidationServer.DEFAULT_QUEUE_DEPTH + ")"));
+
+        // -serve-allow-uri
+        options.addOption(longOption(CMD_OPTION_SERVE_ALLOW_URI, false, "let -serve requests name a file or URL to " + 
+                "validate (?uri=) or a base for schema locations (?systemId=).  Any local client can then read " + 
+                "whatever the server can"));
+
+        // -watch
+        options.addOption(CMD_OPTION_WATCH, true, "keep running, validating *.xml files in DIR and its subdirectories " + 
+                "as they change and reporting only changed results");
+
+        // -watch-debounce
+        options.addOption(longOption(CMD_OPTION_WATCH_DEBOUNCE, true, "milliseconds a file must be left alone before " + 
+                "it is validated (default: " + DirectoryWatcher.DEFAULT_DEBOUNCE_MILLIS + ")"));
+
+        // -max-errors
+        options.addOption(longOption(CMD_OPTION_MAX_ERRORS, true, "stop validating a document after this many errors " + 
+                "and keep at most this many messages of each kind"));
+
+        // -fail-fast
+        options.addOption(longOption(CMD_OPTION_FAIL_FAST, false, "stop validating a document at its first error"));
+
+        // -format
+        options.addOption(CMD_OPTION_FORMAT, true, "also write a machine readable report as each document is validated: " + 
+                FORMAT_JSON_LINES + ", " + FORMAT_JUNIT + " or " + FORMAT_SARIF);
+
+        // -output
+        options.addOption(CMD_OPTION_OUTPUT, true, "file to write the -format report to (default: standard output, " + 
+                "with log messages moved to standard error)");
+
+        // -index
+        options.addOption(CMD_OPTION_INDEX, true, "file to keep results in so later runs skip local files that have " + 
+                "not changed and whose schemas have not changed");
+
+        // -force
+        options.addOption(CMD_OPTION_FORCE, false, "validate everything again, ignoring (but updating) the -index");
+
+        // -compact-index
+        options.addOption(longOption(CMD_OPTION_COMPACT_INDEX, false, "rewrite the -index without superseded " + 
+                "records and files that no longer exist.  Files to validate are optional"));
+
+        // -timings
+        options.addOption(CMD_OPTION_TIMINGS, false, "report time spent downloading, loading schemas and parsing each " + 
+                "document, with latency percentiles and throughput for the run");
+
+        // -timings-json
+        options.addOption(longOption(CMD_OPTION_TIMINGS_JSON, true, "also write the timings to a JSON file"));
    
         return options;
     }
     
+    /**
+     * Options whose names contain a hyphen can only be long options.  GnuParser
+     * accepts them with either one or two leading hyphens
+     */
+    private Option longOption(String name, boolean hasArg, String description) {
+        return new Option(null, name, hasArg, description);
+    }
+
     public void logLevel(Level level) {
         LogManager.getRootLogger().setLevel(level);
     }
@@ -92,68 +229,341 @@ public class App {
             // all left over arguments...
             List<String> parameters = cmd.getArgList();
 
-            String uri = null;
-            if (parameters.size() == 1) { 
-                uri = parameters.get(0);
-            }
-
-            
-            if (cmd.hasOption(CMD_OPTION_CONSOLE)) {
+            if (cmd.hasOption(CMD_OPTION_SERVE)) {
+                status = serveMode(cmd);
+            } else if (cmd.hasOption(CMD_OPTION_WATCH)) {
+                status = watchMode(cmd);
+            } else if (cmd.hasOption(CMD_OPTION_COMPACT_INDEX) && parameters.isEmpty()) {
+                status = compactIndex(cmd);
+            } else if (cmd.hasOption(CMD_OPTION_CONSOLE)) {
                 // only run on the console.  Ensure we have been given a filename 
                 // or url
-                if (uri == null) {
+                List<String> uris = expandListFiles(parameters);
+                if (uris.isEmpty()) {
                     logger.error("You must specify a filename or URL when using console mode");
                     status = STATUS_EXCEPTION;
                 } else {
-                    status = commandMode(uri);
+                    Validator validator = createValidator(cmd);
+                    ReportWriter reportWriter = createReportWriter(cmd);
+                    validator.setReportWriter(reportWriter);
+                    try {
+                        status = commandMode(uris, validator, threads(cmd));
+                    } finally {
+                        if (reportWriter != null) {
+                            reportWriter.close();
+                        }
+                        closeIndex(validator.getValidationIndex(), cmd.hasOption(CMD_OPTION_COMPACT_INDEX));
+                    }
+                    if (cmd.hasOption(CMD_OPTION_TIMINGS_JSON)) {
+                        File timingsFile = new File(cmd.getOptionValue(CMD_OPTION_TIMINGS_JSON));
+                        validator.getTimingStats().writeJson(timingsFile);
+                        logger.info("Timings written to {}", timingsFile);
+                    }
                 }
             } else {
                 // load the GUI by default
+                String uri = null;
+                if (parameters.size() > 0) { 
+                    uri = parameters.get(0);
+                }
                 status = STATUS_GUI_MODE;
-                guiMode(uri);
+                GuiLauncher.start(uri);
             }
         } catch (ParseException ex) {
             status = STATUS_EXCEPTION;
             logger.error(ex.getMessage());
             // incorrect invocation -- show help
             usage(options);
+        } catch (IOException ex) {
+            status = STATUS_EXCEPTION;
+            logger.error("IO error: " + ex.getMessage());
         }
         return status;
     }
-    
+
     /**
-     * Work in command line mode
-     * @param uri File or URL to process
-     * @return 
+     * Build a validator configured from the command line
      */
-    private int commandMode(String uri) {
+    private Validator createValidator(CommandLine cmd) throws ParseException, IOException {
         Validator validator = new Validator();
-        return validator.validate(uri);
-        
+        validator.setStreaming(! cmd.hasOption(CMD_OPTION_DOM));
+        if (cmd.hasOption(CMD_OPTION_SPLIT_ELEMENT)) {
+            validator.setSplitElement(cmd.getOptionValue(CMD_OPTION_SPLIT_ELEMENT));
+        }
+        validator.setDocumentThreads(threads(cmd));
+        validator.setWellFormedOnly(cmd.hasOption(CMD_OPTION_WELLFORMED_ONLY));
+        validator.setDownloadFirst(cmd.hasOption(CMD_OPTION_DOWNLOAD));
+        if (cmd.hasOption(CMD_OPTION_DOWNLOAD_CACHE)) {
+            long maxBytes = DownloadCache.DEFAULT_MAX_BYTES;
+            if (cmd.hasOption(CMD_OPTION_DOWNLOAD_CACHE_SIZE)) {
+                maxBytes = positiveNumber(cmd, CMD_OPTION_DOWNLOAD_CACHE_SIZE) * MEGABYTE;
+            }
+            validator.setDownloadCache(new DownloadCache(new File(cmd.getOptionValue(CMD_OPTION_DOWNLOAD_CACHE)), maxBytes));
+        }
+        validator.setSchemaResolver(createSchemaResolver(cmd));
+        if (cmd.hasOption(CMD_OPTION_INDEX)) {
+            validator.setValidationIndex(new ValidationIndex(new File(cmd.getOptionValue(CMD_OPTION_INDEX))));
+        } else if (cmd.hasOption(CMD_OPTION_COMPACT_INDEX)) {
+            throw new ParseException("-" + CMD_OPTION_COMPACT_INDEX + " needs -" + CMD_OPTION_INDEX);
+        }
+        validator.setForce(cmd.hasOption(CMD_OPTION_FORCE));
+        if (cmd.hasOption(CMD_OPTION_MAX_ERRORS)) {
+            validator.setMaxErrors(positiveNumber(cmd, CMD_OPTION_MAX_ERRORS));
+        }
+        validator.setFailFast(cmd.hasOption(CMD_OPTION_FAIL_FAST));
+        if (cmd.hasOption(CMD_OPTION_TIMINGS) || cmd.hasOption(CMD_OPTION_TIMINGS_JSON)) {
+            validator.setTimingStats(new TimingStats());
+        }
+        return validator;
     }
-    
-    private void createAndShowGUI(String uri) {
-        logger.debug("Creating sing components...");
-        
-        ValidatorUI panel = new ValidatorUI(); 
-        panel.setInputUri(uri);
-        JFrame frame = new JFrame("JXmlValidator GUI");
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.getContentPane().add(panel);
-        frame.pack();
-        frame.setVisible(true);
+
+    /**
+     * Just compact the index
+     */
+    private int compactIndex(CommandLine cmd) throws ParseException, IOException {
+        if (! cmd.hasOption(CMD_OPTION_INDEX)) {
+            throw new ParseException("-" + CMD_OPTION_COMPACT_INDEX + " needs -" + CMD_OPTION_INDEX);
+        }
+        closeIndex(new ValidationIndex(new File(cmd.getOptionValue(CMD_OPTION_INDEX))), true);
+        return STATUS_OK;
+    }
+
+    private void closeIndex(ValidationIndex validationIndex, boolean compact) throws IOException {
+        if (validationIndex != null) {
+            if (compact) {
+                validationIndex.compact();
+            }
+            validationIndex.close();
+        }
+    }
+
+    /**
+     * Open the -format report, if one was asked for
+     */
+    private ReportWriter createReportWriter(CommandLine cmd) throws ParseException, IOException {
+        ReportWriter reportWriter = null;
+        if (cmd.hasOption(CMD_OPTION_FORMAT)) {
+            String format = cmd.getOptionValue(CMD_OPTION_FORMAT);
+            if (! FORMAT_JSON_LINES.equals(format) && ! FORMAT_JUNIT.equals(format) && ! FORMAT_SARIF.equals(format)) {
+                throw new ParseException("-" + CMD_OPTION_FORMAT + " must be one of " + FORMAT_JSON_LINES + ", " + 
+                        FORMAT_JUNIT + " or " + FORMAT_SARIF);
+            }
+
+            OutputStream os;
+            String output = cmd.getOptionValue(CMD_OPTION_OUTPUT, STANDARD_OUTPUT);
+            if (STANDARD_OUTPUT.equals(output)) {
+                // keep the log out of the report
+                ConsoleAppender appender = (ConsoleAppender) LogManager.getRootLogger().getAppender("stdout");
+                if (appender != null) {
+                    appender.setTarget(ConsoleAppender.SYSTEM_ERR);
+                    appender.activateOptions();
+                }
+                os = new FileOutputStream(FileDescriptor.out);
+            } else {
+                os = new FileOutputStream(output);
+            }
+
+            if (FORMAT_JSON_LINES.equals(format)) {
+                reportWriter = new JsonLinesReportWriter(os);
+            } else if (FORMAT_JUNIT.equals(format)) {
+                reportWriter = new JUnitReportWriter(os);
+            } else {
+                reportWriter = new SarifReportWriter(os);
+            }
+        } else if (cmd.hasOption(CMD_OPTION_OUTPUT)) {
+            throw new ParseException("-" + CMD_OPTION_OUTPUT + " needs -" + CMD_OPTION_FORMAT);
+        }
+        return reportWriter;
+    }
+
+    private SchemaResolver createSchemaResolver(CommandLine cmd) throws IOException {
+        XmlCatalog catalog = null;
+        if (cmd.hasOption(CMD_OPTION_CATALOG)) {
+            List<File> catalogFiles = new ArrayList<File>();
+            for (String catalogFile : cmd.getOptionValues(CMD_OPTION_CATALOG)) {
+                catalogFiles.add(new File(catalogFile));
+            }
+            try {
+                catalog = new XmlCatalog(catalogFiles);
+            } catch (SAXException ex) {
+                throw new IOException("Unable to read XML catalog: " + ex.getMessage(), ex);
+            }
+        }
+        File schemaCacheDir = cmd.hasOption(CMD_OPTION_SCHEMA_CACHE) ? 
+                new File(cmd.getOptionValue(CMD_OPTION_SCHEMA_CACHE)) : null;
+        return new SchemaResolver(catalog, schemaCacheDir, cmd.hasOption(CMD_OPTION_OFFLINE));
+    }
+
+    /**
+     * Read the value of an option that must be a positive whole number
+     */
+    private int positiveNumber(CommandLine cmd, String option) throws ParseException {
+        int value;
+        try {
+            value = Integer.parseInt(cmd.getOptionValue(option));
+        } catch (NumberFormatException ex) {
+            value = 0;
+        }
+        if (value < 1) {
+            throw new ParseException("-" + option + " must be a positive number");
+        }
+        return value;
+    }
+
+    private int threads(CommandLine cmd) throws ParseException {
+        int threads = BatchValidator.defaultThreads();
+        if (cmd.hasOption(CMD_OPTION_THREADS)) {
+            threads = positiveNumber(cmd, CMD_OPTION_THREADS);
+        }
+        return threads;
+    }
+
+    /**
+     * Replace any @listfile arguments with the files or URLs listed in them,
+     * one per line.  Blank lines and lines starting with # are ignored
+     * @param parameters arguments left over after option parsing
+     * @return every file or URL to validate, in order
+     */
+    private List<String> expandListFiles(List<String> parameters) throws IOException {
+        List<String> uris = new ArrayList<String>();
+        for (String parameter : parameters) {
+            if (parameter.startsWith(LIST_FILE_PREFIX)) {
+                String listFile = parameter.substring(LIST_FILE_PREFIX.length());
+                logger.debug("reading inputs from list file {}", listFile);
+                BufferedReader reader = new BufferedReader(new FileReader(listFile));
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        line = line.trim();
+                        if (! line.isEmpty() && ! line.startsWith("#")) {
+                            uris.add(line);
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } else {
+                uris.add(parameter);
+            }
+        }
+        return uris;
     }
     
-    private void guiMode(final String uri) {
-        logger.debug("starting GUI...");
+    /**
+     * Work in command line mode
+     * @param uris Files, directories, glob patterns or URLs to process
+     * @param validator validator configured from the command line
+     * @param threads number of documents to validate at once
+     * @return worst status of all the documents
+     */
+    private int commandMode(List<String> uris, Validator validator, int threads) {
+        int status;
+        if (uris.size() == 1 && ! InputScanner.needsScan(uris.get(0))) {
+            status = validator.validate(uris.get(0));
+        } else {
+            status = batchMode(uris, validator, threads);
+        }
+        SchemaCache schemaCache = validator.getSchemaCache();
+        logger.debug("Schema cache hits: {}, misses: {}", schemaCache.getHits(), schemaCache.getMisses());
+        DownloadCache downloadCache = validator.getDownloadCache();
+        if (downloadCache != null) {
+            logger.info("Download cache: {} not modified, {} downloaded, {} bytes saved", 
+                    new Object[] {downloadCache.getHits(), downloadCache.getMisses(), downloadCache.getBytesSaved()});
+        }
+        TimingStats timingStats = validator.getTimingStats();
+        if (timingStats != null) {
+            logger.info("Timings: {}", timingStats.summary());
+        }
+        return status;
+    }
+
+    private int batchMode(List<String> uris, Validator validator, int threads) {
+        int status;
+        logger.debug("validating {} inputs on {} threads", uris.size(), threads);
+        final BatchValidator batchValidator = new BatchValidator(validator, threads);
+        InputScanner inputScanner = new InputScanner();
+        try {
+            for (String uri : uris) {
+                if (InputScanner.needsScan(uri)) {
+                    // directory or glob - validate matches while still walking
+                    try {
+                        inputScanner.scan(uri, new InputScanner.Callback() {
+                            public void found(String filename) throws InterruptedException {
+                                batchValidator.submit(filename);
+                            }
 
-        SwingUtilities.invokeLater(new Runnable() {
+                            public void failed(String filename, IOException ex) {
+                                batchValidator.record(STATUS_EXCEPTION);
+                            }
+                        });
+                    } catch (IOException ex) {
+                        logger.error("IO error scanning {}: {}", uri, ex.getMessage());
+                        batchValidator.record(STATUS_EXCEPTION);
+                    }
+                } else {
+                    batchValidator.submit(uri);
+                }
+            }
+            status = batchValidator.awaitCompletion();
+        } catch (InterruptedException ex) {
+            logger.error("Interrupted waiting for validation to finish");
+            batchValidator.cancel();
+            status = STATUS_EXCEPTION;
+        }
+        logger.info(batchValidator.summary());
+        return status;
+    }
+    
+    /**
+     * Run as a long lived validation server
+     * @return STATUS_SERVE_MODE once the server is listening
+     */
+    private int serveMode(CommandLine cmd) throws ParseException, IOException {
+        int queueDepth = ValidationServer.DEFAULT_QUEUE_DEPTH;
+        if (cmd.hasOption(CMD_OPTION_SERVE_QUEUE)) {
+            queueDepth = positiveNumber(cmd, CMD_OPTION_SERVE_QUEUE);
+        }
+        final ValidationServer server = new ValidationServer(createValidator(cmd), 
+                positiveNumber(cmd, CMD_OPTION_SERVE), threads(cmd), queueDepth, 
+                cmd.hasOption(CMD_OPTION_SERVE_ALLOW_URI));
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
             public void run() {
-                createAndShowGUI(uri);
+                server.stop();
             }
         });
+        return STATUS_SERVE_MODE;
     }
     
+    /**
+     * Validate files in a directory as they change, until killed
+     */
+    private int watchMode(CommandLine cmd) throws ParseException, IOException {
+        File dir = new File(cmd.getOptionValue(CMD_OPTION_WATCH));
+        if (! dir.isDirectory()) {
+            throw new ParseException("-" + CMD_OPTION_WATCH + " needs a directory");
+        }
+        long debounce = DirectoryWatcher.DEFAULT_DEBOUNCE_MILLIS;
+        if (cmd.hasOption(CMD_OPTION_WATCH_DEBOUNCE)) {
+            debounce = positiveNumber(cmd, CMD_OPTION_WATCH_DEBOUNCE);
+        }
+        Validator validator = createValidator(cmd);
+        if (! cmd.hasOption(CMD_OPTION_VERBOSE)) {
+            // the watcher reports results itself, only when they change
+            LogManager.getLogger(Validator.class).setLevel(Level.OFF);
+        }
+        int status = STATUS_OK;
+        try {
+            new DirectoryWatcher(validator, dir.toPath(), threads(cmd), debounce).run();
+        } catch (InterruptedException ex) {
+            status = STATUS_EXCEPTION;
+        } finally {
+            closeIndex(validator.getValidationIndex(), false);
+        }
+        return status;
+    }
+
     private void usage(Options options) {
         // find the name of the jar file containg App.java (this file) 
         String jarFileName = 
@@ -166,7 +576,9 @@ public class App {
         
         HelpFormatter helpFormatter = new HelpFormatter();
         String usageMessage = 
-                "java -jar " + jarFileName + " [options] (FILE|URL)\n" +
+                "java -jar " + jarFileName + " [options] (FILE|DIR|GLOB|URL|@LISTFILE)...\n" +
+                "java -jar " + jarFileName + " -serve PORT [options]\n" +
+                "java -jar " + jarFileName + " -watch DIR [options]\n" +
                 "java -jar " + jarFileName + " -gui\n";
         helpFormatter.printHelp(usageMessage, options);
 
@@ -176,8 +588,8 @@ public class App {
         App app = new App();
         int status = app.run(args);
         
-        // do not to exit immediately in gui mode
-        if (status != STATUS_GUI_MODE) {
+        // do not to exit immediately in gui or server mode
+        if (status != STATUS_GUI_MODE && status != STATUS_SERVE_MODE) {
             logger.debug("Exiting system with status code: {}", status);
             System.exit(status);
         }
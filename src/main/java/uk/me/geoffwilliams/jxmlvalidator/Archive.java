@@ -0,0 +1,372 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads the files in a zip or tar archive one after another straight from a
+ * stream, without extracting anything to disk.  Also recognises gzip
+ * compression so that .xml.gz and .tar.gz inputs can be read transparently.
+ * Formats are recognised by their magic numbers rather than file names
+ * @author Geoff Williams
+ */
+public abstract class Archive {
+    /**
+     * Separates the name of an archive from the name of a file inside it,
+     * eg feeds.zip!/2013/01.xml
+     */
+    public static final String SEPARATOR = "!/";
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final int TAR_BLOCK = 512;
+    private static final int TAR_MAGIC_OFFSET = 257;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * If the stream is gzip compressed, wrap it to decompress on the fly
+     * @param is stream supporting mark/reset
+     * @return decompressed stream supporting mark/reset, or the stream itself
+     * if it is not compressed
+     */
+    public static BufferedInputStream decompress(BufferedInputStream is) throws IOException {
+        byte[] head = peek(is, 2);
+        if (head.length == 2 && (head[0] & 0xff) == 0x1f && (head[1] & 0xff) == 0x8b) {
+            return new BufferedInputStream(new GZIPInputStream(is, GZIP_BUFFER_SIZE), GZIP_BUFFER_SIZE);
+        }
+        return is;
+    }
+
+    /**
+     * Open the stream as an archive if it is one
+     * @param is stream supporting mark/reset, already decompressed
+     * @return archive reading from the stream, or null if the stream is not
+     * a zip or tar archive
+     */
+    public static Archive open(BufferedInputStream is) throws IOException {
+        byte[] head = peek(is, TAR_MAGIC_OFFSET + 5);
+        if (head.length >= 4 && head[0] == 'P' && head[1] == 'K' && head[2] == 3 && head[3] == 4) {
+            return new Zip(is);
+        }
+        if (head.length == TAR_MAGIC_OFFSET + 5 && 
+                new String(head, TAR_MAGIC_OFFSET, 5, UTF8).equals("ustar")) {
+            return new Tar(is);
+        }
+        return null;
+    }
+
+    /**
+     * Read the first bytes of a stream and rewind it
+     */
+    private static byte[] peek(BufferedInputStream is, int length) throws IOException {
+        byte[] head = new byte[length];
+        is.mark(length);
+        int read = 0;
+        int count;
+        while (read < length && (count = is.read(head, read, length - read)) > 0) {
+            read += count;
+        }
+        is.reset();
+        if (read < length) {
+            byte[] shorter = new byte[read];
+            System.arraycopy(head, 0, shorter, 0, read);
+            head = shorter;
+        }
+        return head;
+    }
+
+    /**
+     * Where a file inside an archive would be if the archive had been
+     * extracted into the directory it is in, so that relative schema
+     * locations resolve as they did before the files were archived.  Nested
+     * archives are unwrapped in turn
+     * @param systemId URI of a file, possibly inside an archive
+     * @return location of the extracted file, or systemId itself if it is
+     * not inside an archive
+     */
+    public static String extractedLocation(String systemId) {
+        if (systemId == null || systemId.startsWith("jar:")) {
+            return systemId;
+        }
+        String location = systemId;
+        int separator;
+        while ((separator = location.indexOf(SEPARATOR)) >= 0) {
+            int directory = location.lastIndexOf('/', separator - 1);
+            location = location.substring(0, directory + 1) + location.substring(separator + SEPARATOR.length());
+        }
+        return location;
+    }
+
+    /**
+     * Move on to the next file in the archive, skipping directories and other
+     * special entries
+     * @return path of the file within the archive, or null at the end
+     */
+    public abstract String nextEntry() throws IOException;
+
+    /**
+     * Content of the current file.  Reading past its end returns -1, and
+     * closing it does nothing so the archive can carry on
+     */
+    public abstract InputStream getEntryStream();
+
+    /**
+     * Zip files via ZipInputStream, so only the local headers are read and
+     * the central directory at the end is never needed
+     */
+    private static class Zip extends Archive {
+        private final ZipInputStream zis;
+        private final InputStream entryStream;
+
+        Zip(InputStream is) {
+            zis = new ZipInputStream(is, UTF8);
+            entryStream = new FilterInputStream(zis) {
+                @Override
+                public void close() {
+                    // the archive carries on
+                }
+            };
+        }
+
+        @Override
+        public String nextEntry() throws IOException {
+            ZipEntry entry;
+            do {
+                entry = zis.getNextEntry();
+            } while (entry != null && entry.isDirectory());
+            return entry == null ? null : entry.getName();
+        }
+
+        @Override
+        public InputStream getEntryStream() {
+            return entryStream;
+        }
+    }
+
+    /**
+     * POSIX (ustar) tar files, with the GNU and pax ways of storing names
+     * longer than 100 characters
+     */
+    private static class Tar extends Archive {
+        private static final int NAME_OFFSET = 0;
+        private static final int NAME_LENGTH = 100;
+        private static final int SIZE_OFFSET = 124;
+        private static final int SIZE_LENGTH = 12;
+        private static final int TYPE_OFFSET = 156;
+        private static final int PREFIX_OFFSET = 345;
+        private static final int PREFIX_LENGTH = 155;
+
+        private final InputStream is;
+        private final byte[] header = new byte[TAR_BLOCK];
+        /**
+         * Bytes of the current file not read yet
+         */
+        private long remaining = 0;
+        /**
+         * Padding after the current file up to the next block
+         */
+        private long padding = 0;
+        private final InputStream entryStream = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int b = is.read();
+                if (b < 0) {
+                    throw new EOFException("Truncated tar file");
+                }
+                remaining--;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int count = is.read(b, off, (int) Math.min(len, remaining));
+                if (count < 0) {
+                    throw new EOFException("Truncated tar file");
+                }
+                remaining -= count;
+                return count;
+            }
+        };
+
+        Tar(InputStream is) {
+            this.is = is;
+        }
+
+        private void skip(long count) throws IOException {
+            while (count > 0) {
+                long skipped = is.skip(count);
+                if (skipped <= 0) {
+                    if (is.read() < 0) {
+                        throw new EOFException("Truncated tar file");
+                    }
+                    skipped = 1;
+                }
+                count -= skipped;
+            }
+        }
+
+        private boolean readHeader() throws IOException {
+            int read = 0;
+            while (read < TAR_BLOCK) {
+                int count = is.read(header, read, TAR_BLOCK - read);
+                if (count < 0) {
+                    // some writers leave off the blocks of zeros at the end
+                    return false;
+                }
+                read += count;
+            }
+            for (byte b : header) {
+                if (b != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private String string(int offset, int length) {
+            int end = offset;
+            while (end < offset + length && header[end] != 0) {
+                end++;
+            }
+            return new String(header, offset, end - offset, UTF8);
+        }
+
+        private long size() throws IOException {
+            if ((header[SIZE_OFFSET] & 0x80) != 0) {
+                // GNU base-256 for files of 8GB and more
+                long size = 0;
+                for (int i = SIZE_OFFSET + 1; i < SIZE_OFFSET + SIZE_LENGTH; i++) {
+                    size = (size << 8) | (header[i] & 0xff);
+                }
+                return size;
+            }
+            String octal = string(SIZE_OFFSET, SIZE_LENGTH).trim();
+            try {
+                return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+            } catch (NumberFormatException ex) {
+                throw new IOException("Corrupt tar header: size '" + octal + "'");
+            }
+        }
+
+        private byte[] readData(long size) throws IOException {
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            byte[] buffer = new byte[TAR_BLOCK];
+            long left = size;
+            while (left > 0) {
+                int count = is.read(buffer, 0, (int) Math.min(buffer.length, left));
+                if (count < 0) {
+                    throw new EOFException("Truncated tar file");
+                }
+                data.write(buffer, 0, count);
+                left -= count;
+            }
+            skip(pad(size));
+            return data.toByteArray();
+        }
+
+        private static long pad(long size) {
+            return (TAR_BLOCK - size % TAR_BLOCK) % TAR_BLOCK;
+        }
+
+        /**
+         * The path from a pax extended header - records are "LENGTH
+         * key=value\n"
+         */
+        private static String paxPath(byte[] data) {
+            String path = null;
+            String records = new String(data, UTF8);
+            int start = 0;
+            while (start < records.length()) {
+                int space = records.indexOf(' ', start);
+                if (space < 0) {
+                    break;
+                }
+                int length;
+                try {
+                    length = Integer.parseInt(records.substring(start, space));
+                } catch (NumberFormatException ex) {
+                    break;
+                }
+                String record = records.substring(space + 1, Math.min(records.length(), start + length - 1));
+                if (record.startsWith("path=")) {
+                    path = record.substring("path=".length());
+                }
+                start += length;
+            }
+            return path;
+        }
+
+        @Override
+        public String nextEntry() throws IOException {
+            skip(remaining + padding);
+            remaining = 0;
+            padding = 0;
+            String longName = null;
+            while (readHeader()) {
+                long size = size();
+                char type = (char) header[TYPE_OFFSET];
+                if (type == 'L') {
+                    longName = new String(readData(size), UTF8).replaceAll("\u0000+$", "");
+                } else if (type == 'x') {
+                    String path = paxPath(readData(size));
+                    if (path != null) {
+                        longName = path;
+                    }
+                } else if (type == '0' || type == 0 || type == '7') {
+                    String name = longName;
+                    if (name == null) {
+                        name = string(NAME_OFFSET, NAME_LENGTH);
+                        String prefix = string(PREFIX_OFFSET, PREFIX_LENGTH);
+                        if (! prefix.isEmpty()) {
+                            name = prefix + "/" + name;
+                        }
+                    }
+                    remaining = size;
+                    padding = pad(size);
+                    return name;
+                } else {
+                    // directory, link, global header...
+                    longName = null;
+                    skip(size + pad(size));
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public InputStream getEntryStream() {
+            return entryStream;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Validates each XML file in an archive as a document of its own.  The
+ * archive is read once, in order; files up to ENTRY_BUFFER_LIMIT are read
+ * into memory and validated on a pool of worker threads while the archive
+ * carries on being read, and bigger ones are streamed straight into the
+ * parser on the reading thread.  Each file is reported as
+ * ARCHIVE!/PATH
+ * @author Geoff Williams
+ */
+public class ArchiveValidator {
+    /**
+     * Files bigger than this are not held in memory
+     */
+    public static final int ENTRY_BUFFER_LIMIT = 8 * 1024 * 1024;
+
+    private static final int ENTRIES_PER_THREAD = 2;
+    private static final String[] DOCUMENT_EXTENSIONS = {".xml", ".xml.gz"};
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Validator settings;
+    private final int threads;
+    private final AtomicInteger worstStatus = new AtomicInteger(App.STATUS_OK);
+    private int documents = 0;
+
+    /**
+     * @param settings each file is validated by a copy of this validator
+     * @param threads number of files to validate at once
+     */
+    public ArchiveValidator(Validator settings, int threads) {
+        this.settings = settings;
+        this.threads = threads;
+    }
+
+    /**
+     * Files that will be validated - other files (schemas, notes...) are
+     * skipped
+     */
+    static boolean isDocument(String path) {
+        String lower = path.toLowerCase();
+        for (String extension : DOCUMENT_EXTENSIONS) {
+            if (lower.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Validate every XML file in an archive
+     * @param archive archive positioned at its start
+     * @param name name of the archive, for the reports
+     * @param systemId URI of the archive
+     * @return the worst App.STATUS_* of the files
+     */
+    public int validate(Archive archive, String name, String systemId) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "archive-validator-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        Semaphore slots = new Semaphore(threads * ENTRIES_PER_THREAD);
+        try {
+            String path;
+            while ((path = archive.nextEntry()) != null) {
+                if (! isDocument(path)) {
+                    logger.debug("skipping {}{}{}", new Object[] {name, Archive.SEPARATOR, path});
+                    continue;
+                }
+                documents++;
+                String entryName = name + Archive.SEPARATOR + path;
+                String entrySystemId = systemId + Archive.SEPARATOR + path;
+                InputStream entry = archive.getEntryStream();
+                byte[] buffer = new byte[8192];
+                int length = 0;
+                boolean complete = false;
+                while (! complete && length <= ENTRY_BUFFER_LIMIT) {
+                    if (length == buffer.length) {
+                        byte[] grown = new byte[Math.min(buffer.length * 2, ENTRY_BUFFER_LIMIT + 1)];
+                        System.arraycopy(buffer, 0, grown, 0, length);
+                        buffer = grown;
+                    }
+                    int count = entry.read(buffer, length, buffer.length - length);
+                    if (count < 0) {
+                        complete = true;
+                    } else {
+                        length += count;
+                    }
+                }
+                if (complete) {
+                    slots.acquire();
+                    executor.execute(new EntryTask(new ByteArrayInputStream(buffer, 0, length), entrySystemId, 
+                            entryName, slots));
+                } else {
+                    // too big to hold - validate it here, starting with what
+                    // has been read already
+                    logger.debug("streaming {}", entryName);
+                    record(new Validator(settings).validate(new SequenceInputStream(
+                            new ByteArrayInputStream(buffer, 0, length), entry), entrySystemId, entryName));
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted validating " + name, ex);
+        } finally {
+            executor.shutdown();
+            try {
+                while (! executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    logger.debug("waiting for {} to be validated...", name);
+                }
+            } catch (InterruptedException ex) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (documents == 0) {
+            logger.warn("No XML files found in {}", name);
+        } else {
+            logger.info("Validated {} XML files in {}", documents, name);
+        }
+        return worstStatus.get();
+    }
+
+    private void record(int status) {
+        int worst;
+        do {
+            worst = worstStatus.get();
+        } while (status > worst && ! worstStatus.compareAndSet(worst, status));
+    }
+
+    public int getDocuments() {
+        return documents;
+    }
+
+    /**
+     * Validates a file read into memory
+     */
+    private class EntryTask implements Runnable {
+        private final InputStream is;
+        private final String systemId;
+        private final String name;
+        private final Semaphore slots;
+
+        EntryTask(InputStream is, String systemId, String name, Semaphore slots) {
+            this.is = is;
+            this.systemId = systemId;
+            this.name = name;
+            this.slots = slots;
+        }
+
+        public void run() {
+            try {
+                record(new Validator(settings).validate(is, systemId, name));
+            } catch (RuntimeException ex) {
+                logger.error("Unexpected error validating {}: {}", name, ex.toString());
+                record(App.STATUS_EXCEPTION);
+            } finally {
+                slots.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Non-blocking front end for embedding the validator in a service.
+ * submit() returns straight away with a future for the result.
+ * <p>
+ * Downloads, which spend their time waiting on the network, run on virtual
+ * threads when the JVM has them (Java 21+) and otherwise on a cached pool of
+ * platform threads.  Parsing, which needs a CPU, runs on a fixed pool of
+ * platform threads so a burst of documents cannot oversubscribe the
+ * processors.  URLs are therefore always downloaded to a temporary file
+ * before they are parsed, whatever the downloadFirst setting.
+ * <p>
+ * At most threads + queueDepth documents are in progress at once; beyond
+ * that submit() blocks until one finishes, so a fast producer is slowed down
+ * rather than queueing unbounded work
+ * @author Geoff Williams
+ */
+public class AsyncValidator {
+    public static final int DEFAULT_QUEUE_DEPTH = 64;
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Validator settings;
+    private final ExecutorService parsers;
+    private final ExecutorService downloaders;
+    private final Semaphore slots;
+
+    /**
+     * @param settings validator to take settings from.  They are copied, so
+     * later changes to it have no effect
+     * @param threads number of documents to parse at once
+     * @param queueDepth number of documents allowed to wait for a parser or
+     * download before submit() blocks
+     */
+    public AsyncValidator(Validator settings, int threads, int queueDepth) {
+        this.settings = new Validator(settings);
+        this.slots = new Semaphore(threads + queueDepth);
+        this.parsers = Executors.newFixedThreadPool(threads, daemonThreads("async-validator-"));
+        this.downloaders = newDownloadExecutor();
+    }
+
+    private static ThreadFactory daemonThreads(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * A virtual thread per download if the JVM supports them, looked up
+     * reflectively so the project still builds and runs on older Java
+     */
+    private ExecutorService newDownloadExecutor() {
+        ExecutorService executor;
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            executor = (ExecutorService) method.invoke(null);
+            logger.debug("downloading on virtual threads");
+        } catch (Exception ex) {
+            executor = Executors.newCachedThreadPool(daemonThreads("async-download-"));
+            logger.debug("virtual threads not available - downloading on platform threads");
+        }
+        return executor;
+    }
+
+    /**
+     * Validate a local file or URL in the background.  Blocks while the
+     * maximum number of documents are already in progress
+     * @param uri filename or URL
+     * @return the result, once validation has finished.  Failures to read or
+     * parse the document are reported in the result, not by completing the
+     * future exceptionally.  After shutdown() the future completes exceptionally
+     * with a RejectedExecutionException
+     */
+    public CompletableFuture<ValidationResult> submit(final String uri) {
+        try {
+            slots.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            CompletableFuture<ValidationResult> interrupted = new CompletableFuture<ValidationResult>();
+            interrupted.completeExceptionally(ex);
+            return interrupted;
+        }
+
+        CompletableFuture<ValidationResult> future;
+        try {
+            future = start(uri);
+        } catch (RejectedExecutionException ex) {
+            slots.release();
+            CompletableFuture<ValidationResult> rejected = new CompletableFuture<ValidationResult>();
+            rejected.completeExceptionally(ex);
+            return rejected;
+        }
+        return future.whenComplete(new BiConsumer<ValidationResult, Throwable>() {
+            public void accept(ValidationResult result, Throwable failure) {
+                slots.release();
+            }
+        });
+    }
+
+    /**
+     * Hand a document to the downloaders or parsers
+     * @throws RejectedExecutionException if they have been shut down
+     */
+    private CompletableFuture<ValidationResult> start(final String uri) {
+        CompletableFuture<ValidationResult> future;
+        if (uri.contains("://")) {
+            future = CompletableFuture.supplyAsync(new Supplier<String>() {
+                public String get() {
+                    try {
+                        return new FileDownloader(settings.getDownloadCache()).downloadFile(uri);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            }, downloaders).handleAsync(new BiFunction<String, Throwable, ValidationResult>() {
+                public ValidationResult apply(String filename, Throwable failure) {
+                    if (failure != null) {
+                        return downloadFailed(uri, failure);
+                    }
+                    try {
+                        return validateDownloaded(filename, uri);
+                    } finally {
+                        new File(filename).delete();
+                    }
+                }
+            }, parsers);
+        } else {
+            future = CompletableFuture.supplyAsync(new Supplier<ValidationResult>() {
+                public ValidationResult get() {
+                    Validator validator = new Validator(settings);
+                    validator.validate(uri);
+                    return validator.getResult();
+                }
+            }, parsers);
+        }
+        return future;
+    }
+
+    /**
+     * Parse a downloaded copy, reporting it under its URL.  Relative schema
+     * locations resolve against the URL, as when validating it directly
+     */
+    private ValidationResult validateDownloaded(String filename, String uri) {
+        Validator validator = new Validator(settings);
+        InputStream is;
+        try {
+            is = new BufferedInputStream(new FileInputStream(filename));
+        } catch (IOException ex) {
+            validator.downloadFailed(uri, ex);
+            return validator.getResult();
+        }
+        try {
+            validator.validate(is, uri);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+        return validator.getResult();
+    }
+
+    private ValidationResult downloadFailed(String uri, Throwable failure) {
+        Throwable cause = failure;
+        while (cause.getCause() != null && ! (cause instanceof IOException)) {
+            cause = cause.getCause();
+        }
+        Validator validator = new Validator(settings);
+        validator.downloadFailed(uri, cause instanceof IOException ? 
+                (IOException) cause : new IOException(cause.toString(), cause));
+        return validator.getResult();
+    }
+
+    /**
+     * Stop accepting work and wait for documents already submitted to finish
+     * @param timeout maximum time to wait
+     * @param unit unit of timeout
+     * @return true if everything finished in time
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        // finished downloads still need a parser
+        downloaders.shutdown();
+        boolean finished = downloaders.awaitTermination(timeout, unit);
+        parsers.shutdown();
+        return parsers.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS) && finished;
+    }
+}
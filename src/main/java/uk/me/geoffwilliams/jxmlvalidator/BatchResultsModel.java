@@ -0,0 +1,209 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableRowSorter;
+
+/**
+ * Table of batch results, one small row per document.  Only the counts and
+ * first message of each document are kept, not its error report, and the
+ * cells are worked out as the table asks for them, so the table stays
+ * responsive with hundreds of thousands of documents.  Must only be used on
+ * the event dispatch thread
+ * @author Geoff Williams
+ */
+public class BatchResultsModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    public static final int COLUMN_DOCUMENT = 0;
+    public static final int COLUMN_STATUS = 1;
+    public static final int COLUMN_FATAL = 2;
+    public static final int COLUMN_ERRORS = 3;
+    public static final int COLUMN_WARNINGS = 4;
+    public static final int COLUMN_MESSAGE = 5;
+
+    private static final String[] COLUMNS = {"Document", "Status", "Fatal", "Errors", "Warnings", "First message"};
+
+    private final List<Row> rows = new ArrayList<Row>();
+
+    /**
+     * Result of one document
+     */
+    public static final class Row {
+        private final String document;
+        private final int status;
+        private final int fatal;
+        private final int errors;
+        private final int warnings;
+        private final String message;
+
+        /**
+         * @param document document validated
+         * @param status App.STATUS_* result
+         * @param errorReport report for the document, or null if it could
+         * not be parsed at all
+         * @param exceptionMessage reason validation failed, or null
+         */
+        public Row(String document, int status, ErrorReport errorReport, String exceptionMessage) {
+            this.document = document;
+            this.status = status;
+            if (errorReport == null) {
+                fatal = errors = warnings = 0;
+                message = exceptionMessage;
+            } else {
+                fatal = errorReport.getFatalCount();
+                errors = errorReport.getErrorCount();
+                warnings = errorReport.getWarningCount();
+                message = exceptionMessage != null ? exceptionMessage : firstMessage(errorReport);
+            }
+        }
+
+        private static String firstMessage(ErrorReport errorReport) {
+            List<MessageGroup> groups = errorReport.getFatalGroups();
+            if (groups.isEmpty()) {
+                groups = errorReport.getErrorGroups();
+            }
+            if (groups.isEmpty()) {
+                groups = errorReport.getWarningGroups();
+            }
+            return groups.isEmpty() ? null : groups.get(0).toString();
+        }
+
+        public String getDocument() {
+            return document;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+
+    /**
+     * Label for an App.STATUS_* value
+     */
+    public static String statusLabel(int status) {
+        String label;
+        switch (status) {
+            case App.STATUS_OK:
+                label = "valid";
+                break;
+            case App.STATUS_WARNINGS:
+                label = "warnings";
+                break;
+            case App.STATUS_ERRORS:
+                label = "errors";
+                break;
+            case App.STATUS_FATAL:
+                label = "fatal";
+                break;
+            case App.STATUS_EXCEPTION:
+                label = "failed";
+                break;
+            default:
+                label = "unknown";
+        }
+        return label;
+    }
+
+    /**
+     * Sorter for this model.  Text columns are compared character by
+     * character: the default, locale aware Collator takes seconds to sort a
+     * few hundred thousand rows
+     */
+    public TableRowSorter<BatchResultsModel> createSorter() {
+        TableRowSorter<BatchResultsModel> sorter = new TableRowSorter<BatchResultsModel>(this);
+        Comparator<String> comparator = new Comparator<String>() {
+            public int compare(String a, String b) {
+                return a.compareTo(b);
+            }
+        };
+        for (int column = 0; column < COLUMNS.length; column++) {
+            if (getColumnClass(column) == String.class) {
+                sorter.setComparator(column, comparator);
+            }
+        }
+        return sorter;
+    }
+
+    /**
+     * Add a batch of results to the end of the table
+     */
+    public void addRows(List<Row> added) {
+        if (! added.isEmpty()) {
+            int first = rows.size();
+            rows.addAll(added);
+            fireTableRowsInserted(first, rows.size() - 1);
+        }
+    }
+
+    public Row getRow(int row) {
+        return rows.get(row);
+    }
+
+    public void clear() {
+        rows.clear();
+        fireTableDataChanged();
+    }
+
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column >= COLUMN_FATAL && column <= COLUMN_WARNINGS ? Integer.class : String.class;
+    }
+
+    public Object getValueAt(int row, int column) {
+        Row result = rows.get(row);
+        Object value;
+        switch (column) {
+            case COLUMN_DOCUMENT:
+                value = result.document;
+                break;
+            case COLUMN_STATUS:
+                value = statusLabel(result.status);
+                break;
+            case COLUMN_FATAL:
+                value = result.fatal;
+                break;
+            case COLUMN_ERRORS:
+                value = result.errors;
+                break;
+            case COLUMN_WARNINGS:
+                value = result.warnings;
+                break;
+            default:
+                value = result.message;
+        }
+        return value;
+    }
+}
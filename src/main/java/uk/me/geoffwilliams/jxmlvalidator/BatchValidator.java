@@ -0,0 +1,186 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Validates many documents on a fixed pool of worker threads.  Submitting
+ * blocks once a few documents per worker are waiting, so inputs can be fed in
+ * as they are discovered without queueing the whole batch in memory
+ * @author Geoff Williams
+ */
+public class BatchValidator {
+    /**
+     * Number of documents allowed to wait for a free worker, per worker
+     */
+    private static final int QUEUE_PER_THREAD = 4;
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Validator settings;
+    private final ExecutorService executor;
+    private final Semaphore slots;
+    private final AtomicInteger worstStatus = new AtomicInteger(App.STATUS_OK);
+    private final Map<Integer, Integer> statusCounts = new TreeMap<Integer, Integer>();
+    private int submitted = 0;
+    /**
+     * Inputs counted by record() without being submitted
+     */
+    private int unsubmitted = 0;
+
+    /**
+     * @param settings each document is validated by a copy of this validator
+     * @param threads number of worker threads
+     */
+    public BatchValidator(Validator settings, int threads) {
+        this.settings = settings;
+        this.slots = new Semaphore(threads * (QUEUE_PER_THREAD + 1));
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "validator-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Default worker count - one per available core
+     */
+    public static int defaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Queue a document for validation, waiting for space if the workers are
+     * behind
+     * @param uri File or URL to validate
+     */
+    public void submit(final String uri) throws InterruptedException {
+        slots.acquire();
+        synchronized (this) {
+            submitted++;
+        }
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    Validator validator = new Validator(settings);
+                    count(validator.validate(uri));
+                } catch (RuntimeException ex) {
+                    logger.error("Unexpected error validating {}: {}", uri, ex.toString());
+                    count(App.STATUS_EXCEPTION);
+                } finally {
+                    slots.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Count a result for an input that could not even be submitted, eg a
+     * directory that could not be read
+     */
+    void record(int status) {
+        synchronized (this) {
+            unsubmitted++;
+        }
+        count(status);
+    }
+
+    private void count(int status) {
+        synchronized (statusCounts) {
+            Integer count = statusCounts.get(status);
+            statusCounts.put(status, count == null ? 1 : count + 1);
+        }
+
+        int worst;
+        do {
+            worst = worstStatus.get();
+        } while (status > worst && ! worstStatus.compareAndSet(worst, status));
+    }
+
+    /**
+     * Wait for every submitted document to be validated.  No more documents
+     * can be submitted afterwards
+     * @return the worst App.STATUS_* seen
+     */
+    public int awaitCompletion() throws InterruptedException {
+        executor.shutdown();
+        while (! executor.awaitTermination(1, TimeUnit.SECONDS)) {
+            logger.debug("waiting for validation to finish...");
+        }
+        return worstStatus.get();
+    }
+
+    /**
+     * Stop the batch: documents waiting for a worker are dropped and those
+     * being validated are interrupted, which stops them at their next read
+     */
+    public void cancel() {
+        executor.shutdownNow();
+    }
+
+    public int getWorstStatus() {
+        return worstStatus.get();
+    }
+
+    public synchronized int getSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * @return number of inputs, whether submitted or only counted by record()
+     */
+    public synchronized int getTotal() {
+        return submitted + unsubmitted;
+    }
+
+    /**
+     * Number of documents that finished with the given App.STATUS_* value
+     */
+    public int getCount(int status) {
+        synchronized (statusCounts) {
+            Integer count = statusCounts.get(status);
+            return count == null ? 0 : count;
+        }
+    }
+
+    /**
+     * One line summary of the whole batch
+     */
+    public String summary() {
+        return "Validated " + getTotal() + " documents: " +
+                getCount(App.STATUS_OK) + " valid, " +
+                getCount(App.STATUS_WARNINGS) + " with warnings, " +
+                getCount(App.STATUS_ERRORS) + " with errors, " +
+                getCount(App.STATUS_FATAL) + " fatal, " +
+                getCount(App.STATUS_EXCEPTION) + " failed";
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.RowFilter;
+import javax.swing.SwingWorker;
+import javax.swing.table.TableRowSorter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Validates a folder or several files at once and lists one row per
+ * document, which can be sorted by any column and filtered by status
+ * @author Geoff Williams
+ */
+public class BatchValidatorUI extends JPanel {
+    private static final long serialVersionUID = 1L;
+    /**
+     * Choices for the status filter, and the App.STATUS_* each one shows
+     */
+    private static final String[] FILTERS = {"All", "Valid", "Warnings", "Errors", "Fatal", "Failed", "Not valid"};
+    private static final int[] FILTER_STATUSES = {0, App.STATUS_OK, App.STATUS_WARNINGS, App.STATUS_ERRORS, 
+        App.STATUS_FATAL, App.STATUS_EXCEPTION, 0};
+    private static final int FILTER_ALL = 0;
+    private static final int FILTER_NOT_VALID = FILTERS.length - 1;
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final BatchResultsModel model = new BatchResultsModel();
+    private final TableRowSorter<BatchResultsModel> sorter = model.createSorter();
+    private final JButton chooseButton = new JButton("Choose files or folder...");
+    private final JButton cancelButton = new JButton("Cancel");
+    private final JComboBox<String> filterBox = new JComboBox<String>(FILTERS);
+    private final JLabel statusLabel = new JLabel(" ");
+    private BatchWorker worker;
+
+    public BatchValidatorUI() {
+        super(new BorderLayout());
+        JTable table = new JTable(model);
+        table.setRowSorter(sorter);
+        table.setAutoCreateRowSorter(false);
+        table.getColumnModel().getColumn(BatchResultsModel.COLUMN_DOCUMENT).setPreferredWidth(300);
+        table.getColumnModel().getColumn(BatchResultsModel.COLUMN_MESSAGE).setPreferredWidth(400);
+
+        cancelButton.setEnabled(false);
+        chooseButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                chooseAndValidate();
+            }
+        });
+        cancelButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                if (worker != null) {
+                    worker.cancel(true);
+                }
+            }
+        });
+        filterBox.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                updateFilter();
+            }
+        });
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEADING));
+        controls.add(chooseButton);
+        controls.add(cancelButton);
+        controls.add(new JLabel("Show:"));
+        controls.add(filterBox);
+        add(controls, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(statusLabel, BorderLayout.SOUTH);
+    }
+
+    private void updateFilter() {
+        final int selected = filterBox.getSelectedIndex();
+        if (selected == FILTER_ALL) {
+            sorter.setRowFilter(null);
+        } else {
+            sorter.setRowFilter(new RowFilter<BatchResultsModel, Integer>() {
+                @Override
+                public boolean include(Entry<? extends BatchResultsModel, ? extends Integer> entry) {
+                    int status = entry.getModel().getRow(entry.getIdentifier()).getStatus();
+                    return selected == FILTER_NOT_VALID ? status != App.STATUS_OK : status == FILTER_STATUSES[selected];
+                }
+            });
+        }
+    }
+
+    private void chooseAndValidate() {
+        JFileChooser fc = new JFileChooser();
+        fc.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        fc.setMultiSelectionEnabled(true);
+        if (fc.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            List<String> inputs = new ArrayList<String>();
+            for (File file : fc.getSelectedFiles()) {
+                inputs.add(file.getAbsolutePath());
+            }
+            validate(inputs);
+        }
+    }
+
+    /**
+     * Validate files, directories (every *.xml file beneath them) or glob
+     * patterns, replacing any results shown
+     */
+    public void validate(List<String> inputs) {
+        model.clear();
+        chooseButton.setEnabled(false);
+        cancelButton.setEnabled(true);
+        statusLabel.setText("validating...");
+        worker = new BatchWorker(inputs);
+        worker.execute();
+    }
+
+    /**
+     * Feeds the inputs to a BatchValidator in the background.  Each result
+     * is published as it finishes and added to the table in batches
+     */
+    private class BatchWorker extends SwingWorker<String, BatchResultsModel.Row> implements ReportWriter {
+        private final List<String> inputs;
+        private BatchValidator batchValidator;
+
+        BatchWorker(List<String> inputs) {
+            this.inputs = inputs;
+        }
+
+        @Override
+        protected String doInBackground() throws InterruptedException {
+            Validator settings = new Validator();
+            settings.setReportWriter(this);
+            batchValidator = new BatchValidator(settings, BatchValidator.defaultThreads());
+            InputScanner inputScanner = new InputScanner();
+            try {
+                for (String input : inputs) {
+                    if (InputScanner.needsScan(input)) {
+                        try {
+                            inputScanner.scan(input, new InputScanner.Callback() {
+                                public void found(String filename) throws InterruptedException {
+                                    batchValidator.submit(filename);
+                                }
+
+                                public void failed(String filename, IOException ex) {
+                                    batchValidator.record(App.STATUS_EXCEPTION);
+                                    publish(new BatchResultsModel.Row(filename, App.STATUS_EXCEPTION, null, 
+                                            "IO error: " + ex.getMessage()));
+                                }
+                            });
+                        } catch (IOException ex) {
+                            logger.error("IO error scanning {}: {}", input, ex.getMessage());
+                            batchValidator.record(App.STATUS_EXCEPTION);
+                            publish(new BatchResultsModel.Row(input, App.STATUS_EXCEPTION, null, 
+                                    "IO error: " + ex.getMessage()));
+                        }
+                    } else {
+                        batchValidator.submit(input);
+                    }
+                }
+                batchValidator.awaitCompletion();
+            } catch (InterruptedException ex) {
+                batchValidator.cancel();
+                throw ex;
+            }
+            return batchValidator.summary();
+        }
+
+        public void finding(String document, Severity severity, String systemId, int line, int column, 
+                String message) {
+        }
+
+        /**
+         * Called on the batch's worker threads
+         */
+        public void endDocument(String document, int status, ErrorReport errorReport, String exceptionMessage) {
+            publish(new BatchResultsModel.Row(document, status, errorReport, exceptionMessage));
+        }
+
+        public void close() {
+        }
+
+        /**
+         * Add a batch of rows, unless this batch has been cancelled or
+         * replaced by another
+         */
+        @Override
+        protected void process(List<BatchResultsModel.Row> rows) {
+            if (isCancelled() || worker != this) {
+                return;
+            }
+            model.addRows(rows);
+            statusLabel.setText(String.format("validating... %,d documents", model.getRowCount()));
+        }
+
+        @Override
+        protected void done() {
+            worker = null;
+            chooseButton.setEnabled(true);
+            cancelButton.setEnabled(false);
+            if (isCancelled()) {
+                statusLabel.setText(String.format("cancelled after %,d documents", model.getRowCount()));
+            } else {
+                try {
+                    statusLabel.setText(get());
+                } catch (Exception ex) {
+                    logger.error("Unexpected error validating batch: {}", ex.toString());
+                    statusLabel.setText(ex.toString());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches a directory tree and validates *.xml files as they are created or
+ * changed, reporting only files whose result differs from last time.
+ * <p>
+ * Events for a file are coalesced: it is only validated once no event has
+ * arrived for it for the debounce period, so a file being written in many
+ * chunks is validated once, when complete.  A file that changes while it is
+ * being validated is validated again afterwards rather than concurrently.
+ * If the platform drops events (OVERFLOW) the whole tree is rescanned
+ * @author Geoff Williams
+ */
+public class DirectoryWatcher {
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 250;
+
+    private static final String EXTENSION = ".xml";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Validator settings;
+    private final long debounceNanos;
+    private final ExecutorService workers;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> keys = new HashMap<WatchKey, Path>();
+    private final Path root;
+
+    /**
+     * Files with events still inside the debounce period, in order of their
+     * last event, with the time of that event.  Only used by the watch thread
+     */
+    private final LinkedHashMap<Path, Long> pending = new LinkedHashMap<Path, Long>();
+
+    /**
+     * Files being validated right now
+     */
+    private final Map<Path, Boolean> inFlight = new ConcurrentHashMap<Path, Boolean>();
+
+    /**
+     * Last reported result of each file: VALID, INVALID or FAILED, followed
+     * by a hash of the report rather than the report itself
+     */
+    private final Map<Path, String> results = new ConcurrentHashMap<Path, String>();
+
+    /**
+     * @param settings each file is validated by a copy of this validator
+     * @param root directory to watch, including subdirectories
+     * @param threads number of files to validate at once
+     * @param debounceMillis quiet period after a file's last event before it
+     * is validated
+     */
+    public DirectoryWatcher(Validator settings, Path root, int threads, long debounceMillis) throws IOException {
+        this.settings = settings;
+        this.root = root;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "watch-validator-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Validate everything under the root, reporting files that are not
+     * valid, then watch for changes until interrupted
+     */
+    public void run() throws IOException, InterruptedException {
+        register(root, Scan.INITIAL);
+        logger.info("Watching {} for changes...", root);
+        try {
+            while (! Thread.currentThread().isInterrupted()) {
+                WatchKey key = pending.isEmpty() ? 
+                        watchService.take() : watchService.poll(nextDeadline(), TimeUnit.NANOSECONDS);
+                if (key != null) {
+                    handle(key);
+                    // drain whatever else is queued before validating
+                    while ((key = watchService.poll()) != null) {
+                        handle(key);
+                    }
+                }
+                submitSettled();
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    public void stop() throws IOException {
+        workers.shutdownNow();
+        watchService.close();
+    }
+
+    /**
+     * What to do with the files found when registering a directory
+     */
+    private enum Scan {
+        /** validate them straight away, only reporting problems */
+        INITIAL,
+        /** treat them as changed, eg a directory just moved in */
+        CHANGED,
+        /** nothing - they are already known */
+        NONE
+    }
+
+    /**
+     * Watch a directory and everything beneath it
+     */
+    private void register(Path dir, final Scan scan) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, 
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                keys.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && isXml(file)) {
+                    if (scan == Scan.INITIAL) {
+                        submit(file, true);
+                    } else if (scan == Scan.CHANGED) {
+                        changed(file);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                logger.error("Unable to read {}: {}", file, ex.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static boolean isXml(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(EXTENSION);
+    }
+
+    private void handle(WatchKey key) throws IOException {
+        Path dir = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            WatchEvent.Kind<?> kind = event.kind();
+            if (kind == StandardWatchEventKinds.OVERFLOW) {
+                // already registered directories are registered again, which
+                // just returns their existing keys
+                logger.warn("Too many changes at once - rescanning {}", root);
+                register(root, Scan.CHANGED);
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+                pending.remove(path);
+                if (results.remove(path) != null) {
+                    logger.info("{}: deleted", path);
+                }
+            } else if (Files.isDirectory(path)) {
+                if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                    register(path, Scan.CHANGED);
+                }
+            } else if (isXml(path)) {
+                changed(path);
+            }
+        }
+        if (! key.reset()) {
+            // directory has gone
+            keys.remove(key);
+        }
+    }
+
+    /**
+     * Note an event for a file, restarting its debounce period
+     */
+    private void changed(Path file) {
+        pending.remove(file);
+        pending.put(file, System.nanoTime());
+    }
+
+    private long nextDeadline() {
+        long oldest = pending.values().iterator().next();
+        return Math.max(0, oldest + debounceNanos - System.nanoTime());
+    }
+
+    /**
+     * Hand files whose debounce period is over to the workers.  Files are in
+     * order of their last event so we can stop at the first unsettled one
+     */
+    private void submitSettled() {
+        long now = System.nanoTime();
+        List<Path> busy = new ArrayList<Path>();
+        Iterator<Map.Entry<Path, Long>> i = pending.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<Path, Long> entry = i.next();
+            if (now - entry.getValue() < debounceNanos) {
+                break;
+            }
+            Path file = entry.getKey();
+            i.remove();
+            if (inFlight.containsKey(file)) {
+                // still validating the previous version - try again later
+                busy.add(file);
+            } else {
+                submit(file, false);
+            }
+        }
+        for (Path file : busy) {
+            changed(file);
+        }
+    }
+
+    private void submit(final Path file, final boolean initial) {
+        inFlight.put(file, Boolean.TRUE);
+        workers.execute(new Runnable() {
+            public void run() {
+                try {
+                    validate(file, initial);
+                } catch (RuntimeException ex) {
+                    logger.error("Unexpected error validating {}: {}", file, ex.toString());
+                } finally {
+                    inFlight.remove(file);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return last result for a file, or null if it has not been validated
+     */
+    String getResult(Path file) {
+        return results.get(file);
+    }
+
+    /**
+     * Validate a file and report it if its result has changed
+     * @param initial true for the scan at startup, where only problems are
+     * reported
+     */
+    private void validate(Path file, boolean initial) {
+        if (! Files.isRegularFile(file)) {
+            return;
+        }
+        Validator validator = new Validator(settings);
+        int status = validator.validate(file.toString());
+        String outcome;
+        String details = "";
+        if (status == App.STATUS_OK) {
+            outcome = "VALID";
+        } else if (status == App.STATUS_EXCEPTION) {
+            outcome = "FAILED";
+            details = " - " + validator.getExceptionMessage();
+        } else {
+            ErrorReport errorReport = validator.getValidationErrorHandler();
+            outcome = "INVALID";
+            if (errorReport != null) {
+                details = "\n" + errorReport.toString();
+            }
+        }
+        String result = outcome;
+        if (! details.isEmpty()) {
+            result += " " + ValidationIndex.toHex(ValidationIndex.newDigest().digest(details.getBytes(UTF8)));
+        }
+        String previous = results.put(file, result);
+        if (initial ? status != App.STATUS_OK : ! result.equals(previous)) {
+            if (status == App.STATUS_OK) {
+                logger.info("{}: {}", file, outcome);
+            } else {
+                logger.error("{}: {}{}", new Object[] {file, outcome, details});
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Shows the lines of a document around a position, eg an error.  The
+ * LineIndex built while validating gives a nearby line start, and only a
+ * window of the file from there is mapped into memory, so this is as quick
+ * for a line near the end of a 2GB file as for one near the start
+ * @author Geoff Williams
+ */
+public class DocumentContext {
+    /**
+     * Most of the file mapped to find the lines wanted
+     */
+    public static final int WINDOW_BYTES = 4 * 1024 * 1024;
+    /**
+     * Longer lines are cut down to this many bytes, around the column for
+     * the line asked for
+     */
+    public static final int MAX_LINE_BYTES = 240;
+
+    private DocumentContext() {
+    }
+
+    /**
+     * Lines around a position in a document, in the encoding its XML
+     * declaration gives
+     * @see #around(File, LineIndex, Charset, int, int, int)
+     */
+    public static String around(File file, LineIndex index, int line, int column, int contextLines) 
+            throws IOException {
+        byte[] head = new byte[1024];
+        int length = 0;
+        InputStream is = new FileInputStream(file);
+        try {
+            int read;
+            while (length < head.length && (read = is.read(head, length, head.length - length)) != -1) {
+                length += read;
+            }
+        } finally {
+            is.close();
+        }
+        Charset charset = FragmentValidator.splittableEncoding(head, length);
+        if (charset == null) {
+            throw new IOException("lines of " + file + " cannot be shown - only ASCII compatible encodings " + 
+                    "such as UTF-8 are supported");
+        }
+        return around(file, index, charset, line, column, contextLines);
+    }
+
+    /**
+     * @param file document on disk
+     * @param index index built while the document was validated
+     * @param charset encoding of the document
+     * @param line line wanted, from 1
+     * @param column column on the line, from 1, or -1 if not known
+     * @param contextLines number of lines to show either side
+     * @return the lines, each prefixed by its number, with the line wanted
+     * marked by ">>"
+     */
+    public static String around(File file, LineIndex index, Charset charset, int line, int column, 
+            int contextLines) throws IOException {
+        int firstLine = Math.max(1, line - contextLines);
+        int lastLine = line + contextLines;
+        LineIndex.Entry entry = index.floor(firstLine);
+        StringBuilder sb = new StringBuilder();
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (entry.getOffset() >= size) {
+                return "";
+            }
+            ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, entry.getOffset(), 
+                    Math.min(WINDOW_BYTES, size - entry.getOffset()));
+            int current = entry.getLine();
+            int start = 0;
+            int i = 0;
+            int limit = window.limit();
+            while (current <= lastLine && start < limit) {
+                // find the end of the current line: LF, CR or CRLF
+                while (i < limit && window.get(i) != '\n' && window.get(i) != '\r') {
+                    i++;
+                }
+                if (current >= firstLine) {
+                    appendLine(sb, window, charset, start, i, current, current == line, column);
+                }
+                if (i < limit && window.get(i) == '\r' && i + 1 < limit && window.get(i + 1) == '\n') {
+                    i++;
+                }
+                i++;
+                start = i;
+                current++;
+            }
+        } finally {
+            channel.close();
+        }
+        return sb.toString();
+    }
+
+    private static void appendLine(StringBuilder sb, ByteBuffer window, Charset charset, int start, int end, 
+            int line, boolean marked, int column) {
+        int from = start;
+        int to = end;
+        if (to - from > MAX_LINE_BYTES) {
+            if (marked && column > 0) {
+                // bytes, not characters, but near enough to find the spot
+                from = Math.max(start, Math.min(start + column - 1 - MAX_LINE_BYTES / 2, end - MAX_LINE_BYTES));
+            }
+            to = from + MAX_LINE_BYTES;
+        }
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = window.get(from + i);
+        }
+        sb.append(marked ? ">> " : "   ");
+        sb.append(String.format("%8d | ", line));
+        if (from > start) {
+            sb.append("...");
+        }
+        sb.append(new String(bytes, charset));
+        if (to < end) {
+            sb.append("...");
+        }
+        sb.append('\n');
+    }
+}
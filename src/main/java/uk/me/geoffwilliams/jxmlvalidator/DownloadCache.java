@@ -0,0 +1,403 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk cache of downloaded documents.  Each response's ETag and
+ * Last-Modified headers are stored with its body and sent back as
+ * If-None-Match/If-Modified-Since the next time the URL is requested, so an
+ * unchanged document costs a 304 instead of a full download.  The cache is
+ * capped in size; the least recently used entries are deleted first.
+ * @author Geoff Williams
+ */
+public class DownloadCache {
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".properties";
+    private static final String KEY_URL = "url";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "lastModified";
+    private static final String KEY_SIZE = "size";
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final File directory;
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Validators stored for one cached URL
+     */
+    private static class Entry {
+        private String url;
+        private String etag;
+        private String lastModified;
+        private long size;
+    }
+
+    /**
+     * @param directory where cached bodies are kept.  Created if needed and
+     * any entries already there are reused
+     * @param maxBytes size cap for all cached bodies
+     */
+    public DownloadCache(File directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (! directory.isDirectory() && ! directory.mkdirs()) {
+            throw new IOException("Unable to create download cache directory " + directory);
+        }
+        load();
+    }
+
+    /**
+     * Rebuild the index from the metadata files, oldest access first so the
+     * LRU order survives restarts
+     */
+    private void load() {
+        File[] metaFiles = directory.listFiles();
+        List<File> found = new ArrayList<File>();
+        if (metaFiles != null) {
+            for (File metaFile : metaFiles) {
+                if (metaFile.getName().endsWith(META_SUFFIX)) {
+                    found.add(metaFile);
+                }
+            }
+        }
+        Collections.sort(found, new Comparator<File>() {
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+
+        for (File metaFile : found) {
+            String key = metaFile.getName().substring(0, metaFile.getName().length() - META_SUFFIX.length());
+            try {
+                Properties properties = new Properties();
+                InputStream is = new FileInputStream(metaFile);
+                try {
+                    properties.load(is);
+                } finally {
+                    is.close();
+                }
+                Entry entry = new Entry();
+                entry.url = properties.getProperty(KEY_URL);
+                entry.etag = properties.getProperty(KEY_ETAG);
+                entry.lastModified = properties.getProperty(KEY_LAST_MODIFIED);
+                entry.size = Long.parseLong(properties.getProperty(KEY_SIZE, "0"));
+                if (bodyFile(key).isFile()) {
+                    entries.put(key, entry);
+                    totalBytes += entry.size;
+                } else {
+                    metaFile.delete();
+                }
+            } catch (IOException ex) {
+                logger.debug("ignoring unreadable cache entry {}: {}", metaFile, ex.getMessage());
+            } catch (NumberFormatException ex) {
+                logger.debug("ignoring corrupt cache entry {}", metaFile);
+            }
+        }
+        logger.debug("download cache has {} entries, {} bytes", entries.size(), totalBytes);
+    }
+
+    /**
+     * Open a URL, using the cached copy if the server says it has not changed.
+     * Bodies of new or changed documents are written to the cache as the
+     * caller reads them and only kept if the stream is read to the end
+     * @param urlString URL to read
+     * @return stream of the document.  The caller must close it
+     */
+    public InputStream openStream(String urlString) throws IOException {
+        URL url = new URL(urlString);
+        URLConnection connection = url.openConnection();
+        if (! (connection instanceof HttpURLConnection)) {
+            return connection.getInputStream();
+        }
+        HttpURLConnection http = (HttpURLConnection) connection;
+
+        String key = key(urlString);
+        Entry cached;
+        synchronized (entries) {
+            cached = entries.get(key);
+        }
+        if (cached != null) {
+            if (cached.etag != null) {
+                http.setRequestProperty("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                http.setRequestProperty("If-Modified-Since", cached.lastModified);
+            }
+        }
+
+        if (cached != null && http.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            InputStream is = openCached(key);
+            if (is != null) {
+                hits.incrementAndGet();
+                bytesSaved.addAndGet(cached.size);
+                logger.debug("'{}' not modified, using cached copy", urlString);
+                return is;
+            }
+            // evicted since we asked - fetch it again without the validators
+            logger.debug("'{}' not modified but evicted from the cache, downloading again", urlString);
+            http.disconnect();
+            http = (HttpURLConnection) url.openConnection();
+        }
+        return download(urlString, http, key);
+    }
+
+    /**
+     * Open the cached body of an entry, holding the lock that eviction takes
+     * so it cannot be deleted between checking the entry and opening it
+     * @return stream of the body, or null if the entry has been evicted
+     */
+    private InputStream openCached(String key) throws IOException {
+        synchronized (entries) {
+            File body = bodyFile(key);
+            if (entries.get(key) == null || ! body.isFile()) {
+                return null;
+            }
+            metaFile(key).setLastModified(System.currentTimeMillis());
+            return new FileInputStream(body);
+        }
+    }
+
+    private InputStream download(String urlString, HttpURLConnection http, String key) throws IOException {
+        misses.incrementAndGet();
+        InputStream is = http.getInputStream();
+        Entry entry = new Entry();
+        entry.url = urlString;
+        entry.etag = http.getHeaderField("ETag");
+        entry.lastModified = http.getHeaderField("Last-Modified");
+        entry.size = http.getContentLengthLong();
+        if (entry.etag != null || entry.lastModified != null) {
+            File temp = File.createTempFile("download", ".part", directory);
+            is = new CachingInputStream(is, temp, key, entry);
+        }
+        return is;
+    }
+
+    /**
+     * Copies everything read into a temporary file which becomes the cached
+     * body once the end of the stream is reached
+     */
+    private class CachingInputStream extends FilterInputStream {
+        private final File temp;
+        private final String key;
+        private final Entry entry;
+        private OutputStream os;
+        private long size = 0;
+        private boolean complete = false;
+
+        CachingInputStream(InputStream in, File temp, String key, Entry entry) throws IOException {
+            super(in);
+            this.temp = temp;
+            this.key = key;
+            this.entry = entry;
+            this.os = new FileOutputStream(temp);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                complete = true;
+            } else {
+                os.write(b);
+                size++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count == -1) {
+                complete = true;
+            } else {
+                os.write(b, off, count);
+                size += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes still have to reach the cache
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int count = read(buffer, 0, buffer.length);
+            return count == -1 ? 0 : count;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (! complete && size == entry.size) {
+                    // parsers often stop just short of the end of the stream
+                    complete = super.read() == -1;
+                }
+                super.close();
+            } finally {
+                os.close();
+                if (complete) {
+                    entry.size = size;
+                    store(key, entry, temp);
+                } else {
+                    temp.delete();
+                }
+            }
+        }
+    }
+
+    private void store(String key, Entry entry, File temp) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(KEY_URL, entry.url);
+        if (entry.etag != null) {
+            properties.setProperty(KEY_ETAG, entry.etag);
+        }
+        if (entry.lastModified != null) {
+            properties.setProperty(KEY_LAST_MODIFIED, entry.lastModified);
+        }
+        properties.setProperty(KEY_SIZE, Long.toString(entry.size));
+
+        synchronized (entries) {
+            Files.move(temp.toPath(), bodyFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            OutputStream os = new FileOutputStream(metaFile(key));
+            try {
+                properties.store(os, null);
+            } finally {
+                os.close();
+            }
+
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                totalBytes -= previous.size;
+            }
+            totalBytes += entry.size;
+            evict(key);
+        }
+    }
+
+    /**
+     * Remove least recently used entries until the cache fits its cap.  The
+     * entry just stored is kept even if it is bigger than the cap on its own
+     */
+    private void evict(String newest) {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            if (! eldest.getKey().equals(newest)) {
+                logger.debug("evicting '{}' from download cache", eldest.getValue().url);
+                iterator.remove();
+                totalBytes -= eldest.getValue().size;
+                bodyFile(eldest.getKey()).delete();
+                metaFile(eldest.getKey()).delete();
+            }
+        }
+    }
+
+    private File bodyFile(String key) {
+        return new File(directory, key + BODY_SUFFIX);
+    }
+
+    private File metaFile(String key) {
+        return new File(directory, key + META_SUFFIX);
+    }
+
+    /**
+     * File name safe key for a URL
+     */
+    static String key(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(url.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 not available", ex);
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException("UTF-8 not available", ex);
+        }
+    }
+
+    /**
+     * Bytes that did not have to be downloaded because the cached copy was
+     * still current
+     */
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getTotalBytes() {
+        synchronized (entries) {
+            return totalBytes;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
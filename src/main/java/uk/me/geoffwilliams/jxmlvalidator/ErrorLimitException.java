@@ -0,0 +1,35 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Thrown from the ErrorReport callbacks to stop the parser once the error
+ * limit has been reached.  Validator treats it as the end of the document
+ * rather than as a failure
+ * @author Geoff Williams
+ */
+public class ErrorLimitException extends SAXException {
+    private static final long serialVersionUID = 1L;
+
+    public ErrorLimitException(String message) {
+        super(message);
+    }
+}
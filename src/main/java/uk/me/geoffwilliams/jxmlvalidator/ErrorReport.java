@@ -18,100 +18,365 @@
  */
 package uk.me.geoffwilliams.jxmlvalidator;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
 /**
- * Keeps track of validation errors detected
+ * Keeps track of validation errors detected.  Repeats of the same message
+ * are grouped (see MessageGroup) so a document with the same mistake on
+ * every line costs a few bytes per occurrence rather than a string each.
+ * The number of positions kept can be capped, and parsing stopped early once
+ * enough errors have been seen, so that badly broken documents do not
+ * exhaust memory or time.  Safe to share between threads, eg fragments of
+ * one document validated in parallel
  * @author Geoff Williams
  */
 public class ErrorReport implements ErrorHandler {
-
+    /**
+     * Most messages kept for replaying per document, see keepFindings()
+     */
+    public static final int MAX_KEPT_FINDINGS = 1000;
      
-    private List<String> fatal = new ArrayList<String>();
-    private List<String> error = new ArrayList<String>();
-    private List<String> warning = new ArrayList<String>();
-    
+    private Map<String, MessageGroup> fatal = new LinkedHashMap<String, MessageGroup>();
+    private Map<String, MessageGroup> error = new LinkedHashMap<String, MessageGroup>();
+    private Map<String, MessageGroup> warning = new LinkedHashMap<String, MessageGroup>();
+    private final int maxErrors;
+    private final boolean failFast;
+    private int fatalCount = 0;
+    private int errorCount = 0;
+    private int warningCount = 0;
+    private boolean stopped = false;
+    private int stoppedAtLine = 0;
+    private final ReportWriter reportWriter;
+    private final String document;
+    private List<Finding> findings;
+    private int droppedFindings = 0;
+
+    /**
+     * One message as it was reported, kept so that it can be replayed later
+     */
+    public static class Finding {
+        private final ReportWriter.Severity severity;
+        private final String systemId;
+        private final int line;
+        private final int column;
+        private final String message;
+
+        public Finding(ReportWriter.Severity severity, String systemId, int line, int column, String message) {
+            this.severity = severity;
+            this.systemId = systemId;
+            this.line = line;
+            this.column = column;
+            this.message = message;
+        }
+
+        public ReportWriter.Severity getSeverity() {
+            return severity;
+        }
+
+        public String getSystemId() {
+            return systemId;
+        }
 
-    private String getParseExceptionInfo(SAXParseException spe) {
+        public int getLine() {
+            return line;
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * Keep every message and never stop the parser
+     */
+    public ErrorReport() {
+        this(0, false);
+    }
+
+    /**
+     * @param maxErrors number of positions of each kind of message to keep,
+     * and number of errors after which parsing stops, or 0 for no limit
+     * @param failFast stop parsing at the first error
+     */
+    public ErrorReport(int maxErrors, boolean failFast) {
+        this(maxErrors, failFast, null, null);
+    }
+
+    /**
+     * @param maxErrors number of positions of each kind of message to keep,
+     * and number of errors after which parsing stops, or 0 for no limit
+     * @param failFast stop parsing at the first error
+     * @param reportWriter writer to pass every finding to as it is reported,
+     * or null
+     * @param document name of the document, for the report writer
+     */
+    public ErrorReport(int maxErrors, boolean failFast, ReportWriter reportWriter, String document) {
+        this.maxErrors = maxErrors;
+        this.failFast = failFast;
+        this.reportWriter = reportWriter;
+        this.document = document;
+    }
+
+    /**
+     * Keep the first MAX_KEPT_FINDINGS messages as well as grouping them, see
+     * getFindings().  Only worth the memory when the findings are going to be
+     * stored
+     */
+    synchronized void keepFindings() {
+        findings = new ArrayList<Finding>();
+    }
+
+    /**
+     * @return the messages kept in the order reported, or null if
+     * keepFindings() was not called
+     */
+    public synchronized List<Finding> getFindings() {
+        return findings == null ? null : new ArrayList<Finding>(findings);
+    }
+
+    /**
+     * @return number of messages after the first MAX_KEPT_FINDINGS, which
+     * were not kept
+     */
+    public synchronized int getDroppedFindings() {
+        return droppedFindings;
+    }
+
+    /**
+     * Report messages kept from an earlier run again, as if the parser had
+     * just found them
+     * @throws ErrorLimitException if the messages reach the error limit
+     */
+    public void replay(List<Finding> previous) throws SAXException {
+        for (Finding finding : previous) {
+            SAXParseException spe = new SAXParseException(finding.getMessage(), null, finding.getSystemId(), 
+                    finding.getLine(), finding.getColumn());
+            switch (finding.getSeverity()) {
+                case WARNING:
+                    warning(spe);
+                    break;
+                case ERROR:
+                    error(spe);
+                    break;
+                default:
+                    fatalError(spe);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Add an occurrence to the group for its message
+     * @param count number of messages of this kind so far, including this one
+     */
+    private void add(Map<String, MessageGroup> groups, int count, ReportWriter.Severity severity, 
+            SAXParseException spe) throws SAXException {
         String systemId = spe.getSystemId();
         if (systemId == null) {
             systemId = "null";
         }
-
-        String info = "URI=" + systemId + " Line=" + spe.getLineNumber() +
-                      ": " + spe.getMessage();
-        return info;
+        if (findings != null) {
+            if (findings.size() < MAX_KEPT_FINDINGS) {
+                findings.add(new Finding(severity, systemId, spe.getLineNumber(), spe.getColumnNumber(), 
+                        spe.getMessage()));
+            } else {
+                droppedFindings++;
+            }
+        }
+        if (reportWriter != null) {
+            try {
+                reportWriter.finding(document, severity, systemId, spe.getLineNumber(), spe.getColumnNumber(), 
+                        spe.getMessage());
+            } catch (IOException ex) {
+                throw new SAXException("Unable to write report: " + ex.getMessage(), ex);
+            }
+        }
+        MessageGroup.Template template = MessageGroup.Template.parse(spe.getMessage());
+        String key = systemId + '\n' + template.getKey();
+        MessageGroup group = groups.get(key);
+        if (group == null) {
+            group = new MessageGroup(systemId, template);
+            groups.put(key, group);
+        }
+        group.add(template, spe.getLineNumber(), spe.getColumnNumber(), maxErrors <= 0 || count <= maxErrors);
     }
 
-    public void warning(SAXParseException spe) throws SAXException {
-        warning.add(getParseExceptionInfo(spe));
+    public synchronized void warning(SAXParseException spe) throws SAXException {
+        warningCount++;
+        add(warning, warningCount, ReportWriter.Severity.WARNING, spe);
     }
         
-    public void error(SAXParseException spe) throws SAXException {
-        error.add(getParseExceptionInfo(spe));
+    public synchronized void error(SAXParseException spe) throws SAXException {
+        errorCount++;
+        add(error, errorCount, ReportWriter.Severity.ERROR, spe);
+        checkLimit(spe);
+    }
+
+    public synchronized void fatalError(SAXParseException spe) throws SAXException {
+        fatalCount++;
+        add(fatal, fatalCount, ReportWriter.Severity.FATAL, spe);
+    }
+
+    /**
+     * Stop the parser if fail fast is on or the error limit has been reached.
+     * Not needed for fatal errors - the parser always stops after those
+     */
+    private void checkLimit(SAXParseException spe) throws ErrorLimitException {
+        int errors = errorCount + fatalCount;
+        if (failFast || (maxErrors > 0 && errors >= maxErrors)) {
+            stopped = true;
+            stoppedAtLine = spe.getLineNumber();
+            throw new ErrorLimitException("Stopped validating after " + errors + 
+                    (errors == 1 ? " error" : " errors") + (stoppedAtLine > 0 ? " at line " + stoppedAtLine : ""));
+        }
+    }
+
+    private static List<String> summaries(Map<String, MessageGroup> groups) {
+        List<String> summaries = new ArrayList<String>(groups.size());
+        for (MessageGroup group : groups.values()) {
+            summaries.add(group.toString());
+        }
+        return summaries;
+    }
+
+    /**
+     * @return one summary line per distinct fatal error
+     */
+    public synchronized List<String> getFatal() {
+        return summaries(fatal);
+    }
+
+    /**
+     * @return one summary line per distinct error
+     */
+    public synchronized List<String> getError() {
+        return summaries(error);
+    }
+
+    /**
+     * @return one summary line per distinct warning
+     */
+    public synchronized List<String> getWarning() {
+        return summaries(warning);
     }
 
-    public void fatalError(SAXParseException spe) throws SAXException {
-        fatal.add(getParseExceptionInfo(spe));
+    public synchronized List<MessageGroup> getFatalGroups() {
+        return new ArrayList<MessageGroup>(fatal.values());
     }
 
-    public List<String> getFatal() {
-        return fatal;
+    public synchronized List<MessageGroup> getErrorGroups() {
+        return new ArrayList<MessageGroup>(error.values());
     }
 
-    public List<String> getError() {
-        return error;
+    public synchronized List<MessageGroup> getWarningGroups() {
+        return new ArrayList<MessageGroup>(warning.values());
     }
 
-    public List<String> getWarning() {
-        return warning;
+    public synchronized int getFatalCount() {
+        return fatalCount;
+    }
+
+    public synchronized int getErrorCount() {
+        return errorCount;
+    }
+
+    public synchronized int getWarningCount() {
+        return warningCount;
+    }
+
+    /**
+     * @return number of occurrences counted but whose position was not kept
+     * because of the limit
+     */
+    public synchronized int getSuppressed() {
+        return fatalCount - kept(fatal) + errorCount - kept(error) + warningCount - kept(warning);
+    }
+
+    private static int kept(Map<String, MessageGroup> groups) {
+        int kept = 0;
+        for (MessageGroup group : groups.values()) {
+            kept += group.getKept();
+        }
+        return kept;
+    }
+
+    /**
+     * @return true if parsing was stopped before the end of the document
+     */
+    public synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * @return line parsing was stopped at, -1 if it was stopped where the
+     * parser had no line number, or 0 if it was not stopped
+     */
+    public synchronized int getStoppedAtLine() {
+        return stoppedAtLine;
     }
     
-    public boolean isValid() {
-        return fatal.size() + error.size() + warning.size() == 0;
+    public synchronized boolean isValid() {
+        return fatalCount + errorCount + warningCount == 0;
     }
     
     /**
      * Get exit status code...
      * @return 
      */
-    public int exitStatus() {
+    public synchronized int exitStatus() {
         int status;
         if (isValid()) {
             status = App.STATUS_OK;
-        } else if (warning.size() > 0) {
-            status = App.STATUS_WARNINGS;
-        } else if (error.size() > 0) {
-            status = App.STATUS_WARNINGS;
-        } else if (fatal.size() > 0) {
+        } else if (fatalCount > 0) {
             status = App.STATUS_FATAL;
+        } else if (errorCount > 0) {
+            status = App.STATUS_ERRORS;
+        } else if (warningCount > 0) {
+            status = App.STATUS_WARNINGS;
         } else {
             status = App.STATUS_UNKNOWN;
         }
         return status;
     }
     
-    public String toString() {
+    public synchronized String toString() {
         StringBuilder sb = new StringBuilder();
         formatResult(sb, "Fatal", fatal);
         formatResult(sb, "Error", error);
         formatResult(sb, "Warning", warning);
+        int suppressed = getSuppressed();
+        if (suppressed > 0) {
+            sb.append(String.format("Positions of %,d messages beyond the limit were not kept%n", suppressed));
+        }
+        if (stopped) {
+            sb.append("Validation stopped");
+            if (stoppedAtLine > 0) {
+                sb.append(" at line ").append(stoppedAtLine);
+            }
+            sb.append(" - the rest of the document was not checked\n");
+        }
         return sb.toString();
     }
     
-    private void formatResult(StringBuilder sb, String classifier, List<String> messages) {
+    private void formatResult(StringBuilder sb, String classifier, Map<String, MessageGroup> groups) {
         sb.append(classifier);
         sb.append(":\n");
-        for (String message: messages) {
-            sb.append(message);
+        for (MessageGroup group : groups.values()) {
+            sb.append(group);
             sb.append("\n");
         }
         sb.append("\n");
     }
     
 }
-
@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.net.URLConnection;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
@@ -33,6 +34,20 @@ import org.slf4j.Logger;
  */
 public class FileDownloader {
     private Logger logger = LoggerFactory.getLogger(this.getClass());
+    private DownloadCache downloadCache;
+    private long contentLength = -1;
+
+    public FileDownloader() {
+    }
+
+    /**
+     * @param downloadCache cache to fetch documents through, or null to
+     * always download them in full
+     */
+    public FileDownloader(DownloadCache downloadCache) {
+        this.downloadCache = downloadCache;
+    }
+
     /**
      * Download a file and save it temporarily.
      * @param URL
@@ -42,8 +57,7 @@ public class FileDownloader {
         logger.info("Downloading file from '{}'...", urlString);
         File tempfile = File.createTempFile("jxmlvalidator-temp", ".xml");
         tempfile.deleteOnExit();
-        URL url = new URL(urlString);
-        InputStream is = url.openStream();
+        InputStream is = open(urlString);
         OutputStream os = new FileOutputStream(tempfile);
         IOUtils.copy(is, os);
         is.close();
@@ -52,5 +66,37 @@ public class FileDownloader {
         logger.debug("...file downloaded to '{}'", filename);
         return filename;
     }
+
+    /**
+     * Open a URL for reading so it can be parsed while it downloads.  The
+     * caller must close the stream
+     * @param urlString URL to read
+     * @return stream of the response body
+     */
+    public InputStream openStream(String urlString) throws IOException {
+        logger.info("Streaming file from '{}'...", urlString);
+        return open(urlString);
+    }
+
+    /**
+     * @return length of the last URL opened, as reported by the server, or
+     * -1 if it did not say or the body came through the download cache
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    private InputStream open(String urlString) throws IOException {
+        InputStream is;
+        contentLength = -1;
+        if (downloadCache == null) {
+            URLConnection connection = new URL(urlString).openConnection();
+            is = connection.getInputStream();
+            contentLength = connection.getContentLengthLong();
+        } else {
+            is = downloadCache.openStream(urlString);
+        }
+        return is;
+    }
     
 }
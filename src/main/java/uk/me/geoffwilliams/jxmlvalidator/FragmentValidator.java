@@ -0,0 +1,1208 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.LocatorImpl;
+
+/**
+ * Validates a document made of many repeated elements (eg millions of
+ * &lt;record&gt;s under one root) on several threads.
+ * <p>
+ * The document is streamed once through a light scanner that only finds
+ * where tags start and end.  Runs of the repeated element are copied out
+ * byte for byte into batches, each wrapped in an element carrying the
+ * namespace declarations in scope, and the batches are parsed and validated
+ * in parallel against the element's global declaration in the schema.
+ * Findings go to one shared ErrorReport with the line and column they have
+ * in the original document.
+ * <p>
+ * Everything around the repeated elements - the skeleton - is validated on
+ * the reading thread as it is scanned, with each repeated element standing
+ * in as an empty element so that its place in its parent is still checked.
+ * Only the first hundred of a run are passed on, so a minOccurs or maxOccurs
+ * above that on the repeated element is not checked.
+ * Identity constraints (xs:key, xs:unique, ID/IDREF) are not checked across
+ * batches or between the skeleton and the batches.  Documents in encodings
+ * where markup is not plain ASCII bytes (UTF-16, EBCDIC...) cannot be split.
+ * @author Geoff Williams
+ */
+public class FragmentValidator {
+    /**
+     * Roughly how much of the document goes in each batch - enough that the
+     * cost of starting a parse is lost in the work done
+     */
+    private static final int BATCH_BYTES = 256 * 1024;
+    private static final int BATCHES_PER_THREAD = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PEEK_SIZE = 1024;
+    private static final String UNDECLARED_ELEMENT = "cvc-elt.1";
+    /**
+     * Number of the repeated elements in a row passed on to the skeleton.
+     * Each costs it a couple of findings it drops, at several microseconds
+     * apiece, and after the first few the rest change nothing unless the
+     * parent has a minOccurs or maxOccurs on them beyond this
+     */
+    private static final int SKELETON_RUN = 100;
+    /**
+     * Each batch is validated as the content of an element nothing declares,
+     * which makes Xerces validate what is inside against the global
+     * declarations
+     */
+    private static final String BATCH_NAMESPACE = "urn:jxmlvalidator:fragments";
+    private static final String BATCH_PREFIX = "jxmlvalidator-fragments";
+    private static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([A-Za-z0-9._:-]+)[\"']");
+    private static final Pattern NAMESPACE_DECLARATION = Pattern.compile(
+            "\\sxmlns(?::([^\\s=]+))?\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+    private static final Pattern ATTRIBUTE = Pattern.compile(
+            "\\s([^\\s=/>]+)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Schema schema;
+    private final String elementNamespace;
+    private final String elementName;
+    private final int threads;
+    private final SchemaResolver schemaResolver;
+    /**
+     * Workers borrow a validator for each batch - setting one up costs more
+     * than validating a small batch
+     */
+    private final ValidatorPool validatorPool;
+    private final boolean externalEntities;
+
+    /**
+     * @param schema compiled schema with a global declaration for the element
+     * @param element name of the repeated element, either a local name (in
+     * any namespace) or {namespace}name
+     * @param threads number of batches to validate at once
+     * @param schemaResolver resolver for schemas and external entities, or
+     * null
+     * @param validatorPool pool to borrow validators from
+     * @param externalEntities false to refuse to load external DTDs and
+     * entities
+     */
+    public FragmentValidator(Schema schema, String element, int threads, SchemaResolver schemaResolver, 
+            ValidatorPool validatorPool, boolean externalEntities) {
+        QName name = QName.valueOf(element);
+        this.schema = schema;
+        this.elementNamespace = element.startsWith("{") ? name.getNamespaceURI() : null;
+        this.elementName = name.getLocalPart();
+        this.threads = threads;
+        this.schemaResolver = schemaResolver;
+        this.validatorPool = validatorPool;
+        this.externalEntities = externalEntities;
+    }
+
+    /**
+     * Work out the encoding of a document from its start, if it is one the
+     * scanner can read
+     * @return the encoding, or null if the document cannot be split
+     */
+    static Charset splittableEncoding(byte[] head, int length) {
+        if (length >= 2 && ((head[0] == (byte) 0xfe && head[1] == (byte) 0xff) || 
+                (head[0] == (byte) 0xff && head[1] == (byte) 0xfe) || head[0] == 0 || head[1] == 0)) {
+            // UTF-16 or UTF-32
+            return null;
+        }
+        if (length >= 4 && head[0] == 0x4c && head[1] == 0x6f && head[2] == (byte) 0xa7 && head[3] == (byte) 0x94) {
+            // EBCDIC
+            return null;
+        }
+        Charset charset = Charset.forName("UTF-8");
+        String start = new String(head, 0, length, Charset.forName("ISO-8859-1"));
+        if (start.startsWith("<?xml")) {
+            int end = start.indexOf("?>");
+            Matcher matcher = ENCODING.matcher(end < 0 ? start : start.substring(0, end));
+            if (matcher.find()) {
+                String name = matcher.group(1);
+                String upper = name.toUpperCase();
+                if (! (upper.equals("UTF-8") || upper.equals("UTF8") || upper.equals("US-ASCII") || 
+                        upper.equals("ASCII") || upper.startsWith("ISO-8859-") || upper.startsWith("WINDOWS-"))) {
+                    return null;
+                }
+                try {
+                    charset = Charset.forName(name);
+                } catch (IllegalArgumentException ex) {
+                    // let the parser complain about it
+                    return null;
+                }
+            }
+        }
+        return charset;
+    }
+
+    /**
+     * Shared by everything validating one document
+     */
+    private static class State {
+        private final ErrorReport errorReport;
+        private final String systemId;
+        private volatile ErrorLimitException stopped;
+        private volatile SAXException failure;
+
+        State(ErrorReport errorReport, String systemId) {
+            this.errorReport = errorReport;
+            this.systemId = systemId;
+        }
+
+        boolean isFinished() {
+            return stopped != null || failure != null;
+        }
+    }
+
+    /**
+     * Validate a document
+     * @param is document content, supporting mark/reset.  Not closed
+     * @param systemId URI of the document, for error messages and resolving
+     * relative entities
+     * @param errorReport report to add findings to
+     * @return false, having read nothing, if the document's encoding means it
+     * cannot be split
+     * @throws ErrorLimitException if the report's error limit stopped
+     * validation early
+     * @throws SAXParseException if the document is not well formed
+     */
+    public boolean validate(InputStream is, String systemId, ErrorReport errorReport) 
+            throws SAXException, IOException {
+        byte[] head = new byte[PEEK_SIZE];
+        is.mark(PEEK_SIZE);
+        int length = 0;
+        int count;
+        while (length < head.length && (count = is.read(head, length, head.length - length)) > 0) {
+            length += count;
+        }
+        is.reset();
+        Charset charset = splittableEncoding(head, length);
+        if (charset == null) {
+            logger.warn("{} is not in an encoding that can be split - validating it whole", systemId);
+            return false;
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "fragment-validator-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        State state = new State(errorReport, systemId);
+        Splitter splitter = new Splitter(is, charset, workers, new Semaphore(threads * BATCHES_PER_THREAD), state, 
+                new Skeleton(state));
+        SAXParseException malformed = null;
+        try {
+            splitter.run();
+        } catch (SAXParseException ex) {
+            malformed = ex;
+        } finally {
+            workers.shutdown();
+            try {
+                while (! workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                    logger.debug("waiting for fragments to be validated...");
+                }
+            } catch (InterruptedException ex) {
+                workers.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        logger.debug("validated {} fragments in {} batches", splitter.fragments, splitter.batches);
+        if (splitter.fragments == 0) {
+            logger.warn("No <{}> elements found - {} was validated on one thread", elementName, systemId);
+        }
+        if (state.stopped != null) {
+            throw state.stopped;
+        }
+        if (state.failure != null) {
+            throw state.failure;
+        }
+        if (malformed != null) {
+            errorReport.fatalError(malformed);
+            throw malformed;
+        }
+        return true;
+    }
+
+    /**
+     * Check that the schema has a global declaration for the element, as
+     * otherwise the fragments would be skipped rather than validated
+     */
+    private void checkDeclared(String uri, String localName) throws SAXException {
+        final boolean[] undeclared = new boolean[1];
+        ValidatorHandler handler = schema.newValidatorHandler();
+        handler.setErrorHandler(new DefaultHandler() {
+            @Override
+            public void error(SAXParseException spe) {
+                if (spe.getMessage() != null && spe.getMessage().startsWith(UNDECLARED_ELEMENT)) {
+                    undeclared[0] = true;
+                }
+            }
+        });
+        handler.startDocument();
+        handler.startElement(uri, localName, localName, new AttributesImpl());
+        if (undeclared[0]) {
+            throw new SAXException("<" + localName + "> is not declared as a global element in the schema, " + 
+                    "so it cannot be validated on its own");
+        }
+    }
+
+    /**
+     * An element open around the fragments
+     */
+    private static class OpenElement {
+        private final String name;
+        private final Map<String, String> declarations;
+
+        OpenElement(String name, Map<String, String> declarations) {
+            this.name = name;
+            this.declarations = declarations;
+        }
+    }
+
+    /**
+     * A growable byte array
+     */
+    private static class Bytes {
+        private byte[] data;
+        private int length = 0;
+
+        Bytes(int capacity) {
+            data = new byte[capacity];
+        }
+
+        void add(int b) {
+            if (length == data.length) {
+                byte[] grown = new byte[data.length * 2];
+                System.arraycopy(data, 0, grown, 0, length);
+                data = grown;
+            }
+            data[length++] = (byte) b;
+        }
+
+        void add(byte[] bytes, int offset, int count) {
+            if (length + count > data.length) {
+                byte[] grown = new byte[Math.max(data.length * 2, length + count)];
+                System.arraycopy(data, 0, grown, 0, length);
+                data = grown;
+            }
+            System.arraycopy(bytes, offset, data, length, count);
+            length += count;
+        }
+    }
+
+    /**
+     * Scans the document for tags, copying runs of the repeated element into
+     * batches and handing them to the workers.  Only markup is recognised:
+     * comments, CDATA sections, processing instructions and quoted attribute
+     * values are skipped over so that a '&lt;' or '&gt;' inside them is not
+     * taken for a tag
+     */
+    private class Splitter {
+        private final InputStream in;
+        private final Charset charset;
+        private final boolean utf8;
+        private final ExecutorService workers;
+        private final Semaphore slots;
+        private final State state;
+        private final Skeleton skeleton;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position = 0;
+        private int limit = 0;
+        /**
+         * Bytes of the buffer before this have been copied into the batch
+         * or were not wanted
+         */
+        private int copied = 0;
+        private int line = 1;
+        private int column = 0;
+
+        private final List<OpenElement> open = new ArrayList<OpenElement>();
+        private final Bytes tag = new Bytes(256);
+        /**
+         * Text of the skeleton since the last markup
+         */
+        private final Bytes text = new Bytes(256);
+        /**
+         * ']' bytes just read in the text of the skeleton, to catch "]]&gt;"
+         */
+        private int brackets = 0;
+        private byte[] xmlDeclaration;
+        private byte[] doctype;
+        private boolean checked = false;
+        /**
+         * The root element has been closed
+         */
+        private boolean ended = false;
+
+        /**
+         * Batch being filled, or null between runs of the element
+         */
+        private Bytes batch;
+        private int batchLine;
+        private int batchColumn;
+        private int batchDepth;
+        private Map<String, String> batchDeclarations;
+        /**
+         * Length of the batch up to the end of the last complete element -
+         * anything after is dropped if the run ends
+         */
+        private int batchEnd;
+        /**
+         * Depth inside the element being copied, 0 between elements
+         */
+        private int depth = 0;
+        /**
+         * Repeated elements since the skeleton last had anything else
+         */
+        private int skeletonRun = 0;
+        private int fragments = 0;
+        private int batches = 0;
+        private boolean stopping = false;
+
+        Splitter(InputStream in, Charset charset, ExecutorService workers, Semaphore slots, State state, 
+                Skeleton skeleton) {
+            this.in = in;
+            this.charset = charset;
+            this.utf8 = "UTF-8".equals(charset.name());
+            this.workers = workers;
+            this.slots = slots;
+            this.state = state;
+            this.skeleton = skeleton;
+        }
+
+        /**
+         * @return the next byte, or -1 at the end of the document
+         */
+        private int read() throws IOException {
+            if (position == limit) {
+                flush();
+                copied = 0;
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            int b = buffer[position++] & 0xff;
+            if (b == '\n') {
+                line++;
+                column = 0;
+            } else if (! utf8 || (b & 0xc0) != 0x80) {
+                // count characters, not the continuation bytes of UTF-8
+                column++;
+            }
+            return b;
+        }
+
+        /**
+         * Copy what has been read since the last call into the batch, if
+         * there is one
+         */
+        private void flush() {
+            if (batch != null) {
+                batch.add(buffer, copied, position - copied);
+            }
+            copied = position;
+        }
+
+        private SAXParseException error(String message) {
+            return new SAXParseException(message, null, state.systemId, line, column);
+        }
+
+        private int readRequired() throws IOException, SAXParseException {
+            int b = read();
+            if (b < 0) {
+                throw error("XML document structures must start and end within the same entity.");
+            }
+            return b;
+        }
+
+        /**
+         * Read up to and including the given terminator.  A partial match
+         * falls back to the longest part of the terminator that still ends
+         * what has been read (Knuth-Morris-Pratt), so "]]]&gt;" ends a CDATA
+         * section
+         */
+        private void readUntil(String terminator, Bytes into) throws IOException, SAXParseException {
+            int[] fallback = new int[terminator.length()];
+            for (int i = 1, k = 0; i < terminator.length(); i++) {
+                while (k > 0 && terminator.charAt(i) != terminator.charAt(k)) {
+                    k = fallback[k - 1];
+                }
+                if (terminator.charAt(i) == terminator.charAt(k)) {
+                    k++;
+                }
+                fallback[i] = k;
+            }
+            int matched = 0;
+            while (matched < terminator.length()) {
+                int b = readRequired();
+                if (into != null) {
+                    into.add(b);
+                }
+                while (matched > 0 && b != terminator.charAt(matched)) {
+                    matched = fallback[matched - 1];
+                }
+                if (b == terminator.charAt(matched)) {
+                    matched++;
+                }
+            }
+        }
+
+        /**
+         * Read the rest of a tag up to its closing '&gt;', skipping quoted
+         * values (and, for a DOCTYPE, the internal subset)
+         * @return the byte before the '&gt;'
+         */
+        private int readTag(Bytes into, boolean doctype) throws IOException, SAXParseException {
+            int quote = 0;
+            int brackets = 0;
+            int previous = 0;
+            while (true) {
+                int b = readRequired();
+                if (into != null) {
+                    into.add(b);
+                }
+                if (quote != 0) {
+                    if (b == quote) {
+                        quote = 0;
+                    }
+                } else if (b == '"' || b == '\'') {
+                    quote = b;
+                } else if (doctype && b == '[') {
+                    brackets++;
+                } else if (doctype && b == ']') {
+                    brackets--;
+                } else if (b == '>' && brackets == 0) {
+                    return previous;
+                }
+                previous = b;
+            }
+        }
+
+        void run() throws SAXException, IOException {
+            int b;
+            boolean started = false;
+            skeleton.at(line, column);
+            skeleton.handler.startDocument();
+            while ((b = read()) >= 0) {
+                if (b == '<') {
+                    markup();
+                    started = true;
+                    if (stopping) {
+                        return;
+                    }
+                } else if (depth == 0) {
+                    if (! started && line == 1 && column == 1 && b == 0xef) {
+                        // UTF-8 byte order mark
+                        readRequired();
+                        readRequired();
+                        column = 0;
+                    } else if (! open.isEmpty()) {
+                        if (b == '>' && brackets >= 2) {
+                            // the parser reports it just past the '>'
+                            throw new SAXParseException("The character sequence \"]]>\" must not appear in " 
+                                    + "content unless used to mark the end of a CDATA section.", null, 
+                                    state.systemId, line, column + 1);
+                        }
+                        brackets = b == ']' ? brackets + 1 : 0;
+                        text.add(b);
+                        if (batch != null && ! isWhitespace(b)) {
+                            // text between the elements ends the run
+                            endRun();
+                        }
+                    } else if (! isWhitespace(b)) {
+                        throw error(ended ? "Content is not allowed in trailing section." 
+                                : "Content is not allowed in prolog.");
+                    }
+                }
+            }
+            if (depth > 0 || ! open.isEmpty()) {
+                // let the parser have a go at what was copied - its message
+                // will be more to the point
+                endRun();
+                throw error("XML document structures must start and end within the same entity.");
+            }
+            if (! started) {
+                throw error("Premature end of file.");
+            }
+            endRun();
+            skeleton.at(line, column + 1);
+            skeleton.handler.endDocument();
+        }
+
+        private boolean isWhitespace(int b) {
+            return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+        }
+
+        /**
+         * Handle markup, having just read its '&lt;'
+         */
+        private void markup() throws SAXException, IOException {
+            int startLine = line;
+            int startColumn = column;
+            boolean copying = depth > 0;
+            if (! copying && text.length > 0) {
+                characters(text.data, 0, text.length);
+                text.length = 0;
+            }
+            brackets = 0;
+            Bytes into = copying ? null : tag;
+            tag.length = 0;
+            tag.add('<');
+            int b = readRequired();
+            if (into != null) {
+                into.add(b);
+            }
+            if (ended && b != '!' && b != '?') {
+                throw error("The markup in the document following the root element must be well-formed.");
+            }
+            if (b == '!') {
+                markupDeclaration(into);
+            } else if (b == '?') {
+                if (copying) {
+                    readUntil("?>", null);
+                } else {
+                    processingInstruction(startLine == 1 && startColumn == 1);
+                }
+                if (! copying && startLine == 1 && startColumn == 1 && tag.length > 5 && 
+                        new String(tag.data, 0, 6, charset).equals("<?xml ")) {
+                    xmlDeclaration = copy(tag);
+                }
+            } else if (b == '/') {
+                readTag(into, false);
+                if (copying) {
+                    depth--;
+                    if (depth == 0) {
+                        endFragment();
+                    }
+                } else {
+                    endTag();
+                }
+            } else {
+                boolean empty = readTag(into, false) == '/';
+                if (copying) {
+                    if (! empty) {
+                        depth++;
+                    }
+                } else {
+                    startTag(empty, startLine, startColumn);
+                }
+            }
+        }
+
+        /**
+         * Comment, CDATA section or DOCTYPE
+         */
+        private void markupDeclaration(Bytes into) throws SAXException, IOException {
+            int b = readRequired();
+            if (into != null) {
+                into.add(b);
+            }
+            if (b == '-') {
+                readComment(into);
+            } else if (b == '[') {
+                readUntil("]]>", into);
+                if (depth == 0 && batch != null) {
+                    // text between the elements ends the run
+                    endRun();
+                }
+                if (depth == 0 && ! open.isEmpty()) {
+                    // "<![CDATA[" ... "]]>"
+                    String cdata = new String(tag.data, 9, tag.length - 12, charset);
+                    skeletonRun = 0;
+                    skeleton.at(line, column + 1);
+                    skeleton.handler.characters(cdata.toCharArray(), 0, cdata.length());
+                }
+            } else {
+                readTag(into, true);
+                if (depth == 0 && open.isEmpty()) {
+                    doctype = copy(tag);
+                }
+            }
+        }
+
+        /**
+         * Read the rest of a comment, having read "&lt;!-".  As in the
+         * parser, "--" may only end it
+         */
+        private void readComment(Bytes into) throws IOException, SAXParseException {
+            int b = readRequired();
+            if (into != null) {
+                into.add(b);
+            }
+            if (b != '-') {
+                throw error("The string \"<!--\" was expected.");
+            }
+            int dashes = 0;
+            while (true) {
+                b = readRequired();
+                if (into != null) {
+                    into.add(b);
+                }
+                if (dashes >= 2) {
+                    if (b == '>') {
+                        return;
+                    }
+                    throw error("The string \"--\" is not permitted within comments.");
+                }
+                dashes = b == '-' ? dashes + 1 : 0;
+            }
+        }
+
+        /**
+         * Read the rest of a processing instruction into the tag, having read
+         * "&lt;?".  Only the XML declaration, right at the start, may have
+         * "xml" as its target
+         */
+        private void processingInstruction(boolean start) throws IOException, SAXParseException {
+            int b = readRequired();
+            tag.add(b);
+            while (! isWhitespace(b) && b != '?') {
+                b = readRequired();
+                tag.add(b);
+            }
+            String target = new String(tag.data, 2, tag.length - 3, charset);
+            if (target.isEmpty()) {
+                throw error("The processing instruction must begin with the name of the target.");
+            }
+            if (target.equalsIgnoreCase("xml") && ! (start && target.equals("xml"))) {
+                throw error("The processing instruction target matching \"[xX][mM][lL]\" is not allowed.");
+            }
+            while (b == '?') {
+                b = readRequired();
+                tag.add(b);
+            }
+            if (b != '>') {
+                readUntil("?>", tag);
+            }
+        }
+
+        private byte[] copy(Bytes bytes) {
+            byte[] copy = new byte[bytes.length];
+            System.arraycopy(bytes.data, 0, copy, 0, bytes.length);
+            return copy;
+        }
+
+        private String tagName(int start) {
+            int end = start;
+            while (end < tag.length && ! isWhitespace(tag.data[end]) && tag.data[end] != '>' && tag.data[end] != '/') {
+                end++;
+            }
+            return new String(tag.data, start, end - start, charset);
+        }
+
+        private Map<String, String> declarations() {
+            Map<String, String> declarations = new LinkedHashMap<String, String>();
+            String text = new String(tag.data, 0, tag.length, charset);
+            if (text.contains("xmlns")) {
+                Matcher matcher = NAMESPACE_DECLARATION.matcher(text);
+                while (matcher.find()) {
+                    String prefix = matcher.group(1) == null ? "" : matcher.group(1);
+                    String uri = matcher.group(2) == null ? matcher.group(3) : matcher.group(2);
+                    declarations.put(prefix, unescape(uri));
+                }
+            }
+            return declarations;
+        }
+
+        private String resolve(String prefix, Map<String, String> declarations) {
+            String uri = declarations.get(prefix);
+            for (int i = open.size() - 1; uri == null && i >= 0; i--) {
+                uri = open.get(i).declarations.get(prefix);
+            }
+            return uri == null ? "" : uri;
+        }
+
+        private void startTag(boolean empty, int startLine, int startColumn) throws SAXException, IOException {
+            String name = tagName(1);
+            int colon = name.indexOf(':');
+            String localName = colon < 0 ? name : name.substring(colon + 1);
+            boolean matches = elementName.equals(localName) && open.size() > 0;
+            Map<String, String> declarations = null;
+            String uri = null;
+            if (! matches || elementNamespace != null || ! checked || skeletonRun < SKELETON_RUN) {
+                declarations = declarations();
+                uri = resolve(colon < 0 ? "" : name.substring(0, colon), declarations);
+                matches = matches && (elementNamespace == null || elementNamespace.equals(uri));
+            }
+            skeleton.at(line, column + 1);
+            if (! matches) {
+                endRun();
+                skeletonRun = 0;
+                for (Map.Entry<String, String> declaration : declarations.entrySet()) {
+                    skeleton.handler.startPrefixMapping(declaration.getKey(), declaration.getValue());
+                }
+                skeleton.handler.startElement(uri, localName, name, attributes(declarations));
+                OpenElement element = new OpenElement(name, declarations);
+                if (empty) {
+                    endElement(element, uri, localName);
+                } else {
+                    open.add(element);
+                }
+                return;
+            }
+
+            if (! checked) {
+                checkDeclared(uri, localName);
+                checked = true;
+            }
+            if (batch != null && batchDepth != open.size()) {
+                endRun();
+            }
+            if (batch == null) {
+                // read before there was a batch to copy it into
+                startRun(startLine, startColumn);
+                batch.add(tag.data, 0, tag.length);
+                copied = position;
+            }
+            fragments++;
+            if (skeletonRun++ < SKELETON_RUN) {
+                skeleton.fragment(uri, localName, name);
+            }
+            if (empty) {
+                endFragment();
+            } else {
+                depth = 1;
+            }
+        }
+
+        private void endTag() throws SAXException {
+            endRun();
+            String name = tagName(2);
+            if (open.isEmpty()) {
+                throw error("The markup in the document following the root element must be well-formed.");
+            }
+            OpenElement element = open.get(open.size() - 1);
+            if (! element.name.equals(name)) {
+                throw error("The element type \"" + element.name + "\" must be terminated by the matching " + 
+                        "end-tag \"</" + element.name + ">\".");
+            }
+            int colon = name.indexOf(':');
+            String uri = resolve(colon < 0 ? "" : name.substring(0, colon), element.declarations);
+            open.remove(open.size() - 1);
+            skeletonRun = 0;
+            skeleton.at(line, column + 1);
+            endElement(element, uri, colon < 0 ? name : name.substring(colon + 1));
+        }
+
+        private void endElement(OpenElement element, String uri, String localName) throws SAXException {
+            skeleton.handler.endElement(uri, localName, element.name);
+            ended = open.isEmpty();
+            for (String prefix : element.declarations.keySet()) {
+                skeleton.handler.endPrefixMapping(prefix);
+            }
+        }
+
+        /**
+         * Attributes of the start tag just read, other than namespace
+         * declarations
+         */
+        private AttributesImpl attributes(Map<String, String> declarations) {
+            AttributesImpl attributes = new AttributesImpl();
+            String text = new String(tag.data, 0, tag.length, charset);
+            if (text.indexOf('=') >= 0) {
+                Matcher matcher = ATTRIBUTE.matcher(text);
+                while (matcher.find()) {
+                    String name = matcher.group(1);
+                    if (name.equals("xmlns") || name.startsWith("xmlns:")) {
+                        continue;
+                    }
+                    int colon = name.indexOf(':');
+                    String value = matcher.group(2) == null ? matcher.group(3) : matcher.group(2);
+                    // attribute value normalisation, before references are replaced
+                    value = unescape(value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' '));
+                    attributes.addAttribute(colon < 0 ? "" : resolve(name.substring(0, colon), declarations), 
+                            colon < 0 ? name : name.substring(colon + 1), name, "CDATA", value);
+                }
+            }
+            return attributes;
+        }
+
+        /**
+         * Pass text of the skeleton on.  Text that is only whitespace is left
+         * out - between elements it means nothing, and there is a lot of it
+         * between the fragments
+         */
+        private void characters(byte[] data, int offset, int length) throws SAXException {
+            boolean blank = true;
+            for (int i = offset; blank && i < offset + length; i++) {
+                blank = isWhitespace(data[i]);
+            }
+            if (! blank) {
+                String value = unescape(new String(data, offset, length, charset));
+                skeletonRun = 0;
+                skeleton.at(line, column);
+                skeleton.handler.characters(value.toCharArray(), 0, value.length());
+            }
+        }
+
+        private void startRun(int startLine, int startColumn) {
+            batch = new Bytes(BATCH_BYTES + BATCH_BYTES / 4);
+            batchLine = startLine;
+            batchColumn = startColumn;
+            batchDepth = open.size();
+            batchDeclarations = new LinkedHashMap<String, String>();
+            for (OpenElement element : open) {
+                batchDeclarations.putAll(element.declarations);
+            }
+            batchEnd = 0;
+        }
+
+        private void endFragment() throws SAXException {
+            flush();
+            batchEnd = batch.length;
+            if (batchEnd >= BATCH_BYTES) {
+                endRun();
+            }
+        }
+
+        /**
+         * Send what has been collected of the current run to be validated
+         */
+        private void endRun() throws SAXParseException {
+            if (batch == null) {
+                return;
+            }
+            Bytes content = batch;
+            batch = null;
+            if (batchEnd == 0) {
+                return;
+            }
+            content.length = batchEnd;
+
+            // wait for a slot so at most a few batches are held in memory
+            try {
+                slots.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw error("Interrupted");
+            }
+            batches++;
+            workers.execute(new BatchTask(wrap(content), state, slots));
+            stopping = state.isFinished();
+        }
+
+        /**
+         * Make a document of the batch.  Its first element starts on the line
+         * after the wrapper's start tag, indented to the column it had
+         */
+        private Batch wrap(Bytes content) {
+            StringBuilder sb = new StringBuilder();
+            String prefix = BATCH_PREFIX;
+            while (batchDeclarations.containsKey(prefix)) {
+                prefix = prefix + "-";
+            }
+            sb.append('<').append(prefix).append(":fragments xmlns:").append(prefix).append("=\"");
+            sb.append(BATCH_NAMESPACE).append('"');
+            for (Map.Entry<String, String> declaration : batchDeclarations.entrySet()) {
+                sb.append(declaration.getKey().isEmpty() ? " xmlns" : " xmlns:").append(declaration.getKey());
+                sb.append("=\"").append(escape(declaration.getValue())).append('"');
+            }
+            sb.append(">\n");
+            for (int i = 1; i < batchColumn; i++) {
+                sb.append(' ');
+            }
+            byte[] start = sb.toString().getBytes(charset);
+            byte[] end = ("</" + prefix + ":fragments>").getBytes(charset);
+
+            Bytes document = new Bytes(content.length + start.length + end.length + 
+                    (xmlDeclaration == null ? 0 : xmlDeclaration.length) + (doctype == null ? 0 : doctype.length));
+            int lines = 1;
+            for (byte[] part : new byte[][] {xmlDeclaration, doctype, start}) {
+                if (part != null) {
+                    for (byte b : part) {
+                        document.add(b);
+                        if (b == '\n') {
+                            lines++;
+                        }
+                    }
+                }
+            }
+            // the wrapper's start tag is on the line before the content
+            int wrapperLine = lines - 1;
+            document.add(content.data, 0, content.length);
+            for (byte b : end) {
+                document.add(b);
+            }
+            return new Batch(document, wrapperLine, batchLine - lines);
+        }
+    }
+
+    /**
+     * Replace the predefined entities and character references.  Anything
+     * else is left for the parsers of the batches to complain about
+     */
+    private static String unescape(String value) {
+        if (value.indexOf('&') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            int end = c == '&' ? value.indexOf(';', i) : -1;
+            String replacement = end < 0 ? null : reference(value.substring(i + 1, end));
+            if (replacement == null) {
+                sb.append(c);
+                i++;
+            } else {
+                sb.append(replacement);
+                i = end + 1;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String reference(String name) {
+        String replacement = null;
+        if (name.equals("lt")) {
+            replacement = "<";
+        } else if (name.equals("gt")) {
+            replacement = ">";
+        } else if (name.equals("amp")) {
+            replacement = "&";
+        } else if (name.equals("quot")) {
+            replacement = "\"";
+        } else if (name.equals("apos")) {
+            replacement = "'";
+        } else if (name.startsWith("#")) {
+            try {
+                int codePoint = name.startsWith("#x") ? 
+                        Integer.parseInt(name.substring(2), 16) : Integer.parseInt(name.substring(1));
+                replacement = new String(Character.toChars(codePoint));
+            } catch (IllegalArgumentException ex) {
+                // including NumberFormatException
+                replacement = null;
+            }
+        }
+        return replacement;
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+    }
+
+    /**
+     * Validates the skeleton of the document - everything but the repeated
+     * elements - on the reading thread.  Each repeated element is passed on
+     * start and end tag only, so findings about the element itself are
+     * dropped: the batches report those.  Only what its parent makes of it
+     * (cvc-complex-type.2.*, eg an element not allowed there) is kept
+     */
+    private class Skeleton implements ErrorHandler {
+        private static final String PARENT_CONTENT = "cvc-complex-type.2.";
+        private static final int OUTSIDE = 0;
+        private static final int FRAGMENT_START = 1;
+        private static final int FRAGMENT_END = 2;
+
+        private final State state;
+        private final ValidatorHandler handler;
+        private final LocatorImpl locator = new LocatorImpl();
+        private int fragment = OUTSIDE;
+
+        Skeleton(State state) throws SAXException {
+            this.state = state;
+            handler = schema.newValidatorHandler();
+            // or Xerces keeps every dropped finding until the end
+            handler.setFeature(Validator.AUGMENT_PSVI, false);
+            handler.setErrorHandler(this);
+            if (schemaResolver != null) {
+                handler.setResourceResolver(schemaResolver);
+            }
+            locator.setSystemId(state.systemId);
+            handler.setDocumentLocator(locator);
+        }
+
+        /**
+         * Set the position findings from the next event are reported at
+         */
+        void at(int line, int column) {
+            locator.setLineNumber(line);
+            locator.setColumnNumber(column);
+        }
+
+        void fragment(String uri, String localName, String qName) throws SAXException {
+            try {
+                fragment = FRAGMENT_START;
+                handler.startElement(uri, localName, qName, new AttributesImpl());
+                fragment = FRAGMENT_END;
+                handler.endElement(uri, localName, qName);
+            } finally {
+                fragment = OUTSIDE;
+            }
+        }
+
+        private boolean wanted(SAXParseException spe) {
+            String message = spe.getMessage() == null ? "" : spe.getMessage();
+            if (message.startsWith("cvc-identity-constraint") || message.startsWith("cvc-id.")) {
+                // their values are in the fragments, which the skeleton never sees
+                return false;
+            }
+            return fragment == OUTSIDE || (fragment == FRAGMENT_START && message.startsWith(PARENT_CONTENT));
+        }
+
+        public void warning(SAXParseException spe) throws SAXException {
+            if (wanted(spe)) {
+                state.errorReport.warning(spe);
+            }
+        }
+
+        public void error(SAXParseException spe) throws SAXException {
+            if (wanted(spe)) {
+                try {
+                    state.errorReport.error(spe);
+                } catch (ErrorLimitException ex) {
+                    // stop the batches too
+                    state.stopped = ex;
+                    throw ex;
+                }
+            }
+        }
+
+        public void fatalError(SAXParseException spe) throws SAXException {
+            state.errorReport.fatalError(spe);
+            throw spe;
+        }
+    }
+
+    /**
+     * A batch made into a document of its own
+     */
+    private static class Batch {
+        private final Bytes document;
+        /**
+         * Last line of the document before the copied content
+         */
+        private final int wrapperLine;
+        /**
+         * Add to a line of the copied content to get its line in the original
+         */
+        private final int lineOffset;
+
+        Batch(Bytes document, int wrapperLine, int lineOffset) {
+            this.document = document;
+            this.wrapperLine = wrapperLine;
+            this.lineOffset = lineOffset;
+        }
+    }
+
+    /**
+     * Parses and validates a batch on a worker thread
+     */
+    private class BatchTask implements Runnable, ErrorHandler {
+        private final Batch batch;
+        private final State state;
+        private final Semaphore slots;
+
+        BatchTask(Batch batch, State state, Semaphore slots) {
+            this.batch = batch;
+            this.state = state;
+            this.slots = slots;
+        }
+
+        public void run() {
+            try {
+                if (! state.isFinished()) {
+                    javax.xml.validation.Validator validator = validatorPool.borrowValidator(schema, 
+                            externalEntities);
+                    try {
+                        validator.setErrorHandler(this);
+                        if (schemaResolver != null) {
+                            validator.setResourceResolver(schemaResolver);
+                        }
+                        validator.validate(new StreamSource(new ByteArrayInputStream(batch.document.data, 0, 
+                                batch.document.length), state.systemId));
+                    } finally {
+                        validatorPool.release(schema, validator);
+                    }
+                }
+            } catch (ErrorLimitException ex) {
+                state.stopped = ex;
+            } catch (SAXException ex) {
+                state.failure = ex;
+            } catch (IOException ex) {
+                state.failure = new SAXException(ex);
+            } catch (RuntimeException ex) {
+                state.failure = new SAXException(ex);
+            } finally {
+                slots.release();
+            }
+        }
+
+        /**
+         * @return the exception with the position it has in the whole
+         * document
+         */
+        private SAXParseException remap(SAXParseException spe) {
+            int line = spe.getLineNumber();
+            if (line > batch.wrapperLine) {
+                line += batch.lineOffset;
+            }
+            return new SAXParseException(spe.getMessage(), spe.getPublicId(), state.systemId, line, 
+                    spe.getColumnNumber(), spe.getException());
+        }
+
+        public void warning(SAXParseException spe) throws SAXException {
+            state.errorReport.warning(remap(spe));
+        }
+
+        public void error(SAXParseException spe) throws SAXException {
+            if (spe.getLineNumber() == batch.wrapperLine && spe.getMessage() != null && 
+                    spe.getMessage().startsWith(UNDECLARED_ELEMENT)) {
+                // the wrapper
+                return;
+            }
+            state.errorReport.error(remap(spe));
+        }
+
+        public void fatalError(SAXParseException spe) throws SAXException {
+            SAXParseException remapped = remap(spe);
+            state.errorReport.fatalError(remapped);
+            throw remapped;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import javax.swing.JFrame;
+import javax.swing.JTabbedPane;
+import javax.swing.SwingUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts the Swing GUI.  Kept out of App so that none of AWT, Swing or the
+ * GUI panels are loaded (App is verified without needing them) when running
+ * on the console
+ * @author Geoff Williams
+ */
+class GuiLauncher {
+    private static Logger logger = LoggerFactory.getLogger(GuiLauncher.class);
+
+    private GuiLauncher() {
+    }
+
+    /**
+     * Show the main window on the event dispatch thread
+     * @param uri document to fill in, may be null
+     */
+    static void start(final String uri) {
+        logger.debug("starting GUI...");
+
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                createAndShowGUI(uri);
+            }
+        });
+    }
+
+    private static void createAndShowGUI(String uri) {
+        logger.debug("Creating swing components...");
+        
+        final ValidatorUI panel = new ValidatorUI(); 
+        panel.setInputUri(uri);
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Validate", panel);
+        tabs.addTab("Batch", new BatchValidatorUI());
+        JFrame frame = new JFrame("JXmlValidator GUI");
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent evt) {
+                // runs before EXIT_ON_CLOSE, which would lose unwritten saves
+                panel.flushHistory();
+            }
+        });
+        frame.getContentPane().add(tabs);
+        frame.pack();
+        frame.setVisible(true);
+    }
+}
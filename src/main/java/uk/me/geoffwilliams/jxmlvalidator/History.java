@@ -18,103 +18,301 @@
  */
 package uk.me.geoffwilliams.jxmlvalidator;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- *
- * @author geoff
+ * Bounded list of the most recently validated documents.  Entries are held
+ * in an access ordered map so adding one that is already known just moves it
+ * to the front, and the oldest entry drops off once there are more than
+ * maxEntries.
+ * <p>
+ * The list is kept in a plain text file, one URI per line, oldest first.
+ * Each save appends a single line; the file is rewritten from the in-memory
+ * list only once it has built up twice as many lines as there are entries.
+ * File writes happen in order on a background thread so saving never holds
+ * up a validation.  Lists left in the Preferences store by older versions are
+ * moved into the file on first use
+ * @author Geoff Williams
  */
 public class History {
+    public static final int DEFAULT_MAX_ENTRIES = 100;
 
-    private List<String> historyList = null;
-    private Preferences prefs = Preferences.userNodeForPackage(History.class);
     private static final String PREF_KEY = "historyList";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "history-writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     private Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final File file;
+    private final int maxEntries;
+    private final Map<String, Boolean> entries;
+    private String latest = null;
 
+    /**
+     * Lines in the file, only touched by the writer thread
+     */
+    private int fileLines = 0;
+
+    /**
+     * History for the current user, in ~/.jxmlvalidator/history
+     */
     public History() {
-        // load history list from file...
-        byte[] historyListBytes = prefs.getByteArray(PREF_KEY, null);
-        if (historyListBytes == null) {
+        this(new File(System.getProperty("user.home"), ".jxmlvalidator" + File.separator + "history"), 
+                DEFAULT_MAX_ENTRIES, true);
+    }
+
+    public History(File file, int maxEntries) {
+        this(file, maxEntries, false);
+    }
+
+    private History(File file, final int maxEntries, boolean migrate) {
+        this.file = file.getAbsoluteFile();
+        this.maxEntries = maxEntries;
+        entries = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        if (file.exists()) {
+            load();
+        } else if (migrate) {
+            migrate();
+        } else {
             // no history available - first run?
             logger.debug("no history available");
-            historyList = new ArrayList<String>();
-        } else {
-            logger.debug("loading history...");
-            try {
-                historyList = (List<String>) bytes2Object(historyListBytes);
-                logger.debug("...done!");
-            } catch (IOException ex) {
-                logger.debug("IOException loading history: {}", ex.getMessage());
-                historyList = new ArrayList<String>();
-            } catch (ClassNotFoundException ex) {
-                logger.debug("ClassNotFoundException loading history: {}", ex.getMessage());
-                historyList = new ArrayList<String>();
-            }
         }
     }
 
-    public List<String> getHistoryList() {
+    /**
+     * @return the entries, most recent first
+     */
+    public synchronized List<String> getHistoryList() {
+        List<String> historyList = new ArrayList<String>(entries.keySet());
+        Collections.reverse(historyList);
         return historyList;
     }
 
-    public void setHistoryList(List<String> historyList) {
-        this.historyList = historyList;
+    /**
+     * Replace the entries
+     * @param historyList entries, most recent first
+     */
+    public synchronized void setHistoryList(List<String> historyList) {
+        entries.clear();
+        latest = null;
+        for (int i = historyList.size() - 1; i >= 0; i--) {
+            add(historyList.get(i));
+        }
+        writer.execute(new Compaction());
     }
 
-    public void save(String historyItem) {
+    public void save(final String historyItem) {
         logger.debug("adding item to history '{}'", historyItem);
-        boolean duplicate = false;
-        for (String item: historyList) {
-            if (item.equals(historyItem)) {
-                duplicate = true;
-                break;
+        synchronized (this) {
+            if (! add(historyItem)) {
+                logger.debug("already most recent entry: {}", historyItem);
+                return;
             }
         }
-        
-        if (! duplicate) {
-            historyList.add(0, historyItem);
-            save();
-        } else {
-            logger.debug("duplicate entry: {}", historyItem);
+        writer.execute(new Runnable() {
+            public void run() {
+                append(historyItem);
+            }
+        });
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        latest = null;
+        writer.execute(new Compaction());
+    }
+
+    /**
+     * Wait for all saves made so far to reach the file
+     */
+    public void flush() {
+        try {
+            writer.submit(new Runnable() {
+                public void run() {
+                }
+            }).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            logger.debug("error flushing history: {}", ex.getMessage());
         }
     }
-    
-    public void clear() {
-        historyList.clear();
-        save();
+
+    /**
+     * Add or touch an entry.  Must hold the lock
+     * @return false if nothing changed because the item was already the most
+     * recent entry (or is not something that can be stored)
+     */
+    private boolean add(String historyItem) {
+        if (historyItem.equals(latest) || historyItem.indexOf('\n') >= 0 || historyItem.indexOf('\r') >= 0) {
+            return false;
+        }
+        entries.put(historyItem, Boolean.TRUE);
+        latest = historyItem;
+        return true;
     }
 
-    private void save() {
-        logger.debug("saving history...");
+    private void load() {
+        logger.debug("loading history...");
+        int lines = 0;
+        BufferedReader reader = null;
         try {
-            prefs.putByteArray(PREF_KEY, object2Bytes(historyList));
-            logger.debug("saved history OK");
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+            String line;
+            synchronized (this) {
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() > 0) {
+                        add(line);
+                        lines++;
+                    }
+                }
+            }
+            logger.debug("...done!");
+        } catch (IOException ex) {
+            logger.debug("IOException loading history: {}", ex.getMessage());
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+        final int loaded = lines;
+        writer.execute(new Runnable() {
+            public void run() {
+                fileLines = loaded;
+                if (needsCompaction()) {
+                    compact();
+                }
+            }
+        });
+    }
+
+    /**
+     * Move a list saved by an older version (a serialised List in the
+     * Preferences store, most recent first) into the file
+     */
+    private void migrate() {
+        Preferences prefs = Preferences.userNodeForPackage(History.class);
+        byte[] historyListBytes = prefs.getByteArray(PREF_KEY, null);
+        if (historyListBytes == null) {
+            // no history available - first run?
+            logger.debug("no history available");
+            return;
+        }
+        logger.debug("migrating history from preferences...");
+        try {
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(historyListBytes));
+            List<?> historyList = (List<?>) ois.readObject();
+            List<String> items = new ArrayList<String>();
+            for (Object item : historyList) {
+                items.add(String.valueOf(item));
+            }
+            setHistoryList(items);
+            prefs.remove(PREF_KEY);
+            prefs.flush();
+            logger.debug("...done!");
+        } catch (IOException ex) {
+            logger.debug("IOException migrating history: {}", ex.getMessage());
+        } catch (ClassNotFoundException ex) {
+            logger.debug("ClassNotFoundException migrating history: {}", ex.getMessage());
+        } catch (ClassCastException ex) {
+            logger.debug("unexpected history format: {}", ex.getMessage());
+        } catch (BackingStoreException ex) {
+            logger.debug("BackingStoreException removing old history: {}", ex.getMessage());
+        }
+    }
+
+    private boolean needsCompaction() {
+        return fileLines > maxEntries * 2;
+    }
+
+    private void append(String historyItem) {
+        Writer out = null;
+        try {
+            file.getParentFile().mkdirs();
+            out = new OutputStreamWriter(new FileOutputStream(file, true), UTF8);
+            out.write(historyItem);
+            out.write('\n');
+            out.close();
+            fileLines++;
         } catch (IOException ex) {
             // error saving history list
             logger.debug("IOException saving history: {}", ex.getMessage());
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+        if (needsCompaction()) {
+            compact();
         }
     }
 
-    private byte[] object2Bytes(Object o) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeObject(o);
-        return baos.toByteArray();
+    /**
+     * Rewrite the file from the in-memory entries.  The new file is written
+     * alongside and renamed over the old one so a crash part way through
+     * leaves one or the other
+     */
+    private void compact() {
+        List<String> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<String>(entries.keySet());
+        }
+        logger.debug("compacting history, {} lines to {}", fileLines, snapshot.size());
+        File temp = new File(file.getPath() + ".tmp");
+        Writer out = null;
+        try {
+            file.getParentFile().mkdirs();
+            out = new OutputStreamWriter(new FileOutputStream(temp), UTF8);
+            for (String item : snapshot) {
+                out.write(item);
+                out.write('\n');
+            }
+            out.close();
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            fileLines = snapshot.size();
+        } catch (IOException ex) {
+            logger.debug("IOException saving history: {}", ex.getMessage());
+            temp.delete();
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
     }
 
-    private Object bytes2Object(byte raw[]) throws IOException, ClassNotFoundException {
-        ByteArrayInputStream bais = new ByteArrayInputStream(raw);
-        ObjectInputStream ois = new ObjectInputStream(bais);
-        Object o = ois.readObject();
-        return o;
+    private class Compaction implements Runnable {
+        public void run() {
+            compact();
+        }
     }
 }
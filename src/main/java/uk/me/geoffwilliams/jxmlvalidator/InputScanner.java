@@ -0,0 +1,177 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Expands directories and glob patterns (eg feeds/**&#47;*.xml) into the
+ * files they contain.  Matches are handed to a callback as the tree is walked
+ * rather than collected first, so validation of the first files can start
+ * straight away and huge trees never have to be held in memory
+ * @author Geoff Williams
+ */
+public class InputScanner {
+    private static final String GLOB_CHARS = "*?[{";
+    private static final String DEFAULT_EXTENSION = ".xml";
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Receives each file found
+     */
+    public interface Callback {
+        void found(String filename) throws InterruptedException;
+
+        /**
+         * A file or directory beneath the input could not be read
+         */
+        void failed(String filename, IOException ex);
+    }
+
+    /**
+     * Wraps an InterruptedException thrown by the callback so it can get out
+     * of the file visitor
+     */
+    private static class InterruptedScanException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        InterruptedScanException(InterruptedException cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Does this input need expanding (it is a directory or glob pattern)
+     * rather than being validated as is?
+     */
+    public static boolean needsScan(String input) {
+        return isPattern(input) || (! input.contains("://") && new File(input).isDirectory());
+    }
+
+    private static boolean isPattern(String input) {
+        boolean pattern = false;
+        for (int i = 0; i < GLOB_CHARS.length() && ! pattern; i++) {
+            pattern = input.indexOf(GLOB_CHARS.charAt(i)) >= 0;
+        }
+        return pattern && ! input.contains("://");
+    }
+
+    /**
+     * Walk a directory (every *.xml file beneath it) or glob pattern
+     * @param input directory or glob pattern
+     * @param callback called with each matching file as it is found
+     */
+    public void scan(String input, final Callback callback) throws IOException, InterruptedException {
+        Path base;
+        final PathMatcher matcher;
+        int maxDepth;
+
+        if (isPattern(input)) {
+            String separator = File.separator;
+            String[] parts = input.split(separator.equals("\\") ? "\\\\" : separator, -1);
+            StringBuilder baseDir = new StringBuilder();
+            int i = 0;
+            while (i < parts.length - 1 && ! isPattern(parts[i])) {
+                baseDir.append(parts[i]).append(separator);
+                i++;
+            }
+            base = Paths.get(baseDir.toString());
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + optionalDirectories(input, separator));
+
+            // without ** there is no point walking deeper than the pattern
+            maxDepth = input.contains("**") ? Integer.MAX_VALUE : parts.length - i;
+        } else {
+            base = Paths.get(input);
+            matcher = new PathMatcher() {
+                public boolean matches(Path path) {
+                    return path.getFileName().toString().toLowerCase().endsWith(DEFAULT_EXTENSION);
+                }
+            };
+            maxDepth = Integer.MAX_VALUE;
+        }
+
+        logger.debug("scanning {} for inputs", base);
+        try {
+            Files.walkFileTree(base, EnumSet.noneOf(FileVisitOption.class), maxDepth, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && matcher.matches(file)) {
+                        try {
+                            callback.found(file.toString());
+                        } catch (InterruptedException ex) {
+                            throw new InterruptedScanException(ex);
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                    logger.error("Unable to read {}: {}", file, ex.getMessage());
+                    callback.failed(file.toString(), ex);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (InterruptedScanException ex) {
+            throw (InterruptedException) ex.getCause();
+        }
+    }
+
+    /**
+     * In a glob, **&#47; needs at least one directory, so feeds/**&#47;*.xml would
+     * not match feeds/a.xml.  Rewrite each **&#47; outside a {group} (groups
+     * cannot nest) as {**&#47;,} so it matches zero or more directories
+     */
+    static String optionalDirectories(String pattern, String separator) {
+        String anyDirectories = "**" + separator;
+        StringBuilder sb = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (depth == 0 && pattern.startsWith(anyDirectories, i)) {
+                sb.append('{').append(anyDirectories).append(",}");
+                i += anyDirectories.length();
+                continue;
+            }
+            if (c == '{') {
+                depth++;
+            } else if (c == '}' && depth > 0) {
+                depth--;
+            }
+            sb.append(c);
+            i++;
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes JUnit XML for CI dashboards, one testcase per document.  A testcase
+ * has to be written in one piece, so the findings of each document in
+ * progress are held until it finishes - at most MAX_LINES of them
+ * @author Geoff Williams
+ */
+public class JUnitReportWriter implements ReportWriter {
+    public static final int MAX_LINES = 1000;
+
+    private final Writer writer;
+    private final Map<String, Findings> inProgress = new HashMap<String, Findings>();
+
+    /**
+     * Findings so far for one document
+     */
+    private static class Findings {
+        private final StringBuilder text = new StringBuilder();
+        private int lines = 0;
+        private int omitted = 0;
+    }
+
+    public JUnitReportWriter(OutputStream os) throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"));
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write("<testsuites>\n<testsuite name=\"JXMLValidator\">\n");
+    }
+
+    public synchronized void finding(String document, Severity severity, String systemId, int line, int column, 
+            String message) throws IOException {
+        Findings findings = inProgress.get(document);
+        if (findings == null) {
+            findings = new Findings();
+            inProgress.put(document, findings);
+        }
+        if (findings.lines < MAX_LINES) {
+            findings.text.append(severity.label()).append(": URI=").append(systemId);
+            findings.text.append(" Line=").append(line).append(": ").append(message).append('\n');
+            findings.lines++;
+        } else {
+            findings.omitted++;
+        }
+    }
+
+    public synchronized void endDocument(String document, int status, ErrorReport errorReport, 
+            String exceptionMessage) throws IOException {
+        Findings findings = inProgress.remove(document);
+        String text = "";
+        if (findings != null) {
+            text = findings.text.toString();
+            if (findings.omitted > 0) {
+                text += "... " + findings.omitted + " more\n";
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("<testcase classname=\"jxmlvalidator\" name=\"").append(escape(document)).append("\">\n");
+        if (status == App.STATUS_EXCEPTION) {
+            sb.append("<error message=\"").append(escape(exceptionMessage)).append("\">");
+            sb.append(escape(text)).append("</error>\n");
+        } else if (status == App.STATUS_ERRORS || status == App.STATUS_FATAL) {
+            // no report for a document skipped because it has not changed
+            String message = errorReport == null ? "invalid" : 
+                    errorReport.getFatalCount() + " fatal, " + errorReport.getErrorCount() + " errors";
+            sb.append("<failure type=\"invalid\" message=\"").append(escape(message)).append("\">");
+            sb.append(escape(text)).append("</failure>\n");
+        } else if (text.length() > 0) {
+            // warnings only - passes, but keep them visible
+            sb.append("<system-out>").append(escape(text)).append("</system-out>\n");
+        }
+        sb.append("</testcase>\n");
+        writer.write(sb.toString());
+        writer.flush();
+    }
+
+    static String escape(String value) {
+        StringBuilder sb = new StringBuilder();
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '<':
+                        sb.append("&lt;");
+                        break;
+                    case '>':
+                        sb.append("&gt;");
+                        break;
+                    case '&':
+                        sb.append("&amp;");
+                        break;
+                    case '"':
+                        sb.append("&quot;");
+                        break;
+                    default:
+                        if (c < 0x20 && c != '\n' && c != '\t' && c != '\r') {
+                            sb.append('?');
+                        } else {
+                            sb.append(c);
+                        }
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    public synchronized void close() throws IOException {
+        writer.write("</testsuite>\n</testsuites>\n");
+        writer.close();
+    }
+}
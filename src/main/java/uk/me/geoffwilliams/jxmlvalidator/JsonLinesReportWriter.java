@@ -0,0 +1,84 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes one JSON object per line: a "finding" for each warning or error as
+ * it is reported and a "document" line with the result once each document
+ * is finished.  Output is flushed after every document so it can be
+ * consumed while a batch is still running
+ * @author Geoff Williams
+ */
+public class JsonLinesReportWriter implements ReportWriter {
+    private final Writer writer;
+
+    public JsonLinesReportWriter(OutputStream os) throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"));
+    }
+
+    public synchronized void finding(String document, Severity severity, String systemId, int line, int column, 
+            String message) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"type\":\"finding\",\"document\":");
+        Json.quote(sb, document);
+        sb.append(",\"severity\":\"").append(severity.label()).append('"');
+        sb.append(",\"uri\":");
+        Json.quote(sb, systemId);
+        sb.append(",\"line\":").append(line);
+        sb.append(",\"column\":").append(column);
+        sb.append(",\"message\":");
+        Json.quote(sb, message);
+        sb.append("}\n");
+        writer.write(sb.toString());
+    }
+
+    public synchronized void endDocument(String document, int status, ErrorReport errorReport, 
+            String exceptionMessage) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"type\":\"document\",\"document\":");
+        Json.quote(sb, document);
+        sb.append(",\"status\":").append(status);
+        sb.append(",\"valid\":").append(status == App.STATUS_OK);
+        if (exceptionMessage != null) {
+            sb.append(",\"exception\":");
+            Json.quote(sb, exceptionMessage);
+        }
+        if (errorReport != null) {
+            sb.append(",\"fatal\":").append(errorReport.getFatalCount());
+            sb.append(",\"error\":").append(errorReport.getErrorCount());
+            sb.append(",\"warning\":").append(errorReport.getWarningCount());
+            if (errorReport.isStopped()) {
+                sb.append(",\"stoppedAtLine\":").append(errorReport.getStoppedAtLine());
+            }
+        }
+        sb.append("}\n");
+        writer.write(sb.toString());
+        writer.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
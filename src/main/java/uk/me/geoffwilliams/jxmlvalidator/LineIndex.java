@@ -0,0 +1,166 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.util.Arrays;
+
+/**
+ * Sparse index from line number to byte offset in a document, built from
+ * the bytes as they are read for validation so finding a line in a huge
+ * file later needs no second pass over it.  The start of a line is recorded
+ * once every spacing bytes, so a 2GB document needs around 32k entries at
+ * the default spacing.
+ * <p>
+ * Lines are counted as the parser counts them: a line ends at LF, CR or
+ * CRLF.  Only line feeds and carriage returns in ASCII compatible encodings
+ * (UTF-8, ISO-8859-*, etc) are recognised
+ * @author Geoff Williams
+ */
+public class LineIndex {
+    public static final int DEFAULT_SPACING = 64 * 1024;
+
+    private final int spacing;
+    private int[] lines = new int[64];
+    private long[] offsets = new long[64];
+    private int size = 0;
+
+    // scanning state
+    private long position = 0;
+    private int line = 1;
+    private boolean pendingCr = false;
+    private long nextEntry;
+
+    /**
+     * Position of the start of an indexed line
+     */
+    public static final class Entry {
+        private final int line;
+        private final long offset;
+
+        Entry(int line, long offset) {
+            this.line = line;
+            this.offset = offset;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+    }
+
+    public LineIndex() {
+        this(DEFAULT_SPACING);
+    }
+
+    /**
+     * @param spacing minimum number of bytes between index entries
+     */
+    public LineIndex(int spacing) {
+        this.spacing = spacing;
+        add(1, 0);
+    }
+
+    private void add(int line, long offset) {
+        if (size == lines.length) {
+            lines = Arrays.copyOf(lines, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        lines[size] = line;
+        offsets[size] = offset;
+        size++;
+        nextEntry = offset + spacing;
+    }
+
+    private void newLine(long offset) {
+        line++;
+        if (offset >= nextEntry) {
+            add(line, offset);
+        }
+    }
+
+    /**
+     * Index the next bytes of the document
+     */
+    void update(byte[] b, int off, int len) {
+        // locals rather than fields in the loop - this sees every byte
+        long base = position - off;
+        boolean cr = pendingCr;
+        for (int i = off; i < off + len; i++) {
+            byte c = b[i];
+            if (c > '\r') {
+                if (cr) {
+                    cr = false;
+                    newLine(base + i);
+                }
+            } else if (c == '\n') {
+                cr = false;
+                newLine(base + i + 1);
+            } else if (c == '\r') {
+                if (cr) {
+                    newLine(base + i);
+                }
+                cr = true;
+            } else if (cr) {
+                cr = false;
+                newLine(base + i);
+            }
+        }
+        pendingCr = cr;
+        position += len;
+    }
+
+    void update(int b) {
+        update(new byte[] {(byte) b}, 0, 1);
+    }
+
+    /**
+     * @return the indexed line closest to, but not after, a line
+     */
+    public Entry floor(int line) {
+        int i = Arrays.binarySearch(lines, 0, size, line);
+        if (i < 0) {
+            i = Math.max(0, -i - 2);
+        }
+        return new Entry(lines[i], offsets[i]);
+    }
+
+    /**
+     * @return number of entries in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of lines seen so far
+     */
+    public int getLines() {
+        return line;
+    }
+
+    /**
+     * @return number of bytes indexed so far
+     */
+    public long getLength() {
+        return position;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Every occurrence of one validation message in a document.  Parser messages
+ * differ only in the values quoted inside them, so the text is stored once as
+ * a template and each occurrence as a line and column in primitive arrays.
+ * Quoted values that are the same every time are shown as they are; those
+ * that vary are shown as *
+ * @author Geoff Williams
+ */
+public class MessageGroup {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final String systemId;
+    private final String[] literals;
+    private final String[] values;
+    private int count = 0;
+    private int kept = 0;
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] columns = new int[INITIAL_CAPACITY];
+    private int firstLine;
+    private int lastLine;
+
+    MessageGroup(String systemId, Template template) {
+        this.systemId = systemId;
+        this.literals = template.literals;
+        this.values = template.values;
+    }
+
+    /**
+     * Record another occurrence
+     * @param template the occurrence's message, split into literals and values
+     * @param keep false to count the occurrence without storing its position
+     */
+    void add(Template template, int line, int column, boolean keep) {
+        // fragments validated in parallel report out of order
+        if (count == 0 || line < firstLine) {
+            firstLine = line;
+        }
+        if (count == 0 || line > lastLine) {
+            lastLine = line;
+        }
+        count++;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null && ! values[i].equals(template.values[i])) {
+                values[i] = null;
+            }
+        }
+        if (keep) {
+            if (kept == lines.length) {
+                int[] grownLines = new int[lines.length * 2];
+                int[] grownColumns = new int[columns.length * 2];
+                System.arraycopy(lines, 0, grownLines, 0, kept);
+                System.arraycopy(columns, 0, grownColumns, 0, kept);
+                lines = grownLines;
+                columns = grownColumns;
+            }
+            lines[kept] = line;
+            columns[kept] = column;
+            kept++;
+        }
+    }
+
+    public String getSystemId() {
+        return systemId;
+    }
+
+    /**
+     * @return the message, with values that differ between occurrences as *
+     */
+    public String getMessage() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            sb.append(literals[i]);
+            sb.append(values[i] == null ? "*" : values[i]);
+        }
+        sb.append(literals[values.length]);
+        return sb.toString();
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return number of occurrences whose position was stored
+     */
+    public int getKept() {
+        return kept;
+    }
+
+    public int getLine(int i) {
+        return lines[i];
+    }
+
+    public int getColumn(int i) {
+        return columns[i];
+    }
+
+    public int getFirstLine() {
+        return firstLine;
+    }
+
+    public int getLastLine() {
+        return lastLine;
+    }
+
+    /**
+     * One line summary, in the same form as older releases for a message
+     * that only occurred once
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("URI=").append(systemId);
+        if (count == 1) {
+            sb.append(" Line=").append(firstLine).append(": ").append(getMessage());
+        } else {
+            sb.append(": ").append(getMessage());
+            sb.append(String.format(" x%,d, first at line %,d, last at line %,d", count, firstLine, lastLine));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A parser message split into the text between quotes and the quoted
+     * values.  The literal text is the grouping key
+     */
+    static class Template {
+        private final String[] literals;
+        private final String[] values;
+        private final String key;
+
+        private Template(String[] literals, String[] values, String key) {
+            this.literals = literals;
+            this.values = values;
+            this.key = key;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        /**
+         * Split a message at its '...' and "..." quoted values.  A quote
+         * straight after a letter or digit (an apostrophe, as in "Don't")
+         * or with no partner is left in the literal text
+         */
+        static Template parse(String message) {
+            if (message == null) {
+                message = "null";
+            }
+            List<String> literals = new ArrayList<String>();
+            List<String> values = new ArrayList<String>();
+            StringBuilder key = new StringBuilder();
+            int start = 0;
+            int i = 0;
+            while (i < message.length()) {
+                char c = message.charAt(i);
+                boolean opens = (c == '\'' || c == '"') && 
+                        (i == 0 || ! Character.isLetterOrDigit(message.charAt(i - 1)));
+                int close = opens ? message.indexOf(c, i + 1) : -1;
+                if (close > 0) {
+                    literals.add(message.substring(start, i + 1));
+                    values.add(message.substring(i + 1, close));
+                    key.append(message, start, i + 1).append('\u0000');
+                    start = close;
+                    i = close + 1;
+                } else {
+                    i++;
+                }
+            }
+            literals.add(message.substring(start));
+            key.append(message, start, message.length());
+            return new Template(literals.toArray(new String[literals.size()]), 
+                    values.toArray(new String[values.size()]), key.toString());
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+/**
+ * Told how far through a document validation has got.  Called on the
+ * validating thread, every time a block of the document is read
+ * @author Geoff Williams
+ */
+public interface ProgressListener {
+
+    /**
+     * @param bytesRead bytes of the document read so far
+     * @param totalBytes size of the document, or -1 if it is not known (eg
+     * a download without a Content-Length)
+     */
+    void progress(long bytesRead, long totalBytes);
+}
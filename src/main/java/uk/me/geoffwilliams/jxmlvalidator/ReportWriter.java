@@ -0,0 +1,68 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.IOException;
+
+/**
+ * Receives validation findings as they are reported by the parser and writes
+ * them out in a machine readable format.  Implementations are shared by
+ * every thread of a batch so must be thread safe
+ * @author Geoff Williams
+ */
+public interface ReportWriter {
+
+    enum Severity {
+        WARNING, ERROR, FATAL;
+
+        public String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * A warning or error reported while validating a document
+     * @param document document being validated
+     * @param severity kind of finding
+     * @param systemId URI the finding is in - normally the document, but may
+     * be a schema or external entity
+     * @param line line number, or -1 if unknown
+     * @param column column number, or -1 if unknown
+     * @param message parser message
+     */
+    void finding(String document, Severity severity, String systemId, int line, int column, String message) 
+            throws IOException;
+
+    /**
+     * Validation of a document has finished
+     * @param document document validated
+     * @param status App.STATUS_* result
+     * @param errorReport report for the document, or null if it could not
+     * be parsed at all
+     * @param exceptionMessage reason validation failed when status is
+     * App.STATUS_EXCEPTION, otherwise null
+     */
+    void endDocument(String document, int status, ErrorReport errorReport, String exceptionMessage) 
+            throws IOException;
+
+    /**
+     * Finish the output and close the stream
+     */
+    void close() throws IOException;
+}
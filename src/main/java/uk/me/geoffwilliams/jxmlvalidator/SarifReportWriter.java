@@ -0,0 +1,108 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Writes a SARIF 2.1.0 log for code scanning tools.  Results are written as
+ * they are reported, inside a single run that is closed off by close()
+ * @author Geoff Williams
+ */
+public class SarifReportWriter implements ReportWriter {
+    private static final String SARIF_SCHEMA = "https://json.schemastore.org/sarif-2.1.0.json";
+    private static final String EXCEPTION_RULE = "jxmlvalidator.exception";
+
+    /**
+     * Xerces messages start with the constraint they break, eg
+     * "cvc-complex-type.2.4.a: ..." - use it as the rule
+     */
+    private static final Pattern RULE = Pattern.compile("^([A-Za-z][\\w.-]*\\.[\\w.-]+): ");
+
+    private final Writer writer;
+    private boolean first = true;
+
+    public SarifReportWriter(OutputStream os) throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"));
+        writer.write("{\"$schema\":\"" + SARIF_SCHEMA + "\",\"version\":\"2.1.0\",\"runs\":[{");
+        writer.write("\"tool\":{\"driver\":{\"name\":\"JXMLValidator\",\"informationUri\":");
+        writer.write("\"https://github.com/GeoffWilliams/JXMLValidator\"}},\n\"results\":[\n");
+    }
+
+    public synchronized void finding(String document, Severity severity, String systemId, int line, int column, 
+            String message) throws IOException {
+        String ruleId = null;
+        if (message != null) {
+            Matcher matcher = RULE.matcher(message);
+            if (matcher.find()) {
+                ruleId = matcher.group(1);
+            }
+        }
+        result(ruleId, severity == Severity.WARNING ? "warning" : "error", message, systemId, line, column);
+    }
+
+    public synchronized void endDocument(String document, int status, ErrorReport errorReport, 
+            String exceptionMessage) throws IOException {
+        // a fatal error has already been reported with its location
+        if (exceptionMessage != null && (errorReport == null || errorReport.getFatalCount() == 0)) {
+            result(EXCEPTION_RULE, "error", exceptionMessage, document, -1, -1);
+        }
+        writer.flush();
+    }
+
+    private void result(String ruleId, String level, String message, String uri, int line, int column) 
+            throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if (! first) {
+            sb.append(",\n");
+        }
+        first = false;
+        sb.append('{');
+        if (ruleId != null) {
+            sb.append("\"ruleId\":");
+            Json.quote(sb, ruleId);
+            sb.append(',');
+        }
+        sb.append("\"level\":\"").append(level).append("\",\"message\":{\"text\":");
+        Json.quote(sb, message);
+        sb.append("},\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{\"uri\":");
+        Json.quote(sb, uri);
+        sb.append('}');
+        if (line > 0) {
+            sb.append(",\"region\":{\"startLine\":").append(line);
+            if (column > 0) {
+                sb.append(",\"startColumn\":").append(column);
+            }
+            sb.append('}');
+        }
+        sb.append("}}]}");
+        writer.write(sb.toString());
+    }
+
+    public synchronized void close() throws IOException {
+        writer.write("\n]}]}\n");
+        writer.close();
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.SAXException;
+
+/**
+ * In-memory LRU cache of compiled schemas.  Entries are keyed by the resolved
+ * schema locations together with their last modified times, so editing a local
+ * XSD causes it to be recompiled on the next lookup.  Compiled Schema objects
+ * are immutable and thread safe so one cache can be shared by every Validator.
+ * Only the top level schema locations are part of the key, so edits to an
+ * imported schema are not noticed until the entry is evicted.
+ * <p>
+ * A schema compiled from the root element's hints only knows those
+ * namespaces, and the JDK's validators cannot be told to load any more.  So
+ * each entry also has a schema that loads what the document's hints ask for,
+ * root and nested, keeping what it loads for the next document.  That one is
+ * used to validate whole documents; the compiled one is checked first, so a
+ * broken schema still fails straight away.
+ * @author Geoff Williams
+ */
+public class SchemaCache {
+    public static final int DEFAULT_MAX_ENTRIES = 32;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final SchemaCache defaultCache = new SchemaCache(DEFAULT_MAX_ENTRIES);
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Map<String, CachedSchema> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Holder for a compiled schema.  Compilation happens while holding the
+     * entry's own lock so concurrent lookups of the same schema set only
+     * compile it once without blocking lookups of other schemas
+     */
+    private static class CachedSchema {
+        private Schema schema;
+        private Schema hinted;
+        private String fingerprint;
+    }
+
+    public SchemaCache(final int maxEntries) {
+        entries = new LinkedHashMap<String, CachedSchema>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedSchema> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Cache shared by all Validator instances that were not given their own
+     */
+    public static SchemaCache getDefault() {
+        return defaultCache;
+    }
+
+    /**
+     * Get the schema to validate a document whose root element has a set of
+     * schema locations, see getSchema(List, SchemaResolver)
+     * @param locations absolute schema locations.  If empty, a schema that
+     * relies on the hints inside each document is returned
+     * @return schema that also follows hints on nested elements
+     */
+    public Schema getSchema(List<String> locations) throws SAXException, IOException {
+        return getSchema(locations, null);
+    }
+
+    /**
+     * Get the schema to validate a document whose root element has a set of
+     * schema locations, compiling them if they are not already cached or
+     * have changed on disk
+     * @param locations absolute schema locations.  If empty, a schema that
+     * relies on the hints inside each document is returned
+     * @param resolver resolver to load the schemas and their imports through,
+     * or null to load them directly.  Hints inside the document are loaded
+     * through the validator's resource resolver, so set it there too
+     * @return schema that also follows hints on nested elements
+     */
+    public Schema getSchema(List<String> locations, SchemaResolver resolver) throws SAXException, IOException {
+        return compiled(locations, resolver, true).hinted;
+    }
+
+    /**
+     * Get the schema compiled from just a set of schema locations, for when
+     * elements have to be validated without the document's hints around
+     * them (see FragmentValidator)
+     * @param locations absolute schema locations
+     * @param resolver resolver the schemas are loaded through, or null
+     * @return compiled schema
+     */
+    public Schema getCompiledSchema(List<String> locations, SchemaResolver resolver) 
+            throws SAXException, IOException {
+        return compiled(locations, resolver, false).schema;
+    }
+
+    /**
+     * Get a fingerprint of the content of every schema document in a schema
+     * set - the top level schemas and everything they import or include -
+     * as it was when the set was compiled.  Compiles the set if needed
+     * @param locations absolute schema locations
+     * @param resolver resolver the schemas are loaded through, or null
+     * @return hex digest
+     */
+    public String getFingerprint(List<String> locations, SchemaResolver resolver) throws SAXException, IOException {
+        return compiled(locations, resolver, false).fingerprint;
+    }
+
+    private CachedSchema compiled(List<String> locations, SchemaResolver resolver, boolean countHit) 
+            throws SAXException, IOException {
+        String key = cacheKey(locations, resolver);
+        CachedSchema entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new CachedSchema();
+                entries.put(key, entry);
+            }
+        }
+
+        synchronized (entry) {
+            if (entry.schema == null) {
+                misses.incrementAndGet();
+                logger.debug("compiling schema {}", locations);
+                Set<String> loaded = new TreeSet<String>(locations);
+                entry.schema = compile(locations, resolver, loaded);
+                entry.hinted = locations.isEmpty() ? 
+                        entry.schema : SchemaFactory.newInstance(Validator.W3C_XML_SCHEMA).newSchema();
+                entry.fingerprint = fingerprint(loaded, resolver);
+            } else if (countHit) {
+                hits.incrementAndGet();
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * @param loaded filled with the location of every schema document
+     * imported or included
+     */
+    private Schema compile(List<String> locations, final SchemaResolver resolver, final Set<String> loaded) 
+            throws SAXException, IOException {
+        // SchemaFactory is not thread safe so each compile gets its own
+        SchemaFactory schemaFactory = SchemaFactory.newInstance(Validator.W3C_XML_SCHEMA);
+        schemaFactory.setResourceResolver(new LSResourceResolver() {
+            public LSInput resolveResource(String type, String namespaceURI, String publicId, String systemId, 
+                    String baseURI) {
+                if (systemId != null) {
+                    loaded.add(SchemaHints.resolve(systemId, baseURI));
+                }
+                return resolver == null ? 
+                        null : resolver.resolveResource(type, namespaceURI, publicId, systemId, baseURI);
+            }
+        });
+        Schema schema;
+        if (locations.isEmpty()) {
+            schema = schemaFactory.newSchema();
+        } else {
+            Source[] sources = new Source[locations.size()];
+            try {
+                for (int i = 0; i < sources.length; i++) {
+                    if (resolver == null) {
+                        sources[i] = new StreamSource(locations.get(i));
+                    } else {
+                        sources[i] = resolver.resolveSource(locations.get(i));
+                    }
+                }
+                schema = schemaFactory.newSchema(sources);
+            } finally {
+                for (Source source : sources) {
+                    if (source != null && ((StreamSource) source).getInputStream() != null) {
+                        ((StreamSource) source).getInputStream().close();
+                    }
+                }
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Hash the content of each local schema document.  Remote ones that the
+     * resolver has no local copy of are assumed never to change, as in the
+     * cache key
+     */
+    private String fingerprint(Set<String> loaded, SchemaResolver resolver) {
+        MessageDigest digest = ValidationIndex.newDigest();
+        byte[] buffer = new byte[8192];
+        for (String location : loaded) {
+            digest.update(location.getBytes(UTF8));
+            digest.update((byte) 0);
+            File file = localFile(resolver == null ? location : resolver.map(location));
+            if (file != null && file.isFile()) {
+                try {
+                    InputStream is = new FileInputStream(file);
+                    try {
+                        int read;
+                        while ((read = is.read(buffer)) != -1) {
+                            digest.update(buffer, 0, read);
+                        }
+                    } finally {
+                        is.close();
+                    }
+                } catch (IOException ex) {
+                    logger.debug("unable to read {} for fingerprint: {}", file, ex.getMessage());
+                }
+            }
+            digest.update((byte) 0);
+        }
+        return ValidationIndex.toHex(digest.digest());
+    }
+
+    /**
+     * Build the key for a set of locations.  Local files include their last
+     * modified time so edits invalidate the entry; remote schemas are assumed
+     * not to change for the lifetime of the cache
+     */
+    String cacheKey(List<String> locations, SchemaResolver resolver) {
+        StringBuilder sb = new StringBuilder();
+        if (resolver != null) {
+            // schemas loaded through different catalogs may differ
+            sb.append(resolver.getId());
+            sb.append('\n');
+        }
+        for (String location : locations) {
+            sb.append(location);
+            sb.append('@');
+            sb.append(lastModified(resolver == null ? location : resolver.map(location)));
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private long lastModified(String location) {
+        File file = localFile(location);
+        return file == null ? 0 : file.lastModified();
+    }
+
+    /**
+     * @return the file a location refers to, or null if it is not local
+     */
+    private static File localFile(String location) {
+        File file = null;
+        try {
+            URI uri = new URI(location);
+            if ("file".equals(uri.getScheme())) {
+                file = new File(uri);
+            } else if (uri.getScheme() == null) {
+                file = new File(location);
+            }
+        } catch (Exception ex) {
+            // not something we can stat - treat as never changing
+        }
+        return file;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+}
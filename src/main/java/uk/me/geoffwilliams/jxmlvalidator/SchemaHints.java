@@ -0,0 +1,211 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the xsi:schemaLocation and xsi:noNamespaceSchemaLocation hints from
+ * the root element of a document so that the schema can be compiled (or
+ * fetched from the SchemaCache) before the document itself is parsed.  Only
+ * the prolog and root start tag are read.
+ * @author Geoff Williams
+ */
+public class SchemaHints {
+    public static final String XSI_NAMESPACE = "http://www.w3.org/2001/XMLSchema-instance";
+
+    /**
+     * Maximum number of bytes read looking for the root element when peeking
+     * at a stream that must be re-read afterwards
+     */
+    public static final int PEEK_LIMIT = 1024 * 1024;
+
+    private static final XMLInputFactory inputFactory = createInputFactory();
+
+    private List<String> locations = new ArrayList<String>();
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // never go off and fetch DTDs just to find the root element
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * Read the schema hints from the root element of a document
+     * @param is stream positioned at the start of the document.  The stream
+     * is not closed
+     * @param systemId URI of the document, used to resolve relative schema
+     * locations
+     * @return hints found, possibly none
+     */
+    public static SchemaHints read(InputStream is, String systemId) throws IOException {
+        SchemaHints hints = new SchemaHints();
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(systemId, is);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    hints.addPairs(reader.getAttributeValue(XSI_NAMESPACE, "schemaLocation"), systemId);
+                    hints.addLocation(reader.getAttributeValue(XSI_NAMESPACE, "noNamespaceSchemaLocation"), systemId);
+                    break;
+                }
+            }
+        } catch (XMLStreamException ex) {
+            // broken prolog -- leave the reporting to the real parse
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ex) {
+                    // nothing useful to do
+                }
+            }
+        }
+        return hints;
+    }
+
+    /**
+     * Read the schema hints from the start of a stream and then rewind it so
+     * that it can be handed to the parser.  At most PEEK_LIMIT bytes are
+     * consumed - a root element further in than that yields no hints
+     * @param is stream positioned at the start of the document
+     * @param systemId URI of the document
+     * @return hints found, possibly none
+     */
+    public static SchemaHints peek(BufferedInputStream is, String systemId) throws IOException {
+        is.mark(PEEK_LIMIT);
+        try {
+            return read(new PeekInputStream(is), systemId);
+        } finally {
+            is.reset();
+        }
+    }
+
+    /**
+     * Stops reading at the mark limit and never closes the wrapped stream
+     */
+    private static class PeekInputStream extends FilterInputStream {
+        private int remaining = PEEK_LIMIT;
+
+        PeekInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = -1;
+            if (remaining > 0) {
+                b = super.read();
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = -1;
+            if (remaining > 0) {
+                count = super.read(b, off, Math.min(len, remaining));
+                if (count > 0) {
+                    remaining -= count;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return super.skip(Math.min(n, remaining));
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // the caller still needs the stream
+        }
+    }
+
+    /**
+     * xsi:schemaLocation is a whitespace separated list of namespace/location
+     * pairs -- we only need the locations
+     */
+    private void addPairs(String schemaLocation, String systemId) {
+        if (schemaLocation != null) {
+            String[] tokens = schemaLocation.trim().split("\\s+");
+            for (int i = 1; i < tokens.length; i += 2) {
+                addLocation(tokens[i], systemId);
+            }
+        }
+    }
+
+    private void addLocation(String location, String systemId) {
+        if (location != null && ! location.trim().isEmpty()) {
+            String resolved = resolve(location.trim(), systemId);
+            if (! locations.contains(resolved)) {
+                locations.add(resolved);
+            }
+        }
+    }
+
+    static String resolve(String location, String systemId) {
+        String resolved;
+        try {
+            if (systemId == null) {
+                resolved = location;
+            } else {
+                // relative to where a file in an archive was before archiving
+                resolved = new URI(Archive.extractedLocation(systemId)).resolve(new URI(location)).toString();
+            }
+        } catch (URISyntaxException ex) {
+            resolved = location;
+        } catch (IllegalArgumentException ex) {
+            // opaque base URIs (jar:, etc) cannot resolve relative references
+            resolved = location;
+        }
+        return resolved;
+    }
+
+    /**
+     * Resolved (absolute where possible) schema locations in document order
+     */
+    public List<String> getLocations() {
+        return locations;
+    }
+
+    public boolean isEmpty() {
+        return locations.isEmpty();
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.xml.transform.stream.StreamSource;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+/**
+ * Resolves schemas (xsi:schemaLocation targets, xs:import/xs:include) and
+ * external entities without going to the network where possible.  Locations
+ * are first mapped through an optional XML catalog; anything remote that
+ * still has to be fetched can be kept in a persistent content-addressed
+ * cache and reused on later runs.  Cached copies are not revalidated, so the
+ * cache is only used when a directory is given.  In offline mode nothing is
+ * ever fetched.
+ * @author Geoff Williams
+ */
+public class SchemaResolver implements LSResourceResolver, EntityResolver {
+    private static final String OBJECTS_DIR = "objects";
+    private static final String INDEX_FILE = "index.properties";
+
+    private static final AtomicLong ids = new AtomicLong();
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final long id = ids.incrementAndGet();
+    private final XmlCatalog catalog;
+    private final File cacheDir;
+    private final boolean offline;
+    private final Properties index = new Properties();
+
+    /**
+     * @param catalog catalog to map locations through, or null
+     * @param cacheDir directory for the persistent cache of fetched schemas,
+     * or null to fetch remote schemas every time
+     * @param offline never fetch anything from the network
+     */
+    public SchemaResolver(XmlCatalog catalog, File cacheDir, boolean offline) throws IOException {
+        this.catalog = catalog;
+        this.cacheDir = cacheDir;
+        this.offline = offline;
+        if (cacheDir != null) {
+            File objects = new File(cacheDir, OBJECTS_DIR);
+            if (! objects.isDirectory() && ! objects.mkdirs()) {
+                throw new IOException("Unable to create schema cache directory " + objects);
+            }
+            File indexFile = new File(cacheDir, INDEX_FILE);
+            if (indexFile.isFile()) {
+                InputStream is = new FileInputStream(indexFile);
+                try {
+                    index.load(is);
+                } finally {
+                    is.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Unique for each resolver created, so SchemaCache can tell schemas
+     * loaded through different catalogs apart
+     */
+    long getId() {
+        return id;
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /**
+     * Where a location will actually be read from once the catalog and cache
+     * have been consulted - used by SchemaCache to notice local edits
+     * @param location absolute location
+     * @return local location if there is one, otherwise the location itself
+     */
+    public String map(String location) {
+        String mapped = catalog == null ? null : catalog.resolve(location);
+        if (mapped == null && isRemote(location)) {
+            File cached = cachedFile(location);
+            if (cached != null) {
+                mapped = cached.toURI().toString();
+            }
+        }
+        return mapped == null ? location : mapped;
+    }
+
+    /**
+     * Open a schema location for reading
+     * @param location absolute location
+     * @return source to read the schema from.  Its system id is the catalog
+     * target if the catalog mapped it, otherwise the original location so
+     * that relative imports resolve as they would online
+     */
+    public StreamSource resolveSource(String location) throws IOException {
+        String mapped = catalog == null ? null : catalog.resolve(location);
+        StreamSource source;
+        if (mapped != null) {
+            logger.debug("catalog maps '{}' to '{}'", location, mapped);
+            source = new StreamSource(mapped);
+        } else if (isRemote(location)) {
+            source = new StreamSource(openRemote(location), location);
+        } else {
+            source = new StreamSource(location);
+        }
+        return source;
+    }
+
+    private static boolean isRemote(String location) {
+        return location != null && location.contains("://") && ! location.startsWith("file:") &&
+                ! location.startsWith("jar:");
+    }
+
+    private synchronized File cachedFile(String location) {
+        File cached = null;
+        if (cacheDir != null) {
+            String hash = index.getProperty(location);
+            if (hash != null) {
+                cached = new File(new File(cacheDir, OBJECTS_DIR), hash);
+                if (! cached.isFile()) {
+                    cached = null;
+                }
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Read a remote location from the cache, fetching and caching it first if
+     * needed
+     */
+    private InputStream openRemote(String location) throws IOException {
+        File cached = cachedFile(location);
+        InputStream is;
+        if (cached != null) {
+            logger.debug("using cached copy of '{}'", location);
+            is = new FileInputStream(cached);
+        } else if (offline) {
+            throw new IOException("Offline mode: '" + location + "' is not in the catalog or schema cache");
+        } else if (cacheDir == null) {
+            logger.info("Fetching '{}'...", location);
+            is = new URL(location).openStream();
+        } else {
+            is = new FileInputStream(fetch(location));
+        }
+        return is;
+    }
+
+    /**
+     * Download a location into the cache.  Files are named by the SHA-256 of
+     * their content so identical schemas published at different URLs are
+     * stored once
+     */
+    private File fetch(String location) throws IOException {
+        logger.info("Fetching '{}' into schema cache...", location);
+        File objects = new File(cacheDir, OBJECTS_DIR);
+        File temp = File.createTempFile("fetch", ".part", objects);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            InputStream is = new DigestInputStream(new URL(location).openStream(), digest);
+            OutputStream os = new FileOutputStream(temp);
+            try {
+                IOUtils.copy(is, os);
+            } finally {
+                is.close();
+                os.close();
+            }
+
+            StringBuilder hash = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hash.append(String.format("%02x", b));
+            }
+            File object = new File(objects, hash.toString());
+            Files.move(temp.toPath(), object.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            record(location, hash.toString());
+            return object;
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("SHA-256 not available", ex);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private synchronized void record(String location, String hash) throws IOException {
+        index.setProperty(location, hash);
+        File indexFile = new File(cacheDir, INDEX_FILE);
+        File temp = File.createTempFile("index", ".part", cacheDir);
+        OutputStream os = new FileOutputStream(temp);
+        try {
+            index.store(os, "schema location -> content hash");
+        } finally {
+            os.close();
+        }
+        Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Called by the schema loader for xs:import, xs:include and schema hints
+     * met while validating
+     */
+    public LSInput resolveResource(String type, String namespaceURI, String publicId, String systemId, String baseURI) {
+        LSInput input = null;
+        String location = systemId == null ? null : SchemaHints.resolve(systemId, baseURI);
+        if (location == null && namespaceURI != null && catalog != null && catalog.resolveUri(namespaceURI) != null) {
+            // import without a schemaLocation - try the namespace
+            location = namespaceURI;
+        }
+        if (location != null && (catalog != null && catalog.resolve(location) != null || isRemote(location))) {
+            input = new ResolvedInput(publicId, location, baseURI);
+        }
+        return input;
+    }
+
+    /**
+     * Called by parsers for DTDs and external entities
+     */
+    public InputSource resolveEntity(String publicId, String systemId) throws IOException {
+        InputSource inputSource = null;
+        String mapped = null;
+        if (catalog != null) {
+            mapped = publicId == null ? null : catalog.resolvePublic(publicId);
+            if (mapped == null) {
+                mapped = catalog.resolve(systemId);
+            }
+        }
+        if (mapped != null) {
+            inputSource = new InputSource(mapped);
+        } else if (isRemote(systemId)) {
+            inputSource = new InputSource(openRemote(systemId));
+            inputSource.setSystemId(systemId);
+        }
+        return inputSource;
+    }
+
+    /**
+     * LSInput whose stream is opened on demand through the catalog and cache.
+     * Failures (eg a location missing in offline mode) are reported by the
+     * parser as an unreadable schema document
+     */
+    private class ResolvedInput implements LSInput {
+        private String publicId;
+        private String systemId;
+        private String baseURI;
+        private StreamSource source;
+
+        ResolvedInput(String publicId, String systemId, String baseURI) {
+            this.publicId = publicId;
+            this.systemId = systemId;
+            this.baseURI = baseURI;
+        }
+
+        private StreamSource source() {
+            if (source == null) {
+                try {
+                    source = resolveSource(systemId);
+                } catch (IOException ex) {
+                    logger.error(ex.getMessage());
+                    source = new StreamSource(new FailingInputStream(ex), systemId);
+                }
+            }
+            return source;
+        }
+
+        public Reader getCharacterStream() {
+            return null;
+        }
+
+        public void setCharacterStream(Reader characterStream) {
+        }
+
+        public InputStream getByteStream() {
+            return source().getInputStream();
+        }
+
+        public void setByteStream(InputStream byteStream) {
+        }
+
+        public String getStringData() {
+            return null;
+        }
+
+        public void setStringData(String stringData) {
+        }
+
+        public String getSystemId() {
+            return source().getSystemId();
+        }
+
+        public void setSystemId(String systemId) {
+            this.systemId = systemId;
+        }
+
+        public String getPublicId() {
+            return publicId;
+        }
+
+        public void setPublicId(String publicId) {
+            this.publicId = publicId;
+        }
+
+        public String getBaseURI() {
+            return baseURI;
+        }
+
+        public void setBaseURI(String baseURI) {
+            this.baseURI = baseURI;
+        }
+
+        public String getEncoding() {
+            return null;
+        }
+
+        public void setEncoding(String encoding) {
+        }
+
+        public boolean getCertifiedText() {
+            return false;
+        }
+
+        public void setCertifiedText(boolean certifiedText) {
+        }
+    }
+
+    /**
+     * Rethrows a resolution failure when the parser tries to read
+     */
+    private static class FailingInputStream extends InputStream {
+        private final IOException cause;
+
+        FailingInputStream(IOException cause) {
+            this.cause = cause;
+        }
+
+        @Override
+        public int read() throws IOException {
+            throw cause;
+        }
+    }
+}
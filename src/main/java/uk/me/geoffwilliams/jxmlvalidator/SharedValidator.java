@@ -0,0 +1,72 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.InputStream;
+
+/**
+ * Thread safe front end for embedding the validator in another program.
+ * One instance can be shared by any number of threads: each call validates
+ * with its own Validator, which is cheap as the compiled schemas and the
+ * parsers set up for them come from the shared SchemaCache and ValidatorPool.
+ * <pre>
+ * Validator settings = new Validator();
+ * settings.setMaxErrors(100);
+ * SharedValidator validator = new SharedValidator(settings);
+ * ...
+ * ValidationResult result = validator.validate(file);
+ * </pre>
+ * @author Geoff Williams
+ */
+public class SharedValidator {
+    private final Validator settings;
+
+    /**
+     * @param settings validator to take settings from.  They are copied, so
+     * later changes to it have no effect.  Its ReportWriter and TimingStats,
+     * if any, are shared by every call
+     */
+    public SharedValidator(Validator settings) {
+        this.settings = new Validator(settings);
+    }
+
+    /**
+     * Validate a local file or URL
+     * @param uri filename or URL
+     * @return result of the validation
+     */
+    public ValidationResult validate(String uri) {
+        Validator validator = new Validator(settings);
+        validator.validate(uri);
+        return validator.getResult();
+    }
+
+    /**
+     * Validate a document supplied as a stream
+     * @param is document content.  Not closed
+     * @param systemId URI of the document, used to resolve relative schema
+     * locations and reported in error messages
+     * @return result of the validation
+     */
+    public ValidationResult validate(InputStream is, String systemId) {
+        Validator validator = new Validator(settings);
+        validator.validate(is, systemId);
+        return validator.getResult();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Summarises the Timings of every document in a run as latency percentiles
+ * and throughput.  Totals cover every document, but only a fixed size
+ * random sample of the documents' Timings is kept (reservoir sampling), so
+ * memory stays flat however long a batch or watch runs.  Percentiles are
+ * exact until the sample fills and estimates from it afterwards.  Safe to
+ * share between threads
+ * @author Geoff Williams
+ */
+public class TimingStats {
+    public static final int DEFAULT_SAMPLE_SIZE = 10000;
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+
+    private final long started = System.nanoTime();
+    private final int sampleSize;
+    private final List<Timings> sample;
+    private final Random random = new Random();
+    private int documents = 0;
+    private long bytes = 0;
+    private long downloadNanos = 0;
+    private long schemaNanos = 0;
+    private long parseNanos = 0;
+    private long max = 0;
+
+    public TimingStats() {
+        this(DEFAULT_SAMPLE_SIZE);
+    }
+
+    /**
+     * @param sampleSize number of documents' Timings kept for percentiles
+     * and the per-document JSON
+     */
+    public TimingStats(int sampleSize) {
+        this.sampleSize = sampleSize;
+        this.sample = new ArrayList<Timings>(Math.min(sampleSize, 1024));
+    }
+
+    public synchronized void add(Timings documentTimings) {
+        documents++;
+        bytes += documentTimings.getBytes();
+        downloadNanos += documentTimings.getDownloadNanos();
+        schemaNanos += documentTimings.getSchemaNanos();
+        parseNanos += documentTimings.getParseNanos();
+        max = Math.max(max, documentTimings.getTotalNanos());
+        if (sample.size() < sampleSize) {
+            sample.add(documentTimings);
+        } else {
+            // keep each of the documents seen with equal probability
+            int slot = random.nextInt(documents);
+            if (slot < sampleSize) {
+                sample.set(slot, documentTimings);
+            }
+        }
+    }
+
+    /**
+     * Number of documents timed
+     */
+    public synchronized int size() {
+        return documents;
+    }
+
+    /**
+     * Is the per-document data a sample rather than every document?
+     */
+    public synchronized boolean isSampled() {
+        return documents > sample.size();
+    }
+
+    /**
+     * Snapshot of the statistics so far
+     */
+    public synchronized Summary summary() {
+        Summary summary = new Summary();
+        summary.wallNanos = System.nanoTime() - started;
+        summary.documents = documents;
+        summary.bytes = bytes;
+        summary.downloadNanos = downloadNanos;
+        summary.schemaNanos = schemaNanos;
+        summary.parseNanos = parseNanos;
+        long[] totals = new long[sample.size()];
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = sample.get(i).getTotalNanos();
+        }
+        Arrays.sort(totals);
+        summary.p50 = percentile(totals, 50);
+        summary.p95 = percentile(totals, 95);
+        summary.p99 = percentile(totals, 99);
+        summary.max = max;
+        return summary;
+    }
+
+    /**
+     * Nearest-rank percentile of sorted values
+     */
+    static long percentile(long[] sorted, int percent) {
+        long value = 0;
+        if (sorted.length > 0) {
+            int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+            value = sorted[Math.max(0, rank - 1)];
+        }
+        return value;
+    }
+
+    /**
+     * Aggregate figures for a run
+     */
+    public static class Summary {
+        private int documents;
+        private long bytes;
+        private long wallNanos;
+        private long downloadNanos;
+        private long schemaNanos;
+        private long parseNanos;
+        private long p50;
+        private long p95;
+        private long p99;
+        private long max;
+
+        public int getDocuments() {
+            return documents;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getP50Nanos() {
+            return p50;
+        }
+
+        public long getP95Nanos() {
+            return p95;
+        }
+
+        public long getP99Nanos() {
+            return p99;
+        }
+
+        /**
+         * Bytes validated per second of wall time over the whole run
+         */
+        public double getMegabytesPerSecond() {
+            return wallNanos == 0 ? 0 : (bytes / MEGABYTE) / (wallNanos / NANOS_PER_SECOND);
+        }
+
+        public double getDocumentsPerSecond() {
+            return wallNanos == 0 ? 0 : documents / (wallNanos / NANOS_PER_SECOND);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d documents, %d bytes in %.1f s: %.2f MB/s, %.1f documents/s%n" +
+                    "latency p50 %s, p95 %s, p99 %s, max %s%n" +
+                    "time in phases (all threads): download %s, schema %s, parse %s",
+                    documents, bytes, wallNanos / NANOS_PER_SECOND, getMegabytesPerSecond(), getDocumentsPerSecond(),
+                    Timings.millis(p50), Timings.millis(p95), Timings.millis(p99), Timings.millis(max),
+                    Timings.millis(downloadNanos), Timings.millis(schemaNanos), Timings.millis(parseNanos));
+        }
+
+        void toJson(StringBuilder sb) {
+            sb.append("{\"documents\":").append(documents);
+            sb.append(",\"bytes\":").append(bytes);
+            sb.append(",\"wallMs\":").append(wallNanos / NANOS_PER_MILLI);
+            sb.append(",\"megabytesPerSecond\":").append(getMegabytesPerSecond());
+            sb.append(",\"documentsPerSecond\":").append(getDocumentsPerSecond());
+            sb.append(",\"p50Ms\":").append(p50 / NANOS_PER_MILLI);
+            sb.append(",\"p95Ms\":").append(p95 / NANOS_PER_MILLI);
+            sb.append(",\"p99Ms\":").append(p99 / NANOS_PER_MILLI);
+            sb.append(",\"maxMs\":").append(max / NANOS_PER_MILLI);
+            sb.append(",\"downloadMs\":").append(downloadNanos / NANOS_PER_MILLI);
+            sb.append(",\"schemaMs\":").append(schemaNanos / NANOS_PER_MILLI);
+            sb.append(",\"parseMs\":").append(parseNanos / NANOS_PER_MILLI);
+            sb.append('}');
+        }
+    }
+
+    /**
+     * Write the summary and the documents' timings as one JSON object.  If
+     * there were more documents than the sample holds, "sampled" is true and
+     * "documents" lists only the sample
+     */
+    public synchronized void writeJson(File file) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\"summary\":");
+            summary().toJson(sb);
+            sb.append(",\n\"sampled\":").append(isSampled());
+            sb.append(",\n\"documents\":[\n");
+            for (int i = 0; i < sample.size(); i++) {
+                if (i > 0) {
+                    sb.append(",\n");
+                }
+                sample.get(i).toJson(sb);
+                if (sb.length() > 8192) {
+                    writer.write(sb.toString());
+                    sb.setLength(0);
+                }
+            }
+            sb.append("\n]}\n");
+            writer.write(sb.toString());
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.InputStream;
+import org.apache.commons.io.input.CountingInputStream;
+
+/**
+ * Wall time spent in each phase of validating one document, and the number
+ * of bytes read.  When a URL is streamed the download overlaps parsing, so
+ * the download phase only covers connecting and receiving the headers
+ * @author Geoff Williams
+ */
+public class Timings {
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final String uri;
+    private final long started = System.nanoTime();
+    private long downloadNanos = 0;
+    private long schemaNanos = 0;
+    private long parseNanos = 0;
+    private long totalNanos = 0;
+    private CountingInputStream counter;
+    private long bytes = 0;
+    private int status = App.STATUS_UNKNOWN;
+
+    public Timings(String uri) {
+        this.uri = uri;
+    }
+
+    /**
+     * Wrap the raw document stream so the bytes read can be counted
+     */
+    InputStream count(InputStream is) {
+        counter = new CountingInputStream(is);
+        return counter;
+    }
+
+    void addDownload(long nanos) {
+        downloadNanos += nanos;
+    }
+
+    void addSchema(long nanos) {
+        schemaNanos += nanos;
+    }
+
+    void addParse(long nanos) {
+        parseNanos += nanos;
+    }
+
+    void finish(int status) {
+        this.status = status;
+        totalNanos = System.nanoTime() - started;
+        // TimingStats may keep this long after the stream is finished with
+        bytes = getBytes();
+        counter = null;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public long getDownloadNanos() {
+        return downloadNanos;
+    }
+
+    public long getSchemaNanos() {
+        return schemaNanos;
+    }
+
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getBytes() {
+        return counter == null ? bytes : counter.getByteCount();
+    }
+
+    static String millis(long nanos) {
+        return String.format("%.1f ms", nanos / NANOS_PER_MILLI);
+    }
+
+    @Override
+    public String toString() {
+        return "download " + millis(downloadNanos) + ", schema " + millis(schemaNanos) + 
+                ", parse " + millis(parseNanos) + ", total " + millis(totalNanos) + ", " + getBytes() + " bytes";
+    }
+
+    void toJson(StringBuilder sb) {
+        sb.append("{\"uri\":");
+        Json.quote(sb, uri);
+        sb.append(",\"status\":").append(status);
+        sb.append(",\"bytes\":").append(getBytes());
+        sb.append(",\"downloadMs\":").append(downloadNanos / NANOS_PER_MILLI);
+        sb.append(",\"schemaMs\":").append(schemaNanos / NANOS_PER_MILLI);
+        sb.append(",\"parseMs\":").append(parseNanos / NANOS_PER_MILLI);
+        sb.append(",\"totalMs\":").append(totalNanos / NANOS_PER_MILLI);
+        sb.append('}');
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent record of the result of validating each local document, so
+ * that repeat runs can skip documents that have not changed.  An entry is
+ * reused when the document's content hash and the fingerprint of the schema
+ * set it was validated against both still match.  Size and last modified
+ * time are kept too so an untouched file does not even need hashing.
+ * <p>
+ * The file is an append-only log of tab separated records, one per
+ * validation, with later records replacing earlier ones for the same path.
+ * compact() rewrites it with just the live records.  The findings kept by
+ * the ErrorReport (the first ErrorReport.MAX_KEPT_FINDINGS) are stored, with
+ * a count of the rest, so that a skipped document still reaches the report
+ * writer.
+ * Records from version 1, which had no findings, are ignored and the
+ * documents validated again.
+ * @author Geoff Williams
+ */
+public class ValidationIndex {
+    private static final String HEADER = "# jxmlvalidator index 2";
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final int FIELDS = 10;
+    private static final int COMPACT_MIN_RECORDS = 1000;
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private int records = 0;
+    private Writer writer;
+
+    /**
+     * The stored result for one document
+     */
+    public static class Entry {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final String contentHash;
+        private final String schemaFingerprint;
+        private final int status;
+        private final List<String> schemaLocations;
+        private final String report;
+        private final List<ErrorReport.Finding> findings;
+        private final int droppedFindings;
+
+        Entry(String path, long size, long lastModified, String contentHash, String schemaFingerprint, int status, 
+                List<String> schemaLocations, String report, List<ErrorReport.Finding> findings, 
+                int droppedFindings) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.schemaFingerprint = schemaFingerprint;
+            this.status = status;
+            this.schemaLocations = schemaLocations;
+            this.report = report;
+            this.findings = findings;
+            this.droppedFindings = droppedFindings;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        public String getSchemaFingerprint() {
+            return schemaFingerprint;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public List<String> getSchemaLocations() {
+            return schemaLocations;
+        }
+
+        /**
+         * @return the error report as it was printed, empty if valid
+         */
+        public String getReport() {
+            return report;
+        }
+
+        /**
+         * @return the messages kept, in the order reported
+         */
+        public List<ErrorReport.Finding> getFindings() {
+            return findings;
+        }
+
+        /**
+         * @return number of messages reported after the ones kept
+         */
+        public int getDroppedFindings() {
+            return droppedFindings;
+        }
+    }
+
+    /**
+     * Open (creating if needed) an index file.  A log that has grown to more
+     * than twice its live records is compacted straight away
+     */
+    public ValidationIndex(File file) throws IOException {
+        this.file = file;
+        if (file.isFile()) {
+            load();
+            if (records >= COMPACT_MIN_RECORDS && records > 2 * entries.size()) {
+                compact();
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                Entry entry = parse(line);
+                if (entry == null) {
+                    // eg the last line of a run that was killed
+                    logger.debug("ignoring bad index record: {}", line);
+                } else {
+                    entries.put(entry.path, entry);
+                    records++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        logger.debug("loaded {} index records for {} documents from {}", 
+                new Object[] {records, entries.size(), file});
+    }
+
+    private static Entry parse(String line) {
+        String[] fields = line.split("\t", -1);
+        Entry entry = null;
+        if (fields.length == FIELDS) {
+            try {
+                List<String> locations = fields[6].isEmpty() ? 
+                        Collections.<String>emptyList() : Arrays.asList(fields[6].split(" "));
+                entry = new Entry(unescape(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]), 
+                        fields[3], fields[4], Integer.parseInt(fields[5]), locations, unescape(fields[7]), 
+                        parseFindings(unescape(fields[8])), Integer.parseInt(fields[9]));
+            } catch (IllegalArgumentException ex) {
+                // including NumberFormatException
+                entry = null;
+            }
+        }
+        return entry;
+    }
+
+    private static String format(Entry entry) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(escape(entry.path)).append('\t');
+        sb.append(entry.size).append('\t');
+        sb.append(entry.lastModified).append('\t');
+        sb.append(entry.contentHash).append('\t');
+        sb.append(entry.schemaFingerprint).append('\t');
+        sb.append(entry.status).append('\t');
+        for (int i = 0; i < entry.schemaLocations.size(); i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            // URIs, so never contain spaces or tabs
+            sb.append(entry.schemaLocations.get(i));
+        }
+        sb.append('\t');
+        sb.append(escape(entry.report)).append('\t');
+        sb.append(escape(formatFindings(entry.findings))).append('\t');
+        sb.append(entry.droppedFindings);
+        sb.append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Findings are one per line with tab separated fields, escaped again as
+     * a whole to fit in the record
+     */
+    private static String formatFindings(List<ErrorReport.Finding> findings) {
+        StringBuilder sb = new StringBuilder();
+        for (ErrorReport.Finding finding : findings) {
+            sb.append(finding.getSeverity().name()).append('\t');
+            sb.append(escape(finding.getSystemId())).append('\t');
+            sb.append(finding.getLine()).append('\t');
+            sb.append(finding.getColumn()).append('\t');
+            sb.append(escape(finding.getMessage() == null ? "" : finding.getMessage())).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static List<ErrorReport.Finding> parseFindings(String value) {
+        List<ErrorReport.Finding> findings = new ArrayList<ErrorReport.Finding>();
+        for (String line : value.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 5) {
+                throw new IllegalArgumentException("bad finding: " + line);
+            }
+            findings.add(new ErrorReport.Finding(ReportWriter.Severity.valueOf(fields[0]), unescape(fields[1]), 
+                    Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), unescape(fields[4])));
+        }
+        return findings;
+    }
+
+    static String escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\') {
+                sb.append("\\\\");
+            } else if (c == '\t') {
+                sb.append("\\t");
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\r') {
+                sb.append("\\r");
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    static String unescape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String key(File document) {
+        return document.getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    /**
+     * Find the stored result for a document if its content has not changed
+     * since.  The content is only hashed if its size or last modified time
+     * differ from the stored ones
+     * @return the entry, or null if there is none or the content differs.
+     * The caller still has to check the schema fingerprint
+     */
+    public Entry lookup(File document) throws IOException {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key(document));
+        }
+        long size = document.length();
+        long lastModified = document.lastModified();
+        if (entry != null && (entry.size != size || entry.lastModified != lastModified)) {
+            if (entry.size == size && entry.contentHash.equals(hash(document))) {
+                // touched but not changed - save hashing it next time
+                record(document, size, lastModified, entry.contentHash, entry.schemaFingerprint, entry.status, 
+                        entry.schemaLocations, entry.report, entry.findings, entry.droppedFindings);
+            } else {
+                entry = null;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Store the result of validating a document
+     * @param document file validated
+     * @param size size of the file when it was opened
+     * @param lastModified last modified time of the file when it was opened
+     * @param contentHash hex content hash, see newDigest()
+     * @param schemaFingerprint fingerprint of the schema set, see
+     * SchemaCache.getFingerprint()
+     * @param status App.STATUS_* result
+     * @param schemaLocations schema locations the document's hints gave
+     * @param report error report text, empty if valid
+     * @param findings messages kept, see ErrorReport.getFindings()
+     * @param droppedFindings number of messages reported after those kept
+     */
+    public synchronized void record(File document, long size, long lastModified, String contentHash, 
+            String schemaFingerprint, int status, List<String> schemaLocations, String report, 
+            List<ErrorReport.Finding> findings, int droppedFindings) throws IOException {
+        Entry entry = new Entry(key(document), size, lastModified, contentHash, schemaFingerprint, status, 
+                new ArrayList<String>(schemaLocations), report, new ArrayList<ErrorReport.Finding>(findings), 
+                droppedFindings);
+        entries.put(entry.path, entry);
+        if (writer == null) {
+            boolean created = ! file.isFile();
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+            if (created) {
+                writer.write(HEADER + "\n");
+            }
+        }
+        writer.write(format(entry));
+        writer.flush();
+        records++;
+    }
+
+    /**
+     * Rewrite the index with one record per document, dropping documents
+     * that no longer exist
+     */
+    public synchronized void compact() throws IOException {
+        close();
+        File temp = File.createTempFile("index", ".part", file.getAbsoluteFile().getParentFile());
+        int live = 0;
+        try {
+            Writer compacted = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"));
+            try {
+                compacted.write(HEADER + "\n");
+                for (Entry entry : new ArrayList<Entry>(entries.values())) {
+                    if (new File(entry.path).isFile()) {
+                        compacted.write(format(entry));
+                        live++;
+                    } else {
+                        entries.remove(entry.path);
+                    }
+                }
+            } finally {
+                compacted.close();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temp.delete();
+        }
+        logger.info("Compacted index {} from {} records to {}", new Object[] {file, records, live});
+        records = live;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * Digest used for content hashes
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(HASH_ALGORITHM + " not available", ex);
+        }
+    }
+
+    public static String toHex(byte[] digest) {
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest) {
+            hash.append(String.format("%02x", b));
+        }
+        return hash.toString();
+    }
+
+    static String hash(File document) throws IOException {
+        MessageDigest digest = newDigest();
+        InputStream is = new FileInputStream(document);
+        try {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            is.close();
+        }
+        return toHex(digest.digest());
+    }
+}
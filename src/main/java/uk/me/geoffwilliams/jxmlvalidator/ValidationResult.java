@@ -0,0 +1,168 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of validating one document.  Immutable, so it can be handed to
+ * other threads or kept after the Validator that produced it is reused
+ * @author Geoff Williams
+ */
+public final class ValidationResult {
+    private final String document;
+    private final int status;
+    private final String exceptionMessage;
+    /**
+     * Nothing is added to the report once validation has finished, and it
+     * never leaves this object, so reading it here is safe
+     */
+    private final ErrorReport errorReport;
+    private final LineIndex lineIndex;
+
+    /**
+     * @param document name of the document validated
+     * @param status App.STATUS_* result
+     * @param errorReport finished report, or null if the document could not
+     * be parsed at all
+     * @param exceptionMessage reason validation failed when status is
+     * App.STATUS_EXCEPTION, otherwise null
+     * @param lineIndex index of the document's lines, or null
+     */
+    ValidationResult(String document, int status, ErrorReport errorReport, String exceptionMessage, 
+            LineIndex lineIndex) {
+        this.document = document;
+        this.status = status;
+        this.errorReport = errorReport;
+        this.exceptionMessage = exceptionMessage;
+        this.lineIndex = lineIndex;
+    }
+
+    public String getDocument() {
+        return document;
+    }
+
+    /**
+     * @return App.STATUS_* result
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    public boolean isValid() {
+        return status == App.STATUS_OK;
+    }
+
+    /**
+     * @return reason validation failed when the status is
+     * App.STATUS_EXCEPTION, otherwise null
+     */
+    public String getExceptionMessage() {
+        return exceptionMessage;
+    }
+
+    /**
+     * @return one summary line per distinct fatal error
+     */
+    public List<String> getFatal() {
+        return errorReport == null ? 
+                Collections.<String>emptyList() : Collections.unmodifiableList(errorReport.getFatal());
+    }
+
+    /**
+     * @return one summary line per distinct error
+     */
+    public List<String> getError() {
+        return errorReport == null ? 
+                Collections.<String>emptyList() : Collections.unmodifiableList(errorReport.getError());
+    }
+
+    /**
+     * @return one summary line per distinct warning
+     */
+    public List<String> getWarning() {
+        return errorReport == null ? 
+                Collections.<String>emptyList() : Collections.unmodifiableList(errorReport.getWarning());
+    }
+
+    public int getFatalCount() {
+        return errorReport == null ? 0 : errorReport.getFatalCount();
+    }
+
+    public int getErrorCount() {
+        return errorReport == null ? 0 : errorReport.getErrorCount();
+    }
+
+    public int getWarningCount() {
+        return errorReport == null ? 0 : errorReport.getWarningCount();
+    }
+
+    /**
+     * @return number of occurrences counted but whose position was not kept
+     * because of the error limit
+     */
+    public int getSuppressed() {
+        return errorReport == null ? 0 : errorReport.getSuppressed();
+    }
+
+    /**
+     * @return true if parsing was stopped early because of the error limit
+     */
+    public boolean isStopped() {
+        return errorReport != null && errorReport.isStopped();
+    }
+
+    /**
+     * @return line parsing was stopped at because of the error limit, -1 if
+     * the parser had no line number, or 0 if the whole document was checked
+     */
+    public int getStoppedAtLine() {
+        return errorReport == null ? 0 : errorReport.getStoppedAtLine();
+    }
+
+    /**
+     * @return true if the document was parsed, even if it was not valid
+     */
+    public boolean hasReport() {
+        return errorReport != null;
+    }
+
+    /**
+     * @return the error report as text, as logged, or the exception message
+     * if there is no report
+     */
+    public String getReport() {
+        return errorReport == null ? exceptionMessage : errorReport.toString();
+    }
+
+    /**
+     * @return index of the document's lines, built while validating it, or
+     * null if Validator.setLineIndexed() was off or the document was not a
+     * plain local file.  It is complete once the result is returned
+     */
+    public LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    @Override
+    public String toString() {
+        return document + ": " + status;
+    }
+}
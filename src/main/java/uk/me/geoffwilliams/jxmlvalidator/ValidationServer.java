@@ -0,0 +1,240 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps one warm JVM (loaded classes, JIT, compiled schemas) serving
+ * validation requests over HTTP on the loopback interface.
+ * <ul>
+ * <li>POST /validate - validate the request body</li>
+ * <li>GET /health - liveness check</li>
+ * </ul>
+ * Responses are JSON, with status 200 for a valid document (warnings
+ * allowed) and 422 otherwise.  Requests run on a bounded worker pool; when
+ * its queue is full new requests get 503 straight away rather than piling up.
+ * <p>
+ * Only when allowUri is set, since they let any local client make the server
+ * read files and URLs it can reach:
+ * <ul>
+ * <li>POST /validate?systemId=URI - base for relative schema locations in
+ * the request body</li>
+ * <li>GET or POST /validate?uri=FILE_OR_URL - validate a file or URL</li>
+ * <li>external DTDs and entities in the request body are loaded</li>
+ * </ul>
+ * @author Geoff Williams
+ */
+public class ValidationServer {
+    public static final int DEFAULT_QUEUE_DEPTH = 64;
+
+    private static final String CONTENT_TYPE_JSON = "application/json; charset=UTF-8";
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final SharedValidator validator;
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    private final boolean allowUri;
+
+    /**
+     * @param settings each request is validated by a copy of this validator
+     * @param port port to listen on, on the loopback interface only
+     * @param threads number of requests to validate at once
+     * @param queueDepth number of requests allowed to wait for a worker
+     * @param allowUri accept the ?uri= and ?systemId= parameters
+     */
+    public ValidationServer(Validator settings, int port, int threads, int queueDepth, boolean allowUri) 
+            throws IOException {
+        Validator requests = new Validator(settings);
+        if (! allowUri) {
+            // an entity in the request body could otherwise point at any
+            // local file, and the response tell whether it exists
+            requests.setExternalEntities(false);
+        }
+        this.validator = new SharedValidator(requests);
+        this.allowUri = allowUri;
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueDepth), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        return new Thread(r, "server-validator-" + count.incrementAndGet());
+                    }
+                });
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), queueDepth);
+        server.createContext("/validate", new ValidateHandler());
+        server.createContext("/health", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, "{\"status\":\"ok\",\"active\":" + workers.getActiveCount() +
+                        ",\"queued\":" + workers.getQueue().size() + "}");
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+        logger.info("Validation server listening on http://{}:{}/validate",
+                server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    public void stop() {
+        server.stop(0);
+        workers.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Hands each request to the worker pool.  Runs on the server's dispatcher
+     * thread so must not block
+     */
+    private class ValidateHandler implements HttpHandler {
+        public void handle(final HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            if (! "POST".equals(method) && ! "GET".equals(method)) {
+                respond(exchange, 405, "{\"error\":\"use GET or POST\"}");
+                return;
+            }
+            try {
+                workers.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            validate(exchange);
+                        } catch (IOException ex) {
+                            logger.debug("error writing response: {}", ex.getMessage());
+                        } catch (RuntimeException ex) {
+                            logger.error("Unexpected error handling request: {}", ex.toString());
+                            exchange.close();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 503, "{\"error\":\"server busy, try again later\"}");
+            }
+        }
+    }
+
+    private void validate(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        if (! allowUri && (query.containsKey("uri") || query.containsKey("systemId"))) {
+            exchange.getRequestBody().close();
+            respond(exchange, 403, "{\"error\":\"uri and systemId are not enabled on this server\"}");
+            return;
+        }
+        ValidationResult result;
+        InputStream body = exchange.getRequestBody();
+        try {
+            if (query.containsKey("uri")) {
+                result = validator.validate(query.get("uri"));
+            } else if ("POST".equals(exchange.getRequestMethod())) {
+                String systemId = query.containsKey("systemId") ? query.get("systemId") :
+                        new File("request.xml").getAbsoluteFile().toURI().toString();
+                result = validator.validate(body, systemId);
+            } else {
+                respond(exchange, 400, "{\"error\":\"POST a document or pass ?uri=\"}");
+                return;
+            }
+        } finally {
+            body.close();
+        }
+        respond(exchange, result.getStatus() <= App.STATUS_WARNINGS ? 200 : 422, toJson(result));
+    }
+
+    /**
+     * Structured version of the error report
+     */
+    static String toJson(ValidationResult result) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"uri\":");
+        Json.quote(sb, result.getDocument());
+        sb.append(",\"status\":").append(result.getStatus());
+        sb.append(",\"valid\":").append(result.isValid());
+        if (result.getStatus() == App.STATUS_EXCEPTION) {
+            sb.append(",\"exception\":");
+            Json.quote(sb, result.getExceptionMessage());
+        }
+        if (result.hasReport()) {
+            sb.append(",\"fatal\":");
+            Json.array(sb, result.getFatal());
+            sb.append(",\"error\":");
+            Json.array(sb, result.getError());
+            sb.append(",\"warning\":");
+            Json.array(sb, result.getWarning());
+            sb.append(",\"suppressed\":").append(result.getSuppressed());
+            if (result.isStopped()) {
+                sb.append(",\"stoppedAtLine\":").append(result.getStoppedAtLine());
+            }
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> query = new HashMap<String, String>();
+        if (rawQuery != null) {
+            for (String pair : rawQuery.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    query.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                            URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+                }
+            }
+        }
+        return query;
+    }
+
+    private static void respond(HttpExchange exchange, int code, String json) throws IOException {
+        byte[] bytes = json.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE_JSON);
+        exchange.sendResponseHeaders(code, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        try {
+            os.write(bytes);
+        } finally {
+            os.close();
+        }
+    }
+}
@@ -17,81 +17,730 @@
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
 package uk.me.geoffwilliams.jxmlvalidator;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.List;
 import javax.xml.parsers.DocumentBuilder; 
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 /**
- * Perform the validation
+ * Perform the validation.  An instance validates one document at a time and
+ * keeps its results until the next - use SharedValidator to validate from
+ * several threads at once
  * @author Geoff Williams
  */
 public class Validator {
     public static final String JAXP_SCHEMA_LANGUAGE = "http://java.sun.com/xml/jaxp/properties/schemaLanguage";
     public static final String W3C_XML_SCHEMA = "http://www.w3.org/2001/XMLSchema";
+    /**
+     * Xerces keeps every error of an element and its descendants for the
+     * post schema validation infoset, which on the root element means every
+     * error in the document.  Nothing here reads it
+     */
+    static final String AUGMENT_PSVI = "http://apache.org/xml/features/validation/schema/augment-psvi";
     private ErrorReport errorReport;
     private Logger logger = LoggerFactory.getLogger(this.getClass());
     private String exceptionMessage;
+    private SchemaCache schemaCache = SchemaCache.getDefault();
+    private ValidatorPool validatorPool = ValidatorPool.getDefault();
+    private boolean streaming = true;
+    private boolean wellFormedOnly = false;
+    private boolean externalEntities = true;
+    private boolean downloadFirst = false;
+    private DownloadCache downloadCache;
+    private SchemaResolver schemaResolver;
+    private TimingStats timingStats;
+    private Timings timings;
+    private ValidationResult result;
+    private int maxErrors = 0;
+    private boolean failFast = false;
+    private ReportWriter reportWriter;
+    private ProgressListener progressListener;
+    private boolean lineIndexed = false;
+    private LineIndex lineIndex;
+    private ValidationIndex validationIndex;
+    private boolean force = false;
+    /**
+     * True while validating a document whose result goes in the index, so
+     * its findings are kept for replaying on the next run
+     */
+    private boolean indexing = false;
+    private List<String> schemaLocations;
+    private String splitElement;
+    /**
+     * True while the document being validated is an archive of documents
+     */
+    private boolean archive = false;
+    private int documentThreads = Runtime.getRuntime().availableProcessors();
 
+    public Validator() {
+    }
+
+    /**
+     * Create a validator with the same settings as another one but none of
+     * its results, eg for each worker of a batch
+     * @param settings validator to copy settings from
+     */
+    public Validator(Validator settings) {
+        schemaCache = settings.schemaCache;
+        validatorPool = settings.validatorPool;
+        streaming = settings.streaming;
+        wellFormedOnly = settings.wellFormedOnly;
+        externalEntities = settings.externalEntities;
+        downloadFirst = settings.downloadFirst;
+        downloadCache = settings.downloadCache;
+        schemaResolver = settings.schemaResolver;
+        timingStats = settings.timingStats;
+        maxErrors = settings.maxErrors;
+        failFast = settings.failFast;
+        reportWriter = settings.reportWriter;
+        validationIndex = settings.validationIndex;
+        force = settings.force;
+        splitElement = settings.splitElement;
+        documentThreads = settings.documentThreads;
+        lineIndexed = settings.lineIndexed;
+    }
+
+    public SchemaCache getSchemaCache() {
+        return schemaCache;
+    }
+
+    public void setSchemaCache(SchemaCache schemaCache) {
+        this.schemaCache = schemaCache;
+    }
+
+    public ValidatorPool getValidatorPool() {
+        return validatorPool;
+    }
+
+    /**
+     * @param validatorPool pool to borrow parsers from.  Defaults to one
+     * shared by every Validator
+     */
+    public void setValidatorPool(ValidatorPool validatorPool) {
+        this.validatorPool = validatorPool;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Choose between streaming validation (the default), where memory use is
+     * bounded regardless of document size, and building a full DOM
+     * @param streaming false to parse into a DOM as older releases did
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public boolean isWellFormedOnly() {
+        return wellFormedOnly;
+    }
+
+    /**
+     * @param wellFormedOnly true to only check documents are well-formed,
+     * with a non-validating parser that loads no schemas, external DTDs or
+     * external entities.  Documents are not looked up in or added to the
+     * validation index, and are never split
+     */
+    public void setWellFormedOnly(boolean wellFormedOnly) {
+        this.wellFormedOnly = wellFormedOnly;
+    }
+
+    public boolean isExternalEntities() {
+        return externalEntities;
+    }
+
+    /**
+     * @param externalEntities false to refuse to load external DTDs and
+     * entities, eg for documents from a client that should not be able to
+     * read the files they point to.  Schemas are still loaded
+     */
+    public void setExternalEntities(boolean externalEntities) {
+        this.externalEntities = externalEntities;
+    }
+
+    public boolean isDownloadFirst() {
+        return downloadFirst;
+    }
+
+    /**
+     * Choose between validating URLs straight from the network stream (the
+     * default) and downloading them to a temporary file first
+     * @param downloadFirst true to download to a temporary file as older
+     * releases did
+     */
+    public void setDownloadFirst(boolean downloadFirst) {
+        this.downloadFirst = downloadFirst;
+    }
+
+    public DownloadCache getDownloadCache() {
+        return downloadCache;
+    }
+
+    /**
+     * @param downloadCache cache to fetch URLs through, or null (the default)
+     * to download them in full every time
+     */
+    public void setDownloadCache(DownloadCache downloadCache) {
+        this.downloadCache = downloadCache;
+    }
+
+    public SchemaResolver getSchemaResolver() {
+        return schemaResolver;
+    }
+
+    /**
+     * @param schemaResolver resolver for schemas and external entities (XML
+     * catalog, persistent cache, offline mode), or null (the default) to let
+     * the parser fetch them itself
+     */
+    public void setSchemaResolver(SchemaResolver schemaResolver) {
+        this.schemaResolver = schemaResolver;
+    }
+
+    public TimingStats getTimingStats() {
+        return timingStats;
+    }
+
+    /**
+     * @param timingStats where to record the timings of each document
+     * validated, or null (the default) not to collect them
+     */
+    public void setTimingStats(TimingStats timingStats) {
+        this.timingStats = timingStats;
+    }
     
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+
+    /**
+     * @param maxErrors stop parsing after this many errors and keep at most
+     * this many messages of each kind, or 0 (the default) for no limit
+     */
+    public void setMaxErrors(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    /**
+     * @param failFast true to stop parsing at the first error
+     */
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    public ReportWriter getReportWriter() {
+        return reportWriter;
+    }
+
+    /**
+     * @param reportWriter writer to stream findings and results to, or null
+     * (the default) for the log only
+     */
+    public void setReportWriter(ReportWriter reportWriter) {
+        this.reportWriter = reportWriter;
+    }
+
+    public ProgressListener getProgressListener() {
+        return progressListener;
+    }
+
+    /**
+     * @param progressListener listener to tell how much of each document has
+     * been read, or null (the default).  Unlike the other settings it is not
+     * copied to validators created from this one
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public boolean isLineIndexed() {
+        return lineIndexed;
+    }
+
+    /**
+     * @param lineIndexed true to build a LineIndex of each local, plain
+     * (not compressed or archived) file as it is validated, so the context
+     * of its errors can be shown quickly afterwards.  See DocumentContext
+     */
+    public void setLineIndexed(boolean lineIndexed) {
+        this.lineIndexed = lineIndexed;
+    }
+
+    public ValidationIndex getValidationIndex() {
+        return validationIndex;
+    }
+
+    /**
+     * @param validationIndex index of previous results, used to skip local
+     * files that have not changed and updated with new results, or null (the
+     * default) to validate everything
+     */
+    public void setValidationIndex(ValidationIndex validationIndex) {
+        this.validationIndex = validationIndex;
+    }
+
+    public boolean isForce() {
+        return force;
+    }
+
+    /**
+     * @param force true to validate files again even if the index says they
+     * have not changed.  The index is still updated
+     */
+    public void setForce(boolean force) {
+        this.force = force;
+    }
+
+    public String getSplitElement() {
+        return splitElement;
+    }
+
+    /**
+     * @param splitElement name of a repeated element (local name or
+     * {namespace}name) to cut documents at so the pieces can be validated in
+     * parallel, or null (the default) to validate documents whole.  See
+     * FragmentValidator
+     */
+    public void setSplitElement(String splitElement) {
+        this.splitElement = splitElement;
+    }
+
+    public int getDocumentThreads() {
+        return documentThreads;
+    }
+
+    /**
+     * @param documentThreads number of threads to validate the parts of one
+     * document on - fragments of a split document or the files in an
+     * archive.  Defaults to the number of processors
+     */
+    public void setDocumentThreads(int documentThreads) {
+        this.documentThreads = documentThreads;
+    }
+
     public int validate(String uri) {
         int status;
+        start(uri);
         try {
-            String filename;
-
-            if (uri.contains("://")) {
-                // file is a URL - download to temporary file...
-                FileDownloader fileDownloader = new FileDownloader();
-                filename = fileDownloader.downloadFile(uri);   
+            if (uri.contains("://") && ! downloadFirst) {
+                // file is a URL - validate the bytes as they arrive
+                status = processUrl(uri);
             } else {
-                logger.debug("processing local file...");
-                filename = uri;
+                String filename;
+                String systemId;
+                if (uri.contains("://")) {
+                    // file is a URL - download to temporary file...
+                    long started = System.nanoTime();
+                    FileDownloader fileDownloader = new FileDownloader(downloadCache);
+                    filename = fileDownloader.downloadFile(uri);   
+                    timings.addDownload(System.nanoTime() - started);
+                    // relative schema locations are relative to the URL
+                    systemId = uri;
+                } else {
+                    logger.debug("processing local file...");
+                    filename = uri;
+                    systemId = new File(filename).toURI().toString();
+                }
+                if (validationIndex != null && ! wellFormedOnly && filename.equals(uri)) {
+                    status = processIndexed(new File(filename), systemId);
+                } else {
+                    status = process(filename, systemId);
+                }
             }
-            status = process(filename);
         } catch (ParserConfigurationException ex) {
-            status = App.STATUS_EXCEPTION;
-            exceptionMessage = "Parser Configuration error: " + ex.getMessage();
-            logger.error(exceptionMessage);
+            status = failed("Parser Configuration error: ", ex);
+        } catch (SAXException ex) {
+            status = failed("SAX error: ", ex);
+        } catch (IOException ex) {
+            status = failed("IO error: ", ex);
+        }
+        finished(status);
+        return status;
+    }
+
+    /**
+     * Validate a document supplied as a stream, eg the body of a request
+     * @param is document content.  Not closed
+     * @param systemId URI of the document, used to resolve relative schema
+     * locations and reported in error messages
+     * @return App.STATUS_* result
+     */
+    public int validate(InputStream is, String systemId) {
+        return validate(is, systemId, systemId);
+    }
+
+    /**
+     * Validate a document supplied as a stream under a name of its own, eg a
+     * file inside an archive
+     * @param name name of the document for the log and reports
+     */
+    int validate(InputStream is, String systemId, String name) {
+        int status;
+        start(name);
+        try {
+            logger.info("Starting validating on: {}", name);
+            status = process(new BufferedInputStream(track(is, -1)), systemId, name);
+        } catch (ParserConfigurationException ex) {
+            status = failed("Parser Configuration error: ", ex);
         } catch (SAXException ex) {
-            status = App.STATUS_EXCEPTION;
-            exceptionMessage = "SAX error: " + ex.getMessage();
-            logger.error(exceptionMessage);
+            status = failed("SAX error: ", ex);
         } catch (IOException ex) {
-            status = App.STATUS_EXCEPTION;
-            exceptionMessage = "IO error: " + ex.getMessage();
-            logger.error(exceptionMessage);
+            status = failed("IO error: ", ex);
         }
+        finished(status);
+        return status;
+    }
+
+    /**
+     * Record that a document could not be validated because fetching it
+     * failed before it got here, eg an asynchronous download
+     * @param uri document that could not be fetched
+     * @param ex reason
+     * @return App.STATUS_EXCEPTION
+     */
+    int downloadFailed(String uri, IOException ex) {
+        start(uri);
+        int status = failed("IO error: ", ex);
+        finished(status);
         return status;
     }
+
+    private void start(String uri) {
+        timings = new Timings(uri);
+        errorReport = null;
+        exceptionMessage = null;
+        result = null;
+        lineIndex = null;
+        archive = false;
+    }
+
+    private void finished(int status) {
+        timings.finish(status);
+        result = new ValidationResult(timings.getUri(), status, errorReport, exceptionMessage, lineIndex);
+        if (archive) {
+            // each file in it has been reported already
+            return;
+        }
+        if (timingStats != null) {
+            logger.info("Timings for {}: {}", timings.getUri(), timings);
+            timingStats.add(timings);
+        }
+        if (reportWriter != null) {
+            try {
+                reportWriter.endDocument(timings.getUri(), status, errorReport, exceptionMessage);
+            } catch (IOException ex) {
+                logger.error("Unable to write report: {}", ex.getMessage());
+            }
+        }
+    }
+
+    private int failed(String prefix, Exception ex) {
+        exceptionMessage = prefix + ex.getMessage();
+        logger.error(exceptionMessage);
+        return App.STATUS_EXCEPTION;
+    }
     
-    private int process(String filename) throws ParserConfigurationException, SAXException, IOException {
+    private int process(String filename, String systemId) throws ParserConfigurationException, SAXException, IOException {
+        logger.info("Starting validating on: {}", filename);
+        if (lineIndexed) {
+            lineIndex = new LineIndex();
+        }
+        BufferedInputStream is = new BufferedInputStream(track(new FileInputStream(filename), 
+                new File(filename).length()));
+        try {
+            return process(is, systemId, filename);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Wrap the raw document stream to count the bytes read, tell the progress
+     * listener about them, add them to the line index if there is one, and
+     * stop if the validating thread is interrupted
+     * @param totalBytes size of the document, or -1 if not known
+     */
+    private InputStream track(InputStream is, final long totalBytes) {
+        return new FilterInputStream(timings.count(is)) {
+            private long bytesRead = 0;
+
+            private int counted(int count) throws IOException {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("validation cancelled");
+                }
+                if (count > 0) {
+                    bytesRead += count;
+                    if (progressListener != null) {
+                        progressListener.progress(bytesRead, totalBytes);
+                    }
+                }
+                return count;
+            }
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1 && lineIndex != null) {
+                    lineIndex.update(b);
+                }
+                counted(b == -1 ? -1 : 1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0 && lineIndex != null) {
+                    lineIndex.update(b, off, read);
+                }
+                return counted(read);
+            }
+        };
+    }
+
+    /**
+     * Reuse the indexed result for a local file if neither it nor its schemas
+     * have changed, otherwise validate it and index the result.  Documents
+     * that could not be parsed or were stopped early are not indexed
+     */
+    private int processIndexed(File file, String systemId) 
+            throws ParserConfigurationException, SAXException, IOException {
+        String filename = file.getPath();
+        ValidationIndex.Entry previous = force ? null : validationIndex.lookup(file);
+        if (previous != null && previous.getSchemaFingerprint().equals(
+                schemaCache.getFingerprint(previous.getSchemaLocations(), schemaResolver))) {
+            int status = previous.getStatus();
+            // report writers still get every finding, and the counts
+            errorReport = new ErrorReport(maxErrors, failFast, reportWriter, timings.getUri());
+            try {
+                errorReport.replay(previous.getFindings());
+            } catch (ErrorLimitException ex) {
+                logger.debug(ex.getMessage());
+            }
+            if (previous.getDroppedFindings() > 0) {
+                logger.warn("{} more findings for {} were not kept by the index and are not reported again", 
+                        previous.getDroppedFindings(), filename);
+            }
+            if (status == App.STATUS_OK) {
+                logger.info("***** File {} is VALID XML! :-D ***** (unchanged since last run)", filename);
+            } else {
+                logger.error("**** File {} is INVALID XML :`( ***** (unchanged since last run)", filename);
+                logger.info("Error report:\n" + previous.getReport());
+            }
+            return status;
+        }
+
+        long size = file.length();
+        long lastModified = file.lastModified();
         logger.info("Starting validating on: {}", filename);
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        MessageDigest digest = ValidationIndex.newDigest();
+        if (lineIndexed) {
+            lineIndex = new LineIndex();
+        }
+        BufferedInputStream is = new BufferedInputStream(track(
+                new DigestInputStream(new FileInputStream(file), digest), size));
+        int status;
+        indexing = true;
+        try {
+            status = process(is, systemId, filename);
+        } finally {
+            indexing = false;
+            is.close();
+        }
+        if (errorReport != null && errorReport.getFindings() != null && ! errorReport.isStopped()) {
+            validationIndex.record(file, size, lastModified, ValidationIndex.toHex(digest.digest()), 
+                    schemaCache.getFingerprint(schemaLocations, schemaResolver), status, schemaLocations, 
+                    errorReport.isValid() ? "" : errorReport.toString(), errorReport.getFindings(), 
+                    errorReport.getDroppedFindings());
+        }
+        return status;
+    }
+
+    private int processUrl(String uri) throws ParserConfigurationException, SAXException, IOException {
+        logger.info("Starting validating on: {}", uri);
+        // the body is read while parsing, so only connecting counts as download
+        long started = System.nanoTime();
+        FileDownloader fileDownloader = new FileDownloader(downloadCache);
+        InputStream download = fileDownloader.openStream(uri);
+        BufferedInputStream is = new BufferedInputStream(track(download, fileDownloader.getContentLength()));
+        timings.addDownload(System.nanoTime() - started);
+        try {
+            return process(is, uri, uri);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Validate a document read from a stream
+     * @param is document content.  Must support mark/reset so the schema hints
+     * can be read before the real parse
+     * @param systemId URI of the document, used to resolve relative schema
+     * locations and reported in error messages
+     * @param name name to use for the document in log messages
+     */
+    private int process(BufferedInputStream is, String systemId, String name) 
+            throws ParserConfigurationException, SAXException, IOException {
+        BufferedInputStream raw = is;
+        is = Archive.decompress(is);
+        Archive files = Archive.open(is);
+        if (is != raw || files != null) {
+            // line offsets in the file would not match the document
+            lineIndex = null;
+        }
+        if (files != null) {
+            archive = true;
+            return new ArchiveValidator(this, documentThreads).validate(files, name, systemId);
+        }
+
+        if (wellFormedOnly) {
+            return checkWellFormed(is, systemId, name);
+        }
+
+        long started = System.nanoTime();
+        schemaLocations = SchemaHints.peek(is, systemId).getLocations();
+        Schema schema;
+        if (systemId != null && ! systemId.equals(Archive.extractedLocation(systemId))) {
+            // the parser would resolve hints against the archive, not where
+            // the file was before archiving, so stick to the root's hints
+            schema = schemaCache.getCompiledSchema(schemaLocations, schemaResolver);
+        } else {
+            schema = schemaCache.getSchema(schemaLocations, schemaResolver);
+        }
+        timings.addSchema(System.nanoTime() - started);
+        InputSource inputSource = new InputSource(is);
+        inputSource.setSystemId(systemId);
+        errorReport = new ErrorReport(maxErrors, failFast, reportWriter, timings.getUri());
+        if (indexing) {
+            errorReport.keepFindings();
+        }
+
+        started = System.nanoTime();
+        try {
+            if (splitElement != null && new FragmentValidator(schemaCache.getCompiledSchema(schemaLocations, 
+                    schemaResolver), splitElement, documentThreads, schemaResolver, validatorPool, externalEntities)
+                    .validate(is, systemId, errorReport)) {
+                logger.debug("validated {} in parts", name);
+            } else if (streaming) {
+                validateStream(schema, inputSource);
+            } else {
+                parseDocument(schema, inputSource);
+            }
+        } catch (ErrorLimitException ex) {
+            // the report has all we need - rest of the document is skipped
+            logger.debug(ex.getMessage());
+        } finally {
+            timings.addParse(System.nanoTime() - started);
+        }
+
+        if (errorReport.isValid()) {
+            logger.info("***** File {} is VALID XML! :-D *****", name);
+        } else {
+            logger.error("**** File {} is INVALID XML :`( *****", name);
+            logger.info("Error report:\n" + errorReport.toString());
+        }
+        return errorReport.exitStatus();
+    }
 
-        // validation and namespaces ON
-        dbf.setNamespaceAware(true);
-        dbf.setValidating(true);
-        dbf.setAttribute(JAXP_SCHEMA_LANGUAGE, W3C_XML_SCHEMA);
+    /**
+     * Parse a document without validating it, for a quick check that it is
+     * well-formed.  Findings go to the error report like validation errors
+     */
+    private int checkWellFormed(InputStream is, String systemId, String name) 
+            throws ParserConfigurationException, SAXException, IOException {
+        InputSource inputSource = new InputSource(is);
+        inputSource.setSystemId(systemId);
+        errorReport = new ErrorReport(maxErrors, failFast, reportWriter, timings.getUri());
 
-        DocumentBuilder db = dbf.newDocumentBuilder(); 
-        errorReport = new ErrorReport();
-        db.setErrorHandler(errorReport);
-        Document doc = db.parse(new File(filename));
+        long started = System.nanoTime();
+        SAXParser parser = validatorPool.borrowWellFormedParser();
+        try {
+            XMLReader reader = parser.getXMLReader();
+            reader.setErrorHandler(errorReport);
+            reader.parse(inputSource);
+        } catch (ErrorLimitException ex) {
+            logger.debug(ex.getMessage());
+        } finally {
+            validatorPool.release(parser);
+            timings.addParse(System.nanoTime() - started);
+        }
 
         if (errorReport.isValid()) {
-            logger.info("***** File {} is VALID XML! :-D *****", filename);
+            logger.info("***** File {} is WELL-FORMED XML :-) *****", name);
         } else {
-            logger.error("**** File {} is INVALID XML :`( *****", filename);
+            logger.error("**** File {} is NOT WELL-FORMED XML :`( *****", name);
             logger.info("Error report:\n" + errorReport.toString());
         }
         return errorReport.exitStatus();
     }
+
+    /**
+     * Validate the events coming straight off the parser so that memory use
+     * does not depend on the size of the document
+     */
+    private void validateStream(Schema schema, InputSource inputSource) throws SAXException, IOException {
+        javax.xml.validation.Validator validator = validatorPool.borrowValidator(schema, externalEntities);
+        try {
+            validator.setErrorHandler(errorReport);
+            if (schemaResolver != null) {
+                validator.setResourceResolver(schemaResolver);
+            }
+            StreamSource source = new StreamSource(inputSource.getByteStream(), inputSource.getSystemId());
+            validator.validate(source);
+        } finally {
+            validatorPool.release(schema, validator);
+        }
+    }
+
+    /**
+     * Validate while building a DOM of the whole document.  Kept for parity
+     * with older releases - the tree is thrown away
+     */
+    private void parseDocument(Schema schema, InputSource inputSource) 
+            throws ParserConfigurationException, SAXException, IOException {
+        // namespaces ON, validation against the (cached) schema
+        DocumentBuilder db = validatorPool.borrowDocumentBuilder(schema);
+        try {
+            db.setErrorHandler(errorReport);
+            if (! externalEntities) {
+                // the builder's factory holds its access settings, so refuse
+                // the entities here instead
+                db.setEntityResolver(new EntityResolver() {
+                    public InputSource resolveEntity(String publicId, String systemId) throws SAXException {
+                        throw new SAXException("External entity " + systemId + " is not allowed");
+                    }
+                });
+            } else if (schemaResolver != null) {
+                db.setEntityResolver(schemaResolver);
+            }
+            db.parse(inputSource);
+        } finally {
+            validatorPool.release(schema, db);
+        }
+    }
         
     public ErrorReport getValidationErrorHandler() {
         return errorReport;
@@ -101,5 +750,19 @@ public class Validator {
         return exceptionMessage;
     }
 
+    /**
+     * @return result of the last validation, or null if none has finished
+     */
+    public ValidationResult getResult() {
+        return result;
+    }
+
+    /**
+     * @return time spent in each phase of the last validation
+     */
+    public Timings getTimings() {
+        return timings;
+    }
+
     
 }
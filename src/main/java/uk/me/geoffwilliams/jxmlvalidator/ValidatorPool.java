@@ -0,0 +1,246 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.validation.Schema;
+import org.xml.sax.SAXException;
+
+/**
+ * Idle parsers for each compiled schema, so a validation borrows one that is
+ * already set up instead of creating a factory and parser every time.  The
+ * pool is shared by every thread; each parser is only ever used by the
+ * thread that borrowed it.
+ * <p>
+ * Schemas are held by identity, the least recently used ones dropping out
+ * along with their parsers once there are more than maxSchemas, and at most
+ * maxIdle parsers of each kind are kept per schema.  Non-validating parsers
+ * for well-formedness checks are kept apart from the schemas.
+ * <p>
+ * javax.xml.validation.Validator is deliberately not reset() on release:
+ * the JDK's implementation loses its security settings and throws a
+ * NullPointerException on the next validate().  It resets its own parsing
+ * state at the start of every validate(), so only the handlers set by the
+ * borrower are cleared.  DocumentBuilder is reset() as normal
+ * @author Geoff Williams
+ */
+public class ValidatorPool {
+    public static final int DEFAULT_MAX_IDLE = 2 * Runtime.getRuntime().availableProcessors();
+
+    private static final String LOAD_EXTERNAL_DTD = "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+    private static final String EXTERNAL_GENERAL_ENTITIES = "http://xml.org/sax/features/external-general-entities";
+    private static final String EXTERNAL_PARAMETER_ENTITIES = 
+            "http://xml.org/sax/features/external-parameter-entities";
+
+    private static final ValidatorPool defaultPool = new ValidatorPool(SchemaCache.DEFAULT_MAX_ENTRIES, 
+            DEFAULT_MAX_IDLE);
+
+    private final Map<Schema, Idle> pools;
+    private final Deque<SAXParser> wellFormedParsers = new ArrayDeque<SAXParser>();
+    private final int maxIdle;
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    /**
+     * Parsers for one schema that nobody is using
+     */
+    private static class Idle {
+        private final Deque<javax.xml.validation.Validator> validators = 
+                new ArrayDeque<javax.xml.validation.Validator>();
+        private final Deque<DocumentBuilder> documentBuilders = new ArrayDeque<DocumentBuilder>();
+    }
+
+    /**
+     * @param maxSchemas number of schemas to keep parsers for
+     * @param maxIdle number of idle parsers of each kind to keep per schema
+     */
+    public ValidatorPool(final int maxSchemas, int maxIdle) {
+        this.maxIdle = maxIdle;
+        pools = new LinkedHashMap<Schema, Idle>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Schema, Idle> eldest) {
+                return size() > maxSchemas;
+            }
+        };
+    }
+
+    /**
+     * Pool shared by all Validator instances that were not given their own
+     */
+    public static ValidatorPool getDefault() {
+        return defaultPool;
+    }
+
+    private Idle idle(Schema schema) {
+        Idle idle = pools.get(schema);
+        if (idle == null) {
+            idle = new Idle();
+            pools.put(schema, idle);
+        }
+        return idle;
+    }
+
+    /**
+     * Borrow a streaming validator for a schema.  Hand it back with
+     * release() when done, whether or not validation succeeded
+     * @param schema compiled schema
+     * @return validator with PSVI augmentation off and no handlers set
+     */
+    public javax.xml.validation.Validator borrowValidator(Schema schema) throws SAXException {
+        return borrowValidator(schema, true);
+    }
+
+    /**
+     * Borrow a streaming validator for a schema.  Hand it back with
+     * release() when done, whether or not validation succeeded
+     * @param schema compiled schema
+     * @param externalEntities false for a validator that refuses to load
+     * external DTDs and entities
+     * @return validator with PSVI augmentation off and no handlers set
+     */
+    public javax.xml.validation.Validator borrowValidator(Schema schema, boolean externalEntities) 
+            throws SAXException {
+        javax.xml.validation.Validator validator;
+        synchronized (pools) {
+            validator = idle(schema).validators.poll();
+        }
+        if (validator == null) {
+            created.incrementAndGet();
+            validator = schema.newValidator();
+            validator.setFeature(Validator.AUGMENT_PSVI, false);
+        } else {
+            reused.incrementAndGet();
+        }
+        // set every time, as the last borrower may have wanted otherwise
+        validator.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, externalEntities ? "all" : "");
+        return validator;
+    }
+
+    public void release(Schema schema, javax.xml.validation.Validator validator) {
+        validator.setErrorHandler(null);
+        validator.setResourceResolver(null);
+        synchronized (pools) {
+            Deque<javax.xml.validation.Validator> validators = idle(schema).validators;
+            if (validators.size() < maxIdle) {
+                validators.push(validator);
+            }
+        }
+    }
+
+    /**
+     * Borrow a namespace aware DocumentBuilder that validates against a
+     * schema.  Hand it back with release() when done
+     * @param schema compiled schema
+     * @return document builder with no handlers set
+     */
+    public DocumentBuilder borrowDocumentBuilder(Schema schema) throws ParserConfigurationException {
+        DocumentBuilder documentBuilder;
+        synchronized (pools) {
+            documentBuilder = idle(schema).documentBuilders.poll();
+        }
+        if (documentBuilder == null) {
+            created.incrementAndGet();
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            dbf.setNamespaceAware(true);
+            dbf.setSchema(schema);
+            documentBuilder = dbf.newDocumentBuilder();
+        } else {
+            reused.incrementAndGet();
+        }
+        return documentBuilder;
+    }
+
+    public void release(Schema schema, DocumentBuilder documentBuilder) {
+        documentBuilder.reset();
+        synchronized (pools) {
+            Deque<DocumentBuilder> documentBuilders = idle(schema).documentBuilders;
+            if (documentBuilders.size() < maxIdle) {
+                documentBuilders.push(documentBuilder);
+            }
+        }
+    }
+
+    /**
+     * Borrow a namespace aware parser that checks well-formedness only: it
+     * does not validate, load external DTDs or expand external entities.
+     * Hand it back with release() when done
+     * @return parser with no handlers set
+     */
+    public SAXParser borrowWellFormedParser() throws ParserConfigurationException, SAXException {
+        SAXParser parser;
+        synchronized (wellFormedParsers) {
+            parser = wellFormedParsers.poll();
+        }
+        if (parser == null) {
+            created.incrementAndGet();
+            SAXParserFactory spf = SAXParserFactory.newInstance();
+            spf.setNamespaceAware(true);
+            spf.setValidating(false);
+            spf.setFeature(LOAD_EXTERNAL_DTD, false);
+            spf.setFeature(EXTERNAL_GENERAL_ENTITIES, false);
+            spf.setFeature(EXTERNAL_PARAMETER_ENTITIES, false);
+            parser = spf.newSAXParser();
+        } else {
+            reused.incrementAndGet();
+        }
+        return parser;
+    }
+
+    public void release(SAXParser parser) {
+        parser.reset();
+        synchronized (wellFormedParsers) {
+            if (wellFormedParsers.size() < maxIdle) {
+                wellFormedParsers.push(parser);
+            }
+        }
+    }
+
+    /**
+     * @return number of parsers created because none were idle
+     */
+    public long getCreated() {
+        return created.get();
+    }
+
+    /**
+     * @return number of times an idle parser was handed out again
+     */
+    public long getReused() {
+        return reused.get();
+    }
+
+    public void clear() {
+        synchronized (pools) {
+            pools.clear();
+        }
+        synchronized (wellFormedParsers) {
+            wellFormedParsers.clear();
+        }
+    }
+}
@@ -19,10 +19,23 @@
 package uk.me.geoffwilliams.jxmlvalidator;
 
 import java.awt.Color;
+import java.awt.Font;
+import java.awt.Point;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import javax.swing.DefaultListModel;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
 import javax.swing.SwingWorker;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
@@ -33,7 +46,22 @@ import org.slf4j.Logger;
  */
 public class ValidatorUI extends javax.swing.JPanel {
 
+    /**
+     * Findings beyond this are counted but not shown - a JTextArea gets
+     * very slow with hundreds of thousands of lines in it
+     */
+    private static final int MAX_DISPLAYED_FINDINGS = 10000;
+
+    /**
+     * Position of a finding in the document itself, as written to the
+     * results by ValidationWorker.finding()
+     */
+    private static final Pattern FINDING_POSITION = Pattern.compile("\\w+ at line (\\d+)(?:, column (\\d+))?: ");
+    private static final int CONTEXT_LINES = 5;
+
     private History history = new History();
+    private ValidationWorker worker;
+    private ValidationResult lastResult;
     private Logger logger = LoggerFactory.getLogger(this.getClass());
 
     /**
@@ -42,6 +70,55 @@ public class ValidatorUI extends javax.swing.JPanel {
     public ValidatorUI() {
         initComponents();
         updateHistory();
+        resultBox.setToolTipText("Double-click a finding to see where it is in the file");
+        resultBox.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent evt) {
+                if (evt.getClickCount() == 2) {
+                    showFindingContext(positionAt(evt.getPoint()));
+                }
+            }
+        });
+    }
+
+    /**
+     * @return position in the results text under a point, or -1
+     */
+    @SuppressWarnings("deprecation")
+    private int positionAt(Point point) {
+        // viewToModel2() replaces it from Java 9, but this still runs on Java 8
+        return resultBox.viewToModel(point);
+    }
+
+    /**
+     * Show the lines of the document around the finding at a position in
+     * the results, using the line index built while validating it
+     */
+    private void showFindingContext(int position) {
+        if (lastResult == null || lastResult.getLineIndex() == null || position < 0) {
+            return;
+        }
+        String text = resultBox.getText();
+        int start = text.lastIndexOf('\n', Math.max(0, position - 1)) + 1;
+        int end = text.indexOf('\n', position);
+        Matcher matcher = FINDING_POSITION.matcher(text.substring(start, end == -1 ? text.length() : end));
+        if (! matcher.lookingAt()) {
+            return;
+        }
+        int line = Integer.parseInt(matcher.group(1));
+        int column = matcher.group(2) == null ? -1 : Integer.parseInt(matcher.group(2));
+        File file = new File(lastResult.getDocument());
+        try {
+            JTextArea context = new JTextArea(DocumentContext.around(file, lastResult.getLineIndex(), line, 
+                    column, CONTEXT_LINES));
+            context.setEditable(false);
+            context.setFont(new Font(Font.MONOSPACED, Font.PLAIN, context.getFont().getSize()));
+            JOptionPane.showMessageDialog(this, new JScrollPane(context), file.getName() + " line " + line, 
+                    JOptionPane.PLAIN_MESSAGE);
+        } catch (IOException ex) {
+            logger.error("Unable to show line {} of {}: {}", new Object[] {line, file, ex.getMessage()});
+            statusLabel.setText(ex.getMessage());
+        }
     }
 
     /**
@@ -54,6 +131,7 @@ public class ValidatorUI extends javax.swing.JPanel {
     private void initComponents() {
 
         validateButton = new javax.swing.JButton();
+        cancelButton = new javax.swing.JButton();
         inputUriBox = new javax.swing.JTextField();
         jLabel1 = new javax.swing.JLabel();
         jLabel2 = new javax.swing.JLabel();
@@ -76,6 +154,14 @@ public class ValidatorUI extends javax.swing.JPanel {
             }
         });
 
+        cancelButton.setText("Cancel");
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                cancelButtonActionPerformed(evt);
+            }
+        });
+
         inputUriBox.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
                 inputUriBoxActionPerformed(evt);
@@ -132,9 +218,11 @@ public class ValidatorUI extends javax.swing.JPanel {
                     .addComponent(jSeparator1)
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(validateButton)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(cancelButton)
                         .addGap(35, 35, 35)
                         .addComponent(clearResultsButton)
-                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, 135, Short.MAX_VALUE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, 54, Short.MAX_VALUE)
                         .addComponent(progressBar, javax.swing.GroupLayout.PREFERRED_SIZE, 193, javax.swing.GroupLayout.PREFERRED_SIZE))
                     .addComponent(jScrollPane2)
                     .addComponent(jScrollPane1)
@@ -174,6 +262,7 @@ public class ValidatorUI extends javax.swing.JPanel {
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                         .addComponent(validateButton)
+                        .addComponent(cancelButton)
                         .addComponent(clearResultsButton))
                     .addComponent(progressBar, javax.swing.GroupLayout.PREFERRED_SIZE, 25, javax.swing.GroupLayout.PREFERRED_SIZE))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
@@ -191,11 +280,20 @@ public class ValidatorUI extends javax.swing.JPanel {
         inputUriBox.setText(uri);
     }
 
+    /**
+     * Wait for history saved in the background to reach the file, eg before
+     * the application exits
+     */
+    void flushHistory() {
+        history.flush();
+    }
+
     private void clearResultsButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_clearResultsButtonActionPerformed
         clearResultsBox();
     }//GEN-LAST:event_clearResultsButtonActionPerformed
 
     private void clearResultsBox() {
+        lastResult = null;
         resultBox.setBackground(Color.WHITE);
         resultBox.setText("");
         statusLabel.setText("");
@@ -210,18 +308,141 @@ public class ValidatorUI extends javax.swing.JPanel {
         historyList.setModel(listModel);
     }
 
-    private void displayValidationResult(ErrorReport errorReport) {
-        if (errorReport.isValid()) {
-            resultBox.setBackground(Color.GREEN);
-            resultBox.setText("***** VALID XML :D ***");
-            statusLabel.setText("valid XML!");
-        } else {
-            resultBox.setBackground(Color.ORANGE);
-            resultBox.setText("***** INVALID XML DETECTED! :`( *****\n\n\n" + errorReport.toString());
-            statusLabel.setText("invalid XML");
+    /**
+     * Validates one document off the event dispatch thread.  Findings are
+     * published as they are reported and appended to the results in
+     * batches, and progress follows the bytes of the document read.  All
+     * changes to the components happen on the event dispatch thread, in
+     * process() and done()
+     */
+    private class ValidationWorker extends SwingWorker<ValidationResult, String> 
+            implements ReportWriter, ProgressListener {
+        private final String uri;
+        /**
+         * Findings reported so far.  Only the first MAX_DISPLAYED_FINDINGS
+         * are published
+         */
+        private final AtomicInteger found = new AtomicInteger();
+        private int percent = -1;
+
+        ValidationWorker(String uri) {
+            this.uri = uri;
+        }
+
+        @Override
+        protected ValidationResult doInBackground() {
+            Validator validator = new Validator();
+            validator.setReportWriter(this);
+            validator.setProgressListener(this);
+            validator.setLineIndexed(true);
+            validator.validate(uri);
+            ValidationResult result = validator.getResult();
+            if (result.getStatus() != App.STATUS_EXCEPTION) {
+                history.save(uri);
+            }
+            return result;
+        }
+
+        public void finding(String document, Severity severity, String systemId, int line, int column, 
+                String message) {
+            int count = found.incrementAndGet();
+            if (count > MAX_DISPLAYED_FINDINGS) {
+                if (count == MAX_DISPLAYED_FINDINGS + 1) {
+                    publish(String.format("...only the first %,d findings are shown%n", MAX_DISPLAYED_FINDINGS));
+                }
+                return;
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append(severity.label());
+            if (line > 0) {
+                sb.append(" at line ").append(line);
+                if (column > 0) {
+                    sb.append(", column ").append(column);
+                }
+            }
+            if (systemId != null && ! systemId.endsWith(document.replace('\\', '/'))) {
+                // eg an error in a schema
+                sb.append(" of ").append(systemId);
+            }
+            sb.append(": ").append(message).append('\n');
+            publish(sb.toString());
+        }
+
+        public void endDocument(String document, int status, ErrorReport errorReport, String exceptionMessage) {
+        }
+
+        public void close() {
+        }
+
+        public void progress(long bytesRead, long totalBytes) {
+            if (totalBytes > 0) {
+                int now = (int) Math.min(100, bytesRead * 100 / totalBytes);
+                if (now != percent) {
+                    percent = now;
+                    setProgress(now);
+                }
+            }
+        }
+
+        /**
+         * Append a batch of findings in one go, unless this validation has
+         * been cancelled or replaced by another
+         */
+        @Override
+        protected void process(List<String> findings) {
+            if (isCancelled() || worker != this) {
+                return;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (String finding : findings) {
+                sb.append(finding);
+            }
+            resultBox.append(sb.toString());
+            statusLabel.setText(String.format("validating... %,d findings", found.get()));
+        }
+
+        @Override
+        protected void done() {
+            finishedValidating();
+            if (isCancelled()) {
+                statusLabel.setText("validation cancelled");
+                return;
+            }
+            ValidationResult result;
+            try {
+                result = get();
+            } catch (Exception ex) {
+                logger.error("Unexpected error validating {}: {}", uri, ex.toString());
+                statusLabel.setText(ex.toString());
+                return;
+            }
+            updateHistory();
+            lastResult = result;
+            if (result.getStatus() == App.STATUS_EXCEPTION) {
+                statusLabel.setText(result.getExceptionMessage());
+            } else if (result.isValid()) {
+                resultBox.setBackground(Color.GREEN);
+                resultBox.setText("***** VALID XML :D ***");
+                statusLabel.setText("valid XML!");
+            } else {
+                resultBox.setBackground(Color.ORANGE);
+                resultBox.insert(String.format("***** INVALID XML DETECTED! :`( *****%n%n" + 
+                        "%,d fatal errors, %,d errors, %,d warnings%n%n", result.getFatalCount(), 
+                        result.getErrorCount(), result.getWarningCount()), 0);
+                resultBox.setCaretPosition(0);
+                statusLabel.setText("invalid XML");
+            }
         }
     }
 
+    private void finishedValidating() {
+        worker = null;
+        progressBar.setIndeterminate(false);
+        progressBar.setValue(0);
+        validateButton.setEnabled(true);
+        cancelButton.setEnabled(false);
+    }
+
     private void validateButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_validateButtonActionPerformed
         clearResultsBox();
         final String uri = inputUriBox.getText();
@@ -230,32 +451,32 @@ public class ValidatorUI extends javax.swing.JPanel {
             JOptionPane.showMessageDialog(this, "Please enter a file or URL to validate or pick one from your history");
         } else {
             statusLabel.setText("validating...");
+            // indeterminate until we hear how big the document is
             progressBar.setIndeterminate(true);
-            SwingWorker swingWorker = new SwingWorker() {
-                @Override
-                protected Object doInBackground() throws Exception {
-
-                    Validator validator = new Validator();
-                    if (validator.validate(uri) == App.STATUS_EXCEPTION) {
-                        statusLabel.setText(validator.getExceptionMessage());
-                    } else {
-                        // validation didn't thow exception, save to history
-                        history.save(uri);
-                        updateHistory();
-
-                        // display the result of validation...
-                        ErrorReport errorReport = validator.getValidationErrorHandler();
-                        displayValidationResult(errorReport);
+            progressBar.setValue(0);
+            validateButton.setEnabled(false);
+            cancelButton.setEnabled(true);
+            worker = new ValidationWorker(uri);
+            worker.addPropertyChangeListener(new PropertyChangeListener() {
+                public void propertyChange(PropertyChangeEvent evt) {
+                    if ("progress".equals(evt.getPropertyName()) && evt.getSource() == worker) {
+                        progressBar.setIndeterminate(false);
+                        progressBar.setValue((Integer) evt.getNewValue());
                     }
-                    progressBar.setIndeterminate(false);
-                    return null;
                 }
-            };
-            swingWorker.execute();
+            });
+            worker.execute();
         }
 
     }//GEN-LAST:event_validateButtonActionPerformed
 
+    private void cancelButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_cancelButtonActionPerformed
+        if (worker != null) {
+            // interrupting the worker stops the validator at its next read
+            worker.cancel(true);
+        }
+    }//GEN-LAST:event_cancelButtonActionPerformed
+
     private void clearHistoryButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_clearHistoryButtonActionPerformed
         history.clear();
         updateHistory();
@@ -280,6 +501,7 @@ public class ValidatorUI extends javax.swing.JPanel {
         }
     }//GEN-LAST:event_historyListMouseClicked
     // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JButton cancelButton;
     private javax.swing.JButton clearHistoryButton;
     private javax.swing.JButton clearResultsButton;
     private javax.swing.JList historyList;
@@ -0,0 +1,260 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The subset of an OASIS XML Catalog needed to map remote schemas onto local
+ * copies: system, uri, public, rewriteSystem, rewriteURI, systemSuffix,
+ * uriSuffix and nextCatalog entries, with xml:base.  Relative targets are
+ * resolved against the catalog file.  As in the OASIS resolution order,
+ * catalog files are consulted one at a time - each file, then the catalogs
+ * its nextCatalog entries point to, then the next file given - and the first
+ * file with a matching entry decides
+ * @author Geoff Williams
+ */
+public class XmlCatalog {
+    private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+    private static final String LOAD_EXTERNAL_DTD = "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final List<Entries> catalogs = new ArrayList<Entries>();
+
+    /**
+     * Entries of one catalog file.  Where a file has more than one entry for
+     * the same identifier the first one counts
+     */
+    private static class Entries {
+        private final Map<String, String> system = new HashMap<String, String>();
+        private final Map<String, String> uri = new HashMap<String, String>();
+        private final Map<String, String> publicIds = new HashMap<String, String>();
+        private final List<String[]> rewriteSystem = new ArrayList<String[]>();
+        private final List<String[]> rewriteUri = new ArrayList<String[]>();
+        private final List<String[]> systemSuffix = new ArrayList<String[]>();
+        private final List<String[]> uriSuffix = new ArrayList<String[]>();
+        private final List<String> nextCatalogs = new ArrayList<String>();
+    }
+
+    /**
+     * Load one or more catalog files, following any nextCatalog entries
+     * @param files catalog files, earlier files take priority
+     */
+    public XmlCatalog(List<File> files) throws IOException, SAXException {
+        SAXParserFactory spf = SAXParserFactory.newInstance();
+        spf.setNamespaceAware(true);
+        try {
+            // catalogs name the OASIS DTD in their DOCTYPE - never fetch it
+            spf.setFeature(LOAD_EXTERNAL_DTD, false);
+            Set<String> loaded = new HashSet<String>();
+            for (File file : files) {
+                load(spf, file.getAbsoluteFile().toURI().toString(), loaded);
+            }
+        } catch (ParserConfigurationException ex) {
+            throw new SAXException(ex);
+        }
+    }
+
+    private void load(SAXParserFactory spf, String catalog, Set<String> loaded) 
+            throws IOException, SAXException, ParserConfigurationException {
+        if (loaded.add(catalog)) {
+            logger.debug("loading XML catalog {}", catalog);
+            Entries entries = new Entries();
+            spf.newSAXParser().parse(catalog, new CatalogHandler(catalog, entries));
+            catalogs.add(entries);
+            for (String next : entries.nextCatalogs) {
+                load(spf, next, loaded);
+            }
+        }
+    }
+
+    /**
+     * Reads the entries of one catalog file
+     */
+    private static class CatalogHandler extends DefaultHandler {
+        private final LinkedList<String> bases = new LinkedList<String>();
+        private final Entries entries;
+
+        CatalogHandler(String catalog, Entries entries) {
+            this.bases.push(catalog);
+            this.entries = entries;
+        }
+
+        @Override
+        public void startElement(String ns, String localName, String qName, Attributes atts) {
+            String base = bases.peek();
+            String xmlBase = atts.getValue(XML_NAMESPACE, "base");
+            if (xmlBase != null) {
+                base = SchemaHints.resolve(xmlBase, base);
+            }
+            bases.push(base);
+
+            if ("system".equals(localName)) {
+                first(entries.system, atts.getValue("systemId"), target(atts.getValue("uri"), base));
+            } else if ("uri".equals(localName)) {
+                first(entries.uri, atts.getValue("name"), target(atts.getValue("uri"), base));
+            } else if ("public".equals(localName)) {
+                first(entries.publicIds, atts.getValue("publicId"), target(atts.getValue("uri"), base));
+            } else if ("rewriteSystem".equals(localName)) {
+                entries.rewriteSystem.add(new String[] {atts.getValue("systemIdStartString"),
+                    target(atts.getValue("rewritePrefix"), base)});
+            } else if ("rewriteURI".equals(localName)) {
+                entries.rewriteUri.add(new String[] {atts.getValue("uriStartString"),
+                    target(atts.getValue("rewritePrefix"), base)});
+            } else if ("systemSuffix".equals(localName)) {
+                entries.systemSuffix.add(new String[] {atts.getValue("systemIdSuffix"), 
+                    target(atts.getValue("uri"), base)});
+            } else if ("uriSuffix".equals(localName)) {
+                entries.uriSuffix.add(new String[] {atts.getValue("uriSuffix"), target(atts.getValue("uri"), base)});
+            } else if ("nextCatalog".equals(localName)) {
+                String next = target(atts.getValue("catalog"), base);
+                if (next != null) {
+                    entries.nextCatalogs.add(next);
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String ns, String localName, String qName) {
+            bases.pop();
+        }
+
+        private void first(Map<String, String> map, String key, String value) {
+            if (key != null && value != null && ! map.containsKey(key)) {
+                map.put(key, value);
+            }
+        }
+
+        private String target(String value, String base) {
+            return value == null ? null : SchemaHints.resolve(value, base);
+        }
+    }
+
+    /**
+     * Map a system identifier (eg an xsi:schemaLocation or xs:import location)
+     * @return the local replacement or null if the catalog has no entry
+     */
+    public String resolveSystem(String systemId) {
+        String resolved = null;
+        for (int i = 0; i < catalogs.size() && resolved == null && systemId != null; i++) {
+            Entries entries = catalogs.get(i);
+            resolved = entries.system.get(systemId);
+            if (resolved == null) {
+                resolved = rewrite(systemId, entries.rewriteSystem);
+            }
+            if (resolved == null) {
+                resolved = suffix(systemId, entries.systemSuffix);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Map a URI reference, eg a namespace name
+     * @return the local replacement or null if the catalog has no entry
+     */
+    public String resolveUri(String name) {
+        String resolved = null;
+        for (int i = 0; i < catalogs.size() && resolved == null && name != null; i++) {
+            Entries entries = catalogs.get(i);
+            resolved = entries.uri.get(name);
+            if (resolved == null) {
+                resolved = rewrite(name, entries.rewriteUri);
+            }
+            if (resolved == null) {
+                resolved = suffix(name, entries.uriSuffix);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Map a public identifier
+     * @return the local replacement or null if the catalog has no entry
+     */
+    public String resolvePublic(String publicId) {
+        String resolved = null;
+        for (int i = 0; i < catalogs.size() && resolved == null && publicId != null; i++) {
+            resolved = catalogs.get(i).publicIds.get(publicId);
+        }
+        return resolved;
+    }
+
+    /**
+     * Look up a schema location, trying the system entries then the uri
+     * entries since schema authors use either
+     */
+    public String resolve(String location) {
+        String resolved = null;
+        if (location != null) {
+            resolved = resolveSystem(location);
+            if (resolved == null) {
+                resolved = resolveUri(location);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * The longest matching prefix wins
+     */
+    private String rewrite(String id, List<String[]> rules) {
+        String[] best = null;
+        if (id != null) {
+            for (String[] rule : rules) {
+                if (rule[0] != null && rule[1] != null && id.startsWith(rule[0]) &&
+                        (best == null || rule[0].length() > best[0].length())) {
+                    best = rule;
+                }
+            }
+        }
+        return best == null ? null : best[1] + id.substring(best[0].length());
+    }
+
+    /**
+     * The longest matching suffix wins
+     */
+    private String suffix(String id, List<String[]> rules) {
+        String[] best = null;
+        if (id != null) {
+            for (String[] rule : rules) {
+                if (rule[0] != null && id.endsWith(rule[0]) &&
+                        (best == null || rule[0].length() > best[0].length())) {
+                    best = rule;
+                }
+            }
+        }
+        return best == null ? null : best[1];
+    }
+}
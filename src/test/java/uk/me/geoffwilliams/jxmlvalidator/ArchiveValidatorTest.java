@@ -0,0 +1,184 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.io.FileUtils;
+import junit.framework.TestCase;
+
+/**
+ * Tests for validating compressed documents and the files in archives
+ */
+public class ArchiveValidatorTest extends TestCase {
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Files.createTempDirectory("archive-validator-test").toFile();
+        // documents refer to note.xsd beside them, so beside the archive
+        FileUtils.copyFile(TestResources.resourceFile("note.xsd"), new File(dir, "note.xsd"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    /**
+     * Collects the status of each document reported
+     */
+    private static class Results implements ReportWriter {
+        private final Map<String, Integer> statuses = new TreeMap<String, Integer>();
+
+        public void finding(String document, Severity severity, String systemId, int line, int column, 
+                String message) {
+        }
+
+        public synchronized void endDocument(String document, int status, ErrorReport errorReport, 
+                String exceptionMessage) {
+            statuses.put(document, status);
+        }
+
+        public void close() {
+        }
+    }
+
+    private byte[] resource(String name) throws Exception {
+        return FileUtils.readFileToByteArray(TestResources.resourceFile(name));
+    }
+
+    private byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream os = new GZIPOutputStream(bytes);
+        try {
+            os.write(content);
+        } finally {
+            os.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Minimal ustar writer - just enough for the reader to be tested against
+     */
+    private byte[] tar(String[] names, byte[][] contents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < names.length; i++) {
+            byte[] header = new byte[512];
+            byte[] name = names[i].getBytes("UTF-8");
+            System.arraycopy(name, 0, header, 0, name.length);
+            field(header, 100, 8, "0000644");
+            field(header, 108, 8, "0000000");
+            field(header, 116, 8, "0000000");
+            field(header, 124, 12, String.format("%011o", contents[i].length));
+            field(header, 136, 12, String.format("%011o", 0));
+            header[156] = '0';
+            field(header, 257, 6, "ustar");
+            field(header, 263, 2, "00");
+            for (int j = 148; j < 156; j++) {
+                header[j] = ' ';
+            }
+            int checksum = 0;
+            for (byte b : header) {
+                checksum += b & 0xff;
+            }
+            field(header, 148, 8, String.format("%06o", checksum));
+            bytes.write(header);
+            bytes.write(contents[i]);
+            bytes.write(new byte[(512 - contents[i].length % 512) % 512]);
+        }
+        bytes.write(new byte[1024]);
+        return bytes.toByteArray();
+    }
+
+    private void field(byte[] header, int offset, int length, String value) throws IOException {
+        byte[] bytes = value.getBytes("US-ASCII");
+        System.arraycopy(bytes, 0, header, offset, Math.min(bytes.length, length));
+    }
+
+    private File write(String name, byte[] content) throws IOException {
+        File file = new File(dir, name);
+        FileUtils.writeByteArrayToFile(file, content);
+        return file;
+    }
+
+    private Results validate(File file, int expectedStatus) {
+        Results results = new Results();
+        Validator validator = new Validator();
+        validator.setReportWriter(results);
+        validator.setDocumentThreads(2);
+        assertEquals(expectedStatus, validator.validate(file.getPath()));
+        return results;
+    }
+
+    public void testGzippedDocument() throws Exception {
+        File file = write("invalid.xml.gz", gzip(resource("invalid.xml")));
+        Results results = validate(file, App.STATUS_ERRORS);
+
+        assertEquals(1, results.statuses.size());
+        assertEquals(App.STATUS_ERRORS, (int) results.statuses.get(file.getPath()));
+    }
+
+    public void testZipEntriesAreSeparateDocuments() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zos = new ZipOutputStream(bytes);
+        try {
+            for (String name : new String[] {"valid.xml", "invalid.xml", "note.xsd"}) {
+                zos.putNextEntry(new ZipEntry(name));
+                zos.write(resource(name));
+                zos.closeEntry();
+            }
+        } finally {
+            zos.close();
+        }
+        File file = write("bundle.zip", bytes.toByteArray());
+        Results results = validate(file, App.STATUS_ERRORS);
+
+        // the schema is not a document
+        assertEquals(2, results.statuses.size());
+        assertEquals(App.STATUS_OK, (int) results.statuses.get(file.getPath() + "!/valid.xml"));
+        assertEquals(App.STATUS_ERRORS, (int) results.statuses.get(file.getPath() + "!/invalid.xml"));
+    }
+
+    public void testTarGz() throws Exception {
+        byte[] tar = tar(new String[] {"malformed.xml", "valid.xml"}, 
+                new byte[][] {resource("malformed.xml"), resource("valid.xml")});
+        File file = write("bundle.tar.gz", gzip(tar));
+        Results results = validate(file, App.STATUS_EXCEPTION);
+
+        assertEquals(2, results.statuses.size());
+        assertEquals(App.STATUS_OK, (int) results.statuses.get(file.getPath() + "!/valid.xml"));
+        assertEquals(App.STATUS_EXCEPTION, (int) results.statuses.get(file.getPath() + "!/malformed.xml"));
+    }
+
+    public void testExtractedLocation() {
+        assertEquals("file:/data/2013/01.xml", Archive.extractedLocation("file:/data/feeds.zip!/2013/01.xml"));
+        assertEquals("file:/data/a/b.xml", Archive.extractedLocation("file:/data/x.zip!/a/y.tar!/b.xml"));
+        assertEquals("file:/data/01.xml", Archive.extractedLocation("file:/data/01.xml"));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import junit.framework.TestCase;
+
+/**
+ * Tests for background validation of files and URLs
+ */
+public class AsyncValidatorTest extends TestCase {
+    private HttpServer server;
+    private AsyncValidator validator;
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    @Override
+    protected void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                try {
+                    if (path.startsWith("/slow/")) {
+                        released.await();
+                        path = path.substring("/slow".length());
+                    }
+                    File file = new File(getClass().getResource(path).toURI());
+                    byte[] bytes = FileUtils.readFileToByteArray(file);
+                    exchange.sendResponseHeaders(200, bytes.length);
+                    OutputStream os = exchange.getResponseBody();
+                    os.write(bytes);
+                    os.close();
+                } catch (Exception ex) {
+                    exchange.sendResponseHeaders(404, -1);
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        released.countDown();
+        if (validator != null) {
+            validator.shutdown(10, TimeUnit.SECONDS);
+        }
+        server.stop(0);
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    public void testFilesAndUrls() throws Exception {
+        validator = new AsyncValidator(new Validator(), 2, 4);
+        List<CompletableFuture<ValidationResult>> futures = new ArrayList<CompletableFuture<ValidationResult>>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(validator.submit(TestResources.resource("valid.xml")));
+            futures.add(validator.submit(url("/invalid.xml")));
+        }
+        for (int i = 0; i < futures.size(); i += 2) {
+            assertTrue(futures.get(i).get(10, TimeUnit.SECONDS).isValid());
+            ValidationResult result = futures.get(i + 1).get(10, TimeUnit.SECONDS);
+            // relative schema location resolved against the URL
+            assertEquals(App.STATUS_ERRORS, result.getStatus());
+            assertEquals(url("/invalid.xml"), result.getDocument());
+        }
+    }
+
+    public void testFailedDownload() throws Exception {
+        validator = new AsyncValidator(new Validator(), 1, 1);
+        ValidationResult result = validator.submit(url("/missing.xml")).get(10, TimeUnit.SECONDS);
+
+        assertEquals(App.STATUS_EXCEPTION, result.getStatus());
+        assertTrue(result.getExceptionMessage().startsWith("IO error: "));
+    }
+
+    public void testSubmitBlocksWhenFull() throws Exception {
+        validator = new AsyncValidator(new Validator(), 1, 1);
+        CompletableFuture<ValidationResult> first = validator.submit(url("/slow/valid.xml"));
+        CompletableFuture<ValidationResult> second = validator.submit(url("/slow/valid.xml"));
+        final CompletableFuture<ValidationResult>[] third = new CompletableFuture[1];
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                third[0] = validator.submit(url("/valid.xml"));
+            }
+        };
+        producer.start();
+        producer.join(500);
+        assertTrue("submit should wait for a free slot", producer.isAlive());
+
+        released.countDown();
+        producer.join(10000);
+        assertFalse(producer.isAlive());
+        assertTrue(first.get(10, TimeUnit.SECONDS).isValid());
+        assertTrue(second.get(10, TimeUnit.SECONDS).isValid());
+        assertTrue(third[0].get(10, TimeUnit.SECONDS).isValid());
+    }
+
+    public void testSubmitAfterShutdown() throws Exception {
+        validator = new AsyncValidator(new Validator(), 1, 1);
+        validator.shutdown(10, TimeUnit.SECONDS);
+        // more than the one slot, so a slot kept by a rejected document
+        // would leave the next submit waiting for ever
+        for (String uri : new String[] {TestResources.resource("valid.xml"), url("/valid.xml"), 
+                TestResources.resource("valid.xml")}) {
+            try {
+                validator.submit(uri).get(10, TimeUnit.SECONDS);
+                fail("expected the document to be rejected");
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof RejectedExecutionException);
+            }
+        }
+    }
+}
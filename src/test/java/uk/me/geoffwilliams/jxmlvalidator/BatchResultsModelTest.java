@@ -0,0 +1,73 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.table.TableRowSorter;
+import junit.framework.TestCase;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Tests for the table model behind the GUI's batch results
+ */
+public class BatchResultsModelTest extends TestCase {
+
+    public void testRowFromReport() throws Exception {
+        ErrorReport errorReport = new ErrorReport();
+        errorReport.warning(new SAXParseException("a warning", null, "file:/a.xml", 2, 1));
+        errorReport.error(new SAXParseException("an error", null, "file:/a.xml", 3, 1));
+        errorReport.error(new SAXParseException("an error", null, "file:/a.xml", 4, 1));
+        BatchResultsModel model = new BatchResultsModel();
+        List<BatchResultsModel.Row> rows = new ArrayList<BatchResultsModel.Row>();
+        rows.add(new BatchResultsModel.Row("a.xml", App.STATUS_ERRORS, errorReport, null));
+        rows.add(new BatchResultsModel.Row("b.xml", App.STATUS_EXCEPTION, null, "IO error: gone"));
+        model.addRows(rows);
+
+        assertEquals(2, model.getRowCount());
+        assertEquals("errors", model.getValueAt(0, BatchResultsModel.COLUMN_STATUS));
+        assertEquals(2, model.getValueAt(0, BatchResultsModel.COLUMN_ERRORS));
+        assertEquals(1, model.getValueAt(0, BatchResultsModel.COLUMN_WARNINGS));
+        // errors come before warnings
+        assertTrue(((String) model.getValueAt(0, BatchResultsModel.COLUMN_MESSAGE)).contains("an error"));
+        assertEquals("failed", model.getValueAt(1, BatchResultsModel.COLUMN_STATUS));
+        assertEquals("IO error: gone", model.getValueAt(1, BatchResultsModel.COLUMN_MESSAGE));
+    }
+
+    public void testManyRowsSortAndFilter() {
+        BatchResultsModel model = new BatchResultsModel();
+        for (int batch = 0; batch < 200; batch++) {
+            List<BatchResultsModel.Row> rows = new ArrayList<BatchResultsModel.Row>();
+            for (int i = 0; i < 1000; i++) {
+                int n = batch * 1000 + i;
+                rows.add(new BatchResultsModel.Row("doc" + n + ".xml", 
+                        n % 10 == 0 ? App.STATUS_EXCEPTION : App.STATUS_OK, null, null));
+            }
+            model.addRows(rows);
+        }
+        TableRowSorter<BatchResultsModel> sorter = model.createSorter();
+        sorter.toggleSortOrder(BatchResultsModel.COLUMN_STATUS);
+
+        assertEquals(200000, model.getRowCount());
+        // "failed" sorts before "valid"
+        assertEquals("failed", model.getValueAt(sorter.convertRowIndexToModel(0), BatchResultsModel.COLUMN_STATUS));
+        assertEquals("valid", model.getValueAt(sorter.convertRowIndexToModel(199999), 
+                BatchResultsModel.COLUMN_STATUS));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import junit.framework.TestCase;
+
+/**
+ * Tests for validating many documents on a pool of workers
+ */
+public class BatchValidatorTest extends TestCase {
+
+    public void testWorstStatusAndSummary() throws Exception {
+        BatchValidator batchValidator = new BatchValidator(new Validator(), 2);
+        batchValidator.submit(TestResources.resource("valid.xml"));
+        batchValidator.submit(TestResources.resource("invalid.xml"));
+        batchValidator.submit(TestResources.resource("valid.xml"));
+        batchValidator.record(App.STATUS_WARNINGS);
+
+        assertEquals(App.STATUS_ERRORS, batchValidator.awaitCompletion());
+        assertEquals(3, batchValidator.getSubmitted());
+        assertEquals(4, batchValidator.getTotal());
+        assertEquals(2, batchValidator.getCount(App.STATUS_OK));
+        assertEquals(1, batchValidator.getCount(App.STATUS_ERRORS));
+        assertEquals("Validated 4 documents: 2 valid, 1 with warnings, 1 with errors, 0 fatal, 0 failed", 
+                batchValidator.summary());
+    }
+
+    public void testFailureIsWorstStatus() throws Exception {
+        BatchValidator batchValidator = new BatchValidator(new Validator(), 1);
+        batchValidator.submit(TestResources.resource("malformed.xml"));
+        batchValidator.submit("does-not-exist.xml");
+        assertEquals(App.STATUS_EXCEPTION, batchValidator.awaitCompletion());
+    }
+
+    public void testSubmitBlocksWhenWorkersAreBehind() throws Exception {
+        final CountDownLatch released = new CountDownLatch(1);
+        Validator settings = new Validator();
+        settings.setReportWriter(new ReportWriter() {
+            public void finding(String document, Severity severity, String systemId, int line, int column, 
+                    String message) {
+            }
+
+            public void endDocument(String document, int status, ErrorReport errorReport, 
+                    String exceptionMessage) throws IOException {
+                try {
+                    released.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            public void close() {
+            }
+        });
+        // one worker: one document being validated and four waiting
+        final BatchValidator batchValidator = new BatchValidator(settings, 1);
+        final String valid = TestResources.resource("valid.xml");
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 6; i++) {
+                        batchValidator.submit(valid);
+                    }
+                } catch (InterruptedException ex) {
+                    // test failed
+                }
+            }
+        };
+        producer.start();
+        producer.join(1000);
+        assertTrue("sixth submit should wait for a free slot", producer.isAlive());
+        assertEquals(5, batchValidator.getSubmitted());
+
+        released.countDown();
+        producer.join(10000);
+        assertFalse(producer.isAlive());
+        assertEquals(App.STATUS_OK, batchValidator.awaitCompletion());
+        assertEquals(6, batchValidator.getCount(App.STATUS_OK));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.commons.io.FileUtils;
+import junit.framework.TestCase;
+
+/**
+ * Tests for watch mode
+ */
+public class DirectoryWatcherTest extends TestCase {
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private File dir;
+    private Thread thread;
+    private DirectoryWatcher watcher;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Files.createTempDirectory("directory-watcher-test").toFile();
+        for (String name : new String[] {"note.xsd", "valid.xml"}) {
+            FileUtils.copyFile(TestResources.resourceFile(name), new File(dir, name));
+        }
+        watcher = new DirectoryWatcher(new Validator(), dir.toPath(), 2, 50);
+        thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    watcher.run();
+                } catch (Exception ex) {
+                    // interrupted by tearDown
+                }
+            }
+        };
+        thread.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        thread.interrupt();
+        thread.join();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private String awaitResult(Path file, String prefix) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        String result = watcher.getResult(file);
+        while ((result == null || ! result.startsWith(prefix)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            result = watcher.getResult(file);
+        }
+        return result;
+    }
+
+    public void testValidatesExistingThenChangedFiles() throws Exception {
+        Path valid = new File(dir, "valid.xml").toPath();
+        assertEquals("VALID", awaitResult(valid, "VALID"));
+
+        // break it, then add a new file in a new subdirectory
+        String content = FileUtils.readFileToString(valid.toFile(), "UTF-8");
+        FileUtils.writeStringToFile(valid.toFile(), content.replace("<to>Tove</to>", ""), "UTF-8");
+        File sub = new File(dir, "sub");
+        assertTrue(sub.mkdir());
+        File added = new File(sub, "added.xml");
+        FileUtils.writeStringToFile(added, content.replace("note.xsd", "../note.xsd"), "UTF-8");
+
+        assertTrue(awaitResult(valid, "INVALID").startsWith("INVALID"));
+        assertEquals("VALID", awaitResult(added.toPath(), "VALID"));
+    }
+}
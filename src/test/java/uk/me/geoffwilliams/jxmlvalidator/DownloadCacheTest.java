@@ -0,0 +1,132 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import junit.framework.TestCase;
+
+/**
+ * Tests for the conditional GET download cache, against an embedded server
+ */
+public class DownloadCacheTest extends TestCase {
+    private static final String ETAG = "\"v1\"";
+
+    private HttpServer server;
+    private File cacheDir;
+    private int requests;
+    private String body;
+
+    @Override
+    protected void setUp() throws Exception {
+        cacheDir = Files.createTempDirectory("download-cache-test").toFile();
+        body = "<doc>0123456789</doc>";
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requests++;
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    byte[] bytes = body.getBytes("UTF-8");
+                    exchange.sendResponseHeaders(200, bytes.length);
+                    OutputStream os = exchange.getResponseBody();
+                    os.write(bytes);
+                    os.close();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.stop(0);
+        FileUtils.deleteDirectory(cacheDir);
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    private String read(DownloadCache cache, String url) throws IOException {
+        InputStream is = cache.openStream(url);
+        try {
+            return IOUtils.toString(is, "UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+    public void testNotModifiedUsesCachedBody() throws Exception {
+        DownloadCache cache = new DownloadCache(cacheDir, DownloadCache.DEFAULT_MAX_BYTES);
+        assertEquals(body, read(cache, url("/doc.xml")));
+        assertEquals(body, read(cache, url("/doc.xml")));
+
+        assertEquals(2, requests);
+        assertEquals(1, cache.getHits());
+        assertEquals(body.length(), cache.getBytesSaved());
+    }
+
+    public void testEntriesSurviveRestart() throws Exception {
+        read(new DownloadCache(cacheDir, DownloadCache.DEFAULT_MAX_BYTES), url("/doc.xml"));
+        DownloadCache cache = new DownloadCache(cacheDir, DownloadCache.DEFAULT_MAX_BYTES);
+
+        assertEquals(body, read(cache, url("/doc.xml")));
+        assertEquals(1, cache.getHits());
+    }
+
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        DownloadCache cache = new DownloadCache(cacheDir, body.length() * 2);
+        read(cache, url("/a.xml"));
+        read(cache, url("/b.xml"));
+        read(cache, url("/c.xml"));
+
+        assertEquals(2, cache.size());
+        assertEquals(body.length() * 2, cache.getTotalBytes());
+
+        // a.xml was evicted so has to be downloaded again
+        read(cache, url("/a.xml"));
+        assertEquals(0, cache.getHits());
+    }
+
+    public void testEvictedWhileRevalidatingDownloadsAgain() throws Exception {
+        DownloadCache cache = new DownloadCache(cacheDir, DownloadCache.DEFAULT_MAX_BYTES);
+        read(cache, url("/doc.xml"));
+        // as if another thread evicted the entry after the 304 came back
+        new File(cacheDir, DownloadCache.key(url("/doc.xml")) + ".body").delete();
+
+        assertEquals(body, read(cache, url("/doc.xml")));
+        assertEquals(3, requests);
+        assertEquals(0, cache.getHits());
+        assertEquals(body, read(cache, url("/doc.xml")));
+        assertEquals(1, cache.getHits());
+    }
+}
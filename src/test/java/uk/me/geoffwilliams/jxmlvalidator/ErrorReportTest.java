@@ -0,0 +1,118 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.util.List;
+import org.xml.sax.SAXParseException;
+import junit.framework.TestCase;
+
+/**
+ * Tests for the error limits of ErrorReport
+ */
+public class ErrorReportTest extends TestCase {
+
+    public void testMaxErrorsStopsParsing() throws Exception {
+        Validator validator = new Validator();
+        validator.setMaxErrors(2);
+
+        assertEquals(App.STATUS_ERRORS, validator.validate(TestResources.resource("invalid.xml")));
+        ErrorReport errorReport = validator.getValidationErrorHandler();
+        assertEquals(2, errorReport.getErrorCount());
+        assertTrue(errorReport.isStopped());
+        assertEquals(5, errorReport.getStoppedAtLine());
+    }
+
+    public void testStoppedWithoutLineNumber() throws Exception {
+        ErrorReport errorReport = new ErrorReport(1, false);
+        try {
+            errorReport.error(new SAXParseException("no position", null, null, -1, -1));
+            fail("limit should stop the parser");
+        } catch (ErrorLimitException ex) {
+            // expected
+        }
+        assertTrue(errorReport.isStopped());
+        assertEquals(-1, errorReport.getStoppedAtLine());
+        assertTrue(errorReport.toString().contains("Validation stopped - the rest"));
+    }
+
+    public void testFailFastStopsAtFirstError() throws Exception {
+        Validator validator = new Validator();
+        validator.setFailFast(true);
+
+        assertEquals(App.STATUS_ERRORS, validator.validate(TestResources.resource("invalid.xml")));
+        assertEquals(1, validator.getValidationErrorHandler().getError().size());
+    }
+
+    public void testUnlimitedByDefault() throws Exception {
+        Validator validator = new Validator();
+
+        assertEquals(App.STATUS_ERRORS, validator.validate(TestResources.resource("invalid.xml")));
+        ErrorReport errorReport = validator.getValidationErrorHandler();
+        assertEquals(4, errorReport.getErrorCount());
+        assertFalse(errorReport.isStopped());
+    }
+
+    public void testWarningsBeyondLimitAreCountedNotKept() throws Exception {
+        ErrorReport errorReport = new ErrorReport(3, false);
+        for (int i = 0; i < 10; i++) {
+            errorReport.warning(new SAXParseException("'" + i + "' is unusual", null, "test.xml", i + 1, 1));
+        }
+
+        assertEquals(1, errorReport.getWarningGroups().size());
+        assertEquals(3, errorReport.getWarningGroups().get(0).getKept());
+        assertEquals(10, errorReport.getWarningCount());
+        assertEquals(7, errorReport.getSuppressed());
+        assertEquals(App.STATUS_WARNINGS, errorReport.exitStatus());
+    }
+
+    public void testRepeatedMessagesAreGrouped() throws Exception {
+        ErrorReport errorReport = new ErrorReport();
+        for (int i = 0; i < 1000; i++) {
+            errorReport.error(new SAXParseException("cvc-datatype-valid.1.2.1: 'r" + i + 
+                    "' is not a valid value for 'integer'.", null, "test.xml", i * 2 + 12, 5));
+        }
+        errorReport.error(new SAXParseException("The element type \"body\" must be terminated", null, "test.xml", 3000, 1));
+
+        List<MessageGroup> groups = errorReport.getErrorGroups();
+        assertEquals(2, groups.size());
+        MessageGroup group = groups.get(0);
+        assertEquals(1000, group.getCount());
+        assertEquals(12, group.getFirstLine());
+        assertEquals(2010, group.getLastLine());
+        assertEquals(14, group.getLine(1));
+        assertEquals("cvc-datatype-valid.1.2.1: '*' is not a valid value for 'integer'.", group.getMessage());
+        assertEquals("URI=test.xml: cvc-datatype-valid.1.2.1: '*' is not a valid value for 'integer'. " + 
+                "x1,000, first at line 12, last at line 2,010", group.toString());
+        assertEquals("URI=test.xml Line=3000: The element type \"body\" must be terminated", groups.get(1).toString());
+    }
+
+    public void testApostropheIsNotAValue() {
+        MessageGroup.Template use = MessageGroup.Template.parse("Don't use 'x' here");
+        MessageGroup.Template useOther = MessageGroup.Template.parse("Don't use 'y' here");
+        MessageGroup.Template put = MessageGroup.Template.parse("Don't put 'x' here");
+        assertEquals(use.getKey(), useOther.getKey());
+        assertFalse(use.getKey().equals(put.getKey()));
+
+        MessageGroup group = new MessageGroup("test.xml", use);
+        group.add(use, 1, 1, true);
+        assertEquals("Don't use 'x' here", group.getMessage());
+        group.add(useOther, 2, 1, true);
+        assertEquals("Don't use '*' here", group.getMessage());
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import junit.framework.TestCase;
+
+/**
+ * Tests for validating the repeated elements of a document in parallel
+ */
+public class FragmentValidatorTest extends TestCase {
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Files.createTempDirectory("fragment-validator-test").toFile();
+        FileUtils.copyFile(TestResources.resourceFile("note.xsd"), new File(dir, "note.xsd"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    /**
+     * Collects findings as "line:column: message", in any order
+     */
+    private static class Findings implements ReportWriter {
+        private final List<String> findings = Collections.synchronizedList(new ArrayList<String>());
+
+        public void finding(String document, Severity severity, String systemId, int line, int column, 
+                String message) {
+            findings.add(severity.label() + " " + line + ":" + column + ": " + message);
+        }
+
+        public void endDocument(String document, int status, ErrorReport errorReport, String exceptionMessage) {
+        }
+
+        public void close() {
+        }
+
+        List<String> sorted() {
+            List<String> sorted = new ArrayList<String>(findings);
+            Collections.sort(sorted);
+            return sorted;
+        }
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(dir, name);
+        FileUtils.writeStringToFile(file, content, "UTF-8");
+        return file;
+    }
+
+    /**
+     * A document big enough to need several batches, with a mistake in
+     * every hundredth note
+     */
+    private File notes(int count) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<notes xmlns=\"urn:jxmlvalidator:note\"\n");
+        sb.append("       xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n");
+        sb.append("       xsi:schemaLocation=\"urn:jxmlvalidator:note note.xsd\">\n");
+        for (int i = 0; i < count; i++) {
+            if (i % 100 == 7) {
+                sb.append("    <note id=\"n").append(i).append("\"><body>no to</body></note>\n");
+            } else if (i % 100 == 42) {
+                sb.append("  <!-- a <note> in a comment -->  <note\n        id=\"").append(i);
+                sb.append("\"><to>élève</to><body><![CDATA[<not a tag>]]></body></note>\n");
+            } else {
+                sb.append("    <note id=\"").append(i).append("\">\n        <to>Tove</to>\n");
+                sb.append("        <body>Don't forget me this weekend! &amp; ").append(i).append("</body>\n    </note>\n");
+            }
+        }
+        sb.append("</notes>\n");
+        return write("notes.xml", sb.toString());
+    }
+
+    private Findings validate(File file, String splitElement, int expectedStatus) {
+        Findings findings = new Findings();
+        Validator validator = new Validator();
+        validator.setReportWriter(findings);
+        validator.setSplitElement(splitElement);
+        validator.setDocumentThreads(3);
+        assertEquals(expectedStatus, validator.validate(file.getPath()));
+        return findings;
+    }
+
+    public void testSameFindingsAsWholeDocument() throws Exception {
+        File file = notes(5000);
+        List<String> whole = validate(file, null, App.STATUS_ERRORS).sorted();
+        List<String> split = validate(file, "note", App.STATUS_ERRORS).sorted();
+
+        assertEquals(150, whole.size());
+        assertEquals(whole, split);
+        assertEquals(whole, validate(file, "{urn:jxmlvalidator:note}note", App.STATUS_ERRORS).sorted());
+    }
+
+    public void testOtherNamespaceIsNotSplit() throws Exception {
+        // nothing to split off, so it is all skeleton
+        File file = notes(10);
+        List<String> whole = validate(file, null, App.STATUS_ERRORS).sorted();
+
+        assertEquals(3, whole.size());
+        assertEquals(whole, validate(file, "{urn:other}note", App.STATUS_ERRORS).sorted());
+    }
+
+    public void testLocalElementCannotBeSplit() throws Exception {
+        validate(notes(10), "to", App.STATUS_EXCEPTION);
+    }
+
+    public void testMalformedFragmentReportedAtItsLine() throws Exception {
+        File file = write("malformed.xml", "<?xml version=\"1.0\"?>\n" + 
+                "<notes xmlns=\"urn:jxmlvalidator:note\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" + 
+                "       xsi:schemaLocation=\"urn:jxmlvalidator:note note.xsd\">\n" + 
+                "<note id=\"1\"><to>a</to><body>b</body></note>\n" + 
+                "<note id=\"2\"><to>a</to><body>b</bod></note>\n" + 
+                "</notes>\n");
+        List<String> whole = validate(file, null, App.STATUS_EXCEPTION).sorted();
+        List<String> split = validate(file, "note", App.STATUS_EXCEPTION).sorted();
+
+        assertEquals(1, split.size());
+        assertTrue(split.get(0).startsWith("fatal 5:"));
+        assertEquals(whole, split);
+    }
+
+    public void testSkeletonIsValidated() throws Exception {
+        File file = write("skeleton.xml", "<?xml version=\"1.0\"?>\n" + 
+                "<notes xmlns=\"urn:jxmlvalidator:note\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" + 
+                "       xsi:schemaLocation=\"urn:jxmlvalidator:note note.xsd\" colour=\"red\">\n" + 
+                "<note id=\"1\"><to>a</to><body>b</body></note>\n" + 
+                "<stray/>\n" + 
+                "<note id=\"2\"><to>a</to><body>b</body></note>\n" + 
+                "text &amp; more\n" + 
+                "<note id=\"x\"><to>a</to><body>b</body></note>\n" + 
+                "</notes>\n");
+        List<String> whole = validate(file, null, App.STATUS_ERRORS).sorted();
+        List<String> split = validate(file, "note", App.STATUS_ERRORS).sorted();
+
+        assertEquals(5, whole.size());
+        assertEquals(whole, split);
+    }
+
+    public void testCdataEndingInBracket() throws Exception {
+        File file = write("cdata.xml", "<?xml version=\"1.0\"?>\n" + 
+                "<notes xmlns=\"urn:jxmlvalidator:note\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" + 
+                "       xsi:schemaLocation=\"urn:jxmlvalidator:note note.xsd\">\n" + 
+                "<note id=\"1\"><to>a</to><body><![CDATA[x]]]></body></note>\n" + 
+                "<note id=\"2\"><to>a</to><body><![CDATA[]]]]]></body></note>\n" + 
+                "<note id=\"3\"><body>no to</body></note>\n" + 
+                "</notes>\n");
+        List<String> whole = validate(file, null, App.STATUS_ERRORS).sorted();
+        List<String> split = validate(file, "note", App.STATUS_ERRORS).sorted();
+
+        assertEquals(1, split.size());
+        assertTrue(split.get(0).startsWith("error 6:"));
+        assertEquals(whole, split);
+    }
+
+    /**
+     * Notes with some markup between the first two and some after the root
+     * element, either of which the parser might not accept
+     */
+    private File outside(String markup, String trailing) throws IOException {
+        return write("between.xml", "<?xml version=\"1.0\"?>\n" + 
+                "<notes xmlns=\"urn:jxmlvalidator:note\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" + 
+                "       xsi:schemaLocation=\"urn:jxmlvalidator:note note.xsd\">\n" + 
+                "<note id=\"1\"><to>a</to><body>b</body></note>" + markup + "\n" + 
+                "<note id=\"2\"><to>a</to><body>b</body></note>\n" + 
+                "</notes>\n" + trailing);
+    }
+
+    public void testMalformedMarkupBetweenElements() throws Exception {
+        String[] markup = {"<!-- x -- y -->", "<!-- x --->", "<?xml version=\"1.0\"?>", "<?XmL x?>", 
+            "<?pi x?>]]>"};
+        for (String m : markup) {
+            File file = outside(m, "");
+            List<String> whole = validate(file, null, App.STATUS_EXCEPTION).sorted();
+            List<String> split = validate(file, "note", App.STATUS_EXCEPTION).sorted();
+
+            assertEquals(m, whole, split);
+        }
+    }
+
+    public void testMalformedMarkupAfterRoot() throws Exception {
+        String[] trailing = {"text", "<notes/>", "<!-- x -- y -->"};
+        for (String t : trailing) {
+            File file = outside("", t);
+            List<String> whole = validate(file, null, App.STATUS_EXCEPTION).sorted();
+            List<String> split = validate(file, "note", App.STATUS_EXCEPTION).sorted();
+
+            assertEquals(t, whole, split);
+        }
+    }
+
+    public void testUtf16IsNotSplittable() throws Exception {
+        byte[] utf16 = "<?xml version=\"1.0\" encoding=\"UTF-16\"?><a/>".getBytes("UTF-16");
+        assertNull(FragmentValidator.splittableEncoding(utf16, utf16.length));
+        byte[] latin1 = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><a/>".getBytes("ISO-8859-1");
+        assertEquals("ISO-8859-1", FragmentValidator.splittableEncoding(latin1, latin1.length).name());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import junit.framework.TestCase;
+
+/**
+ * Tests for the bounded, file backed history list
+ */
+public class HistoryTest extends TestCase {
+    private File dir;
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Files.createTempDirectory("history-test").toFile();
+        file = new File(dir, "history");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private int lines() throws Exception {
+        return FileUtils.readLines(file, "UTF-8").size();
+    }
+
+    public void testMostRecentFirstAndReload() throws Exception {
+        History history = new History(file, 10);
+        history.save("a.xml");
+        history.save("b.xml");
+        history.save("c.xml");
+        history.save("a.xml");
+        assertEquals(Arrays.asList("a.xml", "c.xml", "b.xml"), history.getHistoryList());
+
+        history.flush();
+        assertEquals(Arrays.asList("a.xml", "c.xml", "b.xml"), new History(file, 10).getHistoryList());
+    }
+
+    public void testBoundedAndCompacted() throws Exception {
+        History history = new History(file, 5);
+        for (int i = 0; i < 100; i++) {
+            history.save("doc" + i + ".xml");
+        }
+        List<String> list = history.getHistoryList();
+        assertEquals(Arrays.asList("doc99.xml", "doc98.xml", "doc97.xml", "doc96.xml", "doc95.xml"), list);
+
+        history.flush();
+        assertTrue("file should have been compacted", lines() <= 10);
+        assertEquals(list, new History(file, 5).getHistoryList());
+    }
+
+    public void testRepeatedSaveOnlyWrittenOnce() throws Exception {
+        History history = new History(file, 5);
+        for (int i = 0; i < 20; i++) {
+            history.save("same.xml");
+        }
+        history.flush();
+        assertEquals(1, lines());
+    }
+
+    public void testClear() throws Exception {
+        History history = new History(file, 5);
+        history.save("a.xml");
+        history.clear();
+        assertTrue(history.getHistoryList().isEmpty());
+
+        history.flush();
+        assertTrue(new History(file, 5).getHistoryList().isEmpty());
+    }
+}
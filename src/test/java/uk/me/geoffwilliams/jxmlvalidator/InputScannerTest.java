@@ -0,0 +1,112 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import junit.framework.TestCase;
+
+/**
+ * Tests for expanding directories and glob patterns into files
+ */
+public class InputScannerTest extends TestCase {
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Files.createTempDirectory("input-scanner-test").toFile();
+        for (String name : new String[] {"a.xml", "b.txt", "sub/c.xml", "sub/deeper/d.xml", "sub/e.XML"}) {
+            File file = new File(dir, name);
+            file.getParentFile().mkdirs();
+            FileUtils.writeStringToFile(file, "<a/>", "UTF-8");
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    /**
+     * Collects what a scan finds, as paths relative to the test directory
+     */
+    private static class Collector implements InputScanner.Callback {
+        private final String base;
+        private final List<String> found = new ArrayList<String>();
+        private final List<String> failed = new ArrayList<String>();
+
+        Collector(File base) {
+            this.base = base.getPath() + File.separator;
+        }
+
+        public void found(String filename) {
+            found.add(filename.substring(base.length()).replace(File.separatorChar, '/'));
+        }
+
+        public void failed(String filename, IOException ex) {
+            failed.add(filename);
+        }
+
+        List<String> sorted() {
+            Collections.sort(found);
+            return found;
+        }
+    }
+
+    private Collector scan(String input) throws Exception {
+        Collector collector = new Collector(dir);
+        new InputScanner().scan(input, collector);
+        return collector;
+    }
+
+    public void testDirectoryWalk() throws Exception {
+        assertTrue(InputScanner.needsScan(dir.getPath()));
+        assertEquals("[a.xml, sub/c.xml, sub/deeper/d.xml, sub/e.XML]", scan(dir.getPath()).sorted().toString());
+    }
+
+    public void testGlob() throws Exception {
+        String pattern = dir.getPath() + File.separator + "sub" + File.separator + "*.xml";
+        assertTrue(InputScanner.needsScan(pattern));
+        assertEquals("[sub/c.xml]", scan(pattern).sorted().toString());
+    }
+
+    public void testAnyDirectoriesIncludesTheBase() throws Exception {
+        String pattern = dir.getPath() + File.separator + "**" + File.separator + "*.xml";
+        assertEquals("[a.xml, sub/c.xml, sub/deeper/d.xml]", scan(pattern).sorted().toString());
+
+        pattern = dir.getPath() + File.separator + "sub" + File.separator + "**" + File.separator + "*.xml";
+        assertEquals("[sub/c.xml, sub/deeper/d.xml]", scan(pattern).sorted().toString());
+    }
+
+    public void testOptionalDirectoriesLeavesGroupsAlone() {
+        assertEquals("a/{**/,}*.xml", InputScanner.optionalDirectories("a/**/*.xml", "/"));
+        assertEquals("a/{b/**/c,d}/*.xml", InputScanner.optionalDirectories("a/{b/**/c,d}/*.xml", "/"));
+    }
+
+    public void testUnreadableInputReported() throws Exception {
+        Collector collector = scan(new File(dir, "missing").getPath());
+        assertTrue(collector.found.isEmpty());
+        assertEquals(1, collector.failed.size());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.FileUtils;
+import junit.framework.TestCase;
+
+/**
+ * Tests for the line offset index and showing the context of a line
+ */
+public class LineIndexTest extends TestCase {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Files.createTempDirectory("line-index-test").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private LineIndex index(String text, int spacing, int chunk) {
+        byte[] bytes = text.getBytes(UTF8);
+        LineIndex index = new LineIndex(spacing);
+        for (int off = 0; off < bytes.length; off += chunk) {
+            index.update(bytes, off, Math.min(chunk, bytes.length - off));
+        }
+        return index;
+    }
+
+    public void testLineEndingsCountedAsByTheParser() {
+        // LF, CRLF split across reads, lone CR, CR CR
+        String text = "a\nb\r\nc\rd\r\re";
+        for (int chunk = 1; chunk <= text.length(); chunk++) {
+            LineIndex index = index(text, 1, chunk);
+            assertEquals(6, index.getLines());
+            assertEquals(5, index.floor(5).getLine());
+            assertEquals(text.indexOf('d'), index.floor(4).getOffset());
+            assertEquals(text.indexOf('e'), index.floor(6).getOffset());
+        }
+    }
+
+    public void testSparse() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= 1000; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        LineIndex index = index(sb.toString(), 100, 64);
+        LineIndex.Entry entry = index.floor(500);
+
+        assertTrue(index.size() < 100);
+        assertTrue(entry.getLine() <= 500);
+        assertEquals(sb.indexOf("line " + entry.getLine() + "\n"), entry.getOffset());
+    }
+
+    public void testContextOfAnError() throws Exception {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<doc>\n");
+        for (int i = 3; i < 5000; i++) {
+            sb.append("  <line n=\"").append(i).append("\"/>\r\n");
+        }
+        sb.append("</doc>\n");
+        File file = new File(dir, "doc.xml");
+        FileUtils.writeStringToFile(file, sb.toString(), "UTF-8");
+        Validator validator = new Validator();
+        validator.setLineIndexed(true);
+        validator.validate(file.getPath());
+        LineIndex index = validator.getResult().getLineIndex();
+
+        String context = DocumentContext.around(file, index, 4000, 3, 1);
+        assertEquals("       3999 |   <line n=\"3999\"/>\n" + 
+                ">>     4000 |   <line n=\"4000\"/>\n" + 
+                "       4001 |   <line n=\"4001\"/>\n", context);
+    }
+
+    public void testNotIndexedWhenCompressed() throws Exception {
+        File file = new File(dir, "valid.xml.gz");
+        OutputStream os = new GZIPOutputStream(new FileOutputStream(file));
+        try {
+            os.write(FileUtils.readFileToByteArray(TestResources.resourceFile("valid.xml")));
+        } finally {
+            os.close();
+        }
+        Validator validator = new Validator();
+        validator.setLineIndexed(true);
+        validator.validate(file.getPath());
+
+        assertNull(validator.getResult().getLineIndex());
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+import junit.framework.TestCase;
+import org.w3c.dom.Document;
+
+/**
+ * Tests for the machine readable report writers
+ */
+public class ReportWriterTest extends TestCase {
+
+    private String validate(ReportWriter reportWriter, ByteArrayOutputStream os, String... names) throws Exception {
+        Validator validator = new Validator();
+        validator.setReportWriter(reportWriter);
+        for (String name : names) {
+            validator.validate(TestResources.resource(name));
+        }
+        reportWriter.close();
+        return os.toString("UTF-8");
+    }
+
+    public void testJsonLinesStreamsFindingsThenResult() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        String[] lines = validate(new JsonLinesReportWriter(os), os, "invalid.xml").split("\n");
+
+        assertEquals(5, lines.length);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(lines[i].startsWith("{\"type\":\"finding\""));
+        }
+        assertTrue(lines[0].contains("\"line\":5"));
+        assertTrue(lines[4].startsWith("{\"type\":\"document\""));
+        assertTrue(lines[4].contains("\"status\":" + App.STATUS_ERRORS));
+        assertTrue(lines[4].contains("\"error\":4"));
+    }
+
+    public void testJUnitHasOneTestcasePerDocument() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        validate(new JUnitReportWriter(os), os, "valid.xml", "invalid.xml", "malformed.xml");
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(
+                new ByteArrayInputStream(os.toByteArray()));
+        assertEquals(3, document.getElementsByTagName("testcase").getLength());
+        assertEquals(1, document.getElementsByTagName("failure").getLength());
+        assertEquals(1, document.getElementsByTagName("error").getLength());
+    }
+
+    public void testSarifUsesConstraintAsRule() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        String sarif = validate(new SarifReportWriter(os), os, "valid.xml", "invalid.xml");
+
+        assertTrue(sarif.startsWith("{\"$schema\""));
+        assertTrue(sarif.contains("\"ruleId\":\"cvc-complex-type.2.4.a\""));
+        assertTrue(sarif.contains("\"region\":{\"startLine\":13,\"startColumn\":15}"));
+        assertTrue(sarif.trim().endsWith("]}]}"));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import javax.xml.validation.Schema;
+import org.apache.commons.io.FileUtils;
+import junit.framework.TestCase;
+
+/**
+ * Tests for the compiled schema cache
+ */
+public class SchemaCacheTest extends TestCase {
+
+    public void testSecondLookupIsAHit() throws Exception {
+        SchemaCache cache = new SchemaCache(4);
+        List<String> locations = Collections.singletonList(new File(TestResources.resource("note.xsd")).toURI().toString());
+        Schema first = cache.getSchema(locations);
+        Schema second = cache.getSchema(locations);
+
+        assertSame(first, second);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        SchemaCache cache = new SchemaCache(1);
+        List<String> note = Collections.singletonList(new File(TestResources.resource("note.xsd")).toURI().toString());
+        List<String> hinted = Collections.emptyList();
+        cache.getSchema(note);
+        cache.getSchema(hinted);
+        cache.getSchema(note);
+
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.getMisses());
+    }
+
+    public void testResolversKeptApart() throws Exception {
+        SchemaCache cache = new SchemaCache(4);
+        List<String> note = Collections.singletonList(new File(TestResources.resource("note.xsd")).toURI().toString());
+        SchemaResolver first = new SchemaResolver(null, null, true);
+        SchemaResolver second = new SchemaResolver(null, null, true);
+
+        assertEquals(cache.cacheKey(note, first), cache.cacheKey(note, first));
+        assertFalse(cache.cacheKey(note, first).equals(cache.cacheKey(note, second)));
+    }
+
+    public void testValidatorUsesCache() throws Exception {
+        SchemaCache cache = new SchemaCache(4);
+        Validator validator = new Validator();
+        validator.setSchemaCache(cache);
+
+        assertEquals(App.STATUS_OK, validator.validate(TestResources.resource("valid.xml")));
+        assertFalse(App.STATUS_OK == validator.validate(TestResources.resource("invalid.xml")));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    /**
+     * Write a root schema that takes any element from another namespace, the
+     * other namespace's schema, and a document with the other namespace's
+     * hint on the nested element
+     */
+    private File nestedHint(File dir, String item) throws Exception {
+        FileUtils.writeStringToFile(new File(dir, "a.xsd"), 
+                "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:a' "
+                + "elementFormDefault='qualified'><xs:element name='root'><xs:complexType><xs:sequence>"
+                + "<xs:any namespace='##other' processContents='strict'/>"
+                + "</xs:sequence></xs:complexType></xs:element></xs:schema>", "UTF-8");
+        FileUtils.writeStringToFile(new File(dir, "b.xsd"), 
+                "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:b' "
+                + "elementFormDefault='qualified'><xs:element name='item' type='xs:int'/></xs:schema>", "UTF-8");
+        File document = new File(dir, item + ".xml");
+        FileUtils.writeStringToFile(document, 
+                "<root xmlns='urn:a' xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance' "
+                + "xsi:schemaLocation='urn:a a.xsd'><item xmlns='urn:b' xsi:schemaLocation='urn:b b.xsd'>" 
+                + item + "</item></root>", "UTF-8");
+        return document;
+    }
+
+    public void testNestedHintIsFollowed() throws Exception {
+        File dir = Files.createTempDirectory("schema-cache-test").toFile();
+        try {
+            Validator validator = new Validator();
+            validator.setSchemaCache(new SchemaCache(4));
+
+            assertEquals(App.STATUS_OK, validator.validate(nestedHint(dir, "5").getPath()));
+            assertEquals(App.STATUS_ERRORS, validator.validate(nestedHint(dir, "five").getPath()));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+}
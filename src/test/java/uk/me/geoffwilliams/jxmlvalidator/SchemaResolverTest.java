@@ -0,0 +1,149 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import javax.xml.transform.stream.StreamSource;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import junit.framework.TestCase;
+
+/**
+ * Tests for resolving schemas through a catalog and the persistent schema
+ * cache, and for offline mode
+ */
+public class SchemaResolverTest extends TestCase {
+    private static final String REMOTE_NOTE = "http://schemas.example.com/note/note.xsd";
+
+    private File dir;
+    private HttpServer server;
+    private int requests;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Files.createTempDirectory("schema-resolver-test").toFile();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requests++;
+                byte[] bytes;
+                try {
+                    bytes = FileUtils.readFileToByteArray(TestResources.resourceFile("note.xsd"));
+                } catch (Exception ex) {
+                    throw new IOException(ex);
+                }
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(bytes);
+                os.close();
+            }
+        });
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.stop(0);
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    private String read(StreamSource source) throws IOException {
+        InputStream is = source.getInputStream();
+        if (is == null) {
+            is = new URL(source.getSystemId()).openStream();
+        }
+        try {
+            return IOUtils.toString(is, "UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+    private XmlCatalog catalog() throws Exception {
+        FileUtils.copyFile(TestResources.resourceFile("note.xsd"), new File(dir, "mirror/note/note.xsd"));
+        File file = new File(dir, "catalog.xml");
+        FileUtils.writeStringToFile(file, "<catalog xmlns=\"urn:oasis:names:tc:entity:xmlns:xml:catalog\">\n" +
+                "<rewriteSystem systemIdStartString=\"http://schemas.example.com/\" rewritePrefix=\"mirror/\"/>\n" +
+                "</catalog>\n", "UTF-8");
+        return new XmlCatalog(Arrays.asList(file));
+    }
+
+    private File document() throws Exception {
+        File document = new File(dir, "remote.xml");
+        FileUtils.writeStringToFile(document, FileUtils.readFileToString(TestResources.resourceFile("valid.xml"), "UTF-8")
+                .replace("note.xsd\"", REMOTE_NOTE + "\""), "UTF-8");
+        return document;
+    }
+
+    public void testOfflineMissFails() throws Exception {
+        SchemaResolver resolver = new SchemaResolver(null, null, true);
+        try {
+            resolver.resolveSource(url("/note.xsd"));
+            fail("offline mode should not fetch");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("Offline mode"));
+        }
+        assertEquals(0, requests);
+    }
+
+    public void testCatalogMapsRemoteSchema() throws Exception {
+        SchemaResolver resolver = new SchemaResolver(catalog(), null, true);
+        String mapped = new File(dir, "mirror/note/note.xsd").toURI().toString();
+
+        assertEquals(mapped, resolver.map(REMOTE_NOTE));
+        assertEquals(mapped, resolver.resolveSource(REMOTE_NOTE).getSystemId());
+    }
+
+    public void testOfflineValidationThroughCatalog() throws Exception {
+        Validator validator = new Validator();
+        validator.setSchemaResolver(new SchemaResolver(catalog(), null, true));
+        assertEquals(App.STATUS_OK, validator.validate(document().getPath()));
+
+        validator = new Validator();
+        validator.setSchemaResolver(new SchemaResolver(null, null, true));
+        assertFalse(App.STATUS_OK == validator.validate(document().getPath()));
+    }
+
+    public void testFetchedSchemasReusedFromCache() throws Exception {
+        File cacheDir = new File(dir, "cache");
+        String expected = FileUtils.readFileToString(TestResources.resourceFile("note.xsd"), "UTF-8");
+        assertEquals(expected, read(new SchemaResolver(null, cacheDir, false).resolveSource(url("/note.xsd"))));
+        assertEquals(1, requests);
+
+        // a new resolver, offline, finds it in the cache
+        SchemaResolver offline = new SchemaResolver(null, cacheDir, true);
+        assertEquals(expected, read(offline.resolveSource(url("/note.xsd"))));
+        assertTrue(offline.map(url("/note.xsd")).startsWith("file:"));
+        assertEquals(1, requests);
+    }
+}
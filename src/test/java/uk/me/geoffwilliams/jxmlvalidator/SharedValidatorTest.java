@@ -0,0 +1,111 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import junit.framework.TestCase;
+
+/**
+ * Tests for sharing one validator between threads and pooling parsers
+ */
+public class SharedValidatorTest extends TestCase {
+    private static final int THREADS = 4;
+    private static final int VALIDATIONS = 200;
+
+    private void validateConcurrently(boolean streaming) throws Exception {
+        ValidatorPool pool = new ValidatorPool(4, THREADS);
+        Validator settings = new Validator();
+        settings.setValidatorPool(pool);
+        settings.setStreaming(streaming);
+        final SharedValidator validator = new SharedValidator(settings);
+        final String valid = TestResources.resource("valid.xml");
+        final String invalid = TestResources.resource("invalid.xml");
+        final String malformed = TestResources.resource("malformed.xml");
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<ValidationResult>> results = new ArrayList<Future<ValidationResult>>();
+        try {
+            for (int i = 0; i < VALIDATIONS; i++) {
+                final String uri = i % 3 == 0 ? valid : i % 3 == 1 ? invalid : malformed;
+                results.add(executor.submit(new Callable<ValidationResult>() {
+                    public ValidationResult call() {
+                        return validator.validate(uri);
+                    }
+                }));
+            }
+            for (int i = 0; i < VALIDATIONS; i++) {
+                ValidationResult result = results.get(i).get();
+                if (i % 3 == 0) {
+                    assertTrue(result.isValid());
+                } else if (i % 3 == 1) {
+                    assertEquals(App.STATUS_ERRORS, result.getStatus());
+                    assertEquals(4, result.getErrorCount());
+                    assertEquals(invalid, result.getDocument());
+                } else {
+                    assertEquals(App.STATUS_EXCEPTION, result.getStatus());
+                    assertNotNull(result.getExceptionMessage());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // parsers are reused, including after a document that failed
+        assertTrue(pool.getCreated() <= THREADS);
+        assertEquals(VALIDATIONS, pool.getCreated() + pool.getReused());
+    }
+
+    public void testStreamingConcurrently() throws Exception {
+        validateConcurrently(true);
+    }
+
+    public void testDomConcurrently() throws Exception {
+        validateConcurrently(false);
+    }
+
+    public void testResultIsUnaffectedByLaterValidations() throws Exception {
+        Validator validator = new Validator();
+        validator.validate(TestResources.resource("invalid.xml"));
+        ValidationResult result = validator.getResult();
+        validator.validate(TestResources.resource("valid.xml"));
+
+        assertEquals(App.STATUS_ERRORS, result.getStatus());
+        assertFalse(result.getError().isEmpty());
+        assertTrue(validator.getResult().isValid());
+        try {
+            result.getError().clear();
+            fail("result should not be modifiable");
+        } catch (UnsupportedOperationException ex) {
+            // expected
+        }
+    }
+
+    public void testMissingFile() {
+        ValidationResult result = new SharedValidator(new Validator()).validate("no-such-file.xml");
+
+        assertEquals(App.STATUS_EXCEPTION, result.getStatus());
+        assertFalse(result.hasReport());
+        assertTrue(result.getError().isEmpty());
+    }
+}
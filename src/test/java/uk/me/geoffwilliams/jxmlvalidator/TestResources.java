@@ -0,0 +1,41 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+
+/**
+ * Helpers shared by the tests
+ */
+final class TestResources {
+
+    private TestResources() {
+    }
+
+    /**
+     * Absolute path of a file in src/test/resources
+     */
+    static String resource(String name) throws Exception {
+        return resourceFile(name).getAbsolutePath();
+    }
+
+    static File resourceFile(String name) throws Exception {
+        return new File(TestResources.class.getResource("/" + name).toURI());
+    }
+}
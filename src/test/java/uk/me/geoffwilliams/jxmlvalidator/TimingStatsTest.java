@@ -0,0 +1,83 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+import org.apache.commons.io.FileUtils;
+import junit.framework.TestCase;
+
+/**
+ * Tests for the per-document timings and run statistics
+ */
+public class TimingStatsTest extends TestCase {
+
+    public void testPercentileIsNearestRank() {
+        long[] sorted = new long[100];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i + 1;
+        }
+        assertEquals(50, TimingStats.percentile(sorted, 50));
+        assertEquals(95, TimingStats.percentile(sorted, 95));
+        assertEquals(99, TimingStats.percentile(sorted, 99));
+        assertEquals(7, TimingStats.percentile(new long[] {7}, 99));
+        assertEquals(0, TimingStats.percentile(new long[0], 50));
+    }
+
+    public void testValidatorRecordsTimings() throws Exception {
+        TimingStats stats = new TimingStats();
+        Validator validator = new Validator();
+        validator.setTimingStats(stats);
+        String valid = TestResources.resource("valid.xml");
+
+        assertEquals(App.STATUS_OK, validator.validate(valid));
+        Timings timings = validator.getTimings();
+        assertEquals(App.STATUS_OK, timings.getStatus());
+        assertEquals(new File(valid).length(), timings.getBytes());
+        assertTrue(timings.getTotalNanos() >= timings.getSchemaNanos() + timings.getParseNanos());
+
+        // copies made for batch workers share the statistics
+        new Validator(validator).validate(TestResources.resource("invalid.xml"));
+        TimingStats.Summary summary = stats.summary();
+        assertEquals(2, summary.getDocuments());
+        assertEquals(new File(valid).length() + new File(TestResources.resource("invalid.xml")).length(), summary.getBytes());
+    }
+
+    public void testOnlyASampleIsKept() throws Exception {
+        TimingStats stats = new TimingStats(100);
+        for (int i = 0; i < 1000; i++) {
+            Timings timings = new Timings("doc" + i + ".xml");
+            timings.finish(App.STATUS_OK);
+            stats.add(timings);
+        }
+        assertEquals(1000, stats.size());
+        assertEquals(1000, stats.summary().getDocuments());
+        assertTrue(stats.isSampled());
+        assertTrue(stats.summary().getP99Nanos() > 0);
+
+        File json = File.createTempFile("timings", ".json");
+        try {
+            stats.writeJson(json);
+            String written = FileUtils.readFileToString(json, "UTF-8");
+            assertTrue(written.contains("\"sampled\":true"));
+            assertEquals(100, written.split("\"uri\":").length - 1);
+        } finally {
+            json.delete();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import org.apache.commons.io.FileUtils;
+import junit.framework.TestCase;
+
+/**
+ * Tests for skipping unchanged documents with the validation index
+ */
+public class ValidationIndexTest extends TestCase {
+    private File dir;
+    private File indexFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Files.createTempDirectory("validation-index-test").toFile();
+        for (String name : new String[] {"note.xsd", "valid.xml", "invalid.xml"}) {
+            FileUtils.copyFile(TestResources.resourceFile(name), new File(dir, name));
+        }
+        indexFile = new File(dir, "index.tsv");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    /**
+     * Validate with a fresh index and schema cache, as a new run would
+     * @return bytes read, 0 if the document was skipped
+     */
+    private long run(String name, int expectedStatus, boolean force) throws Exception {
+        return run(name, expectedStatus, force, null);
+    }
+
+    private long run(String name, int expectedStatus, boolean force, ReportWriter reportWriter) throws Exception {
+        ValidationIndex validationIndex = new ValidationIndex(indexFile);
+        Validator validator = new Validator();
+        validator.setReportWriter(reportWriter);
+        validator.setSchemaCache(new SchemaCache(4));
+        validator.setValidationIndex(validationIndex);
+        validator.setForce(force);
+        try {
+            assertEquals(expectedStatus, validator.validate(new File(dir, name).getPath()));
+        } finally {
+            validationIndex.close();
+        }
+        return validator.getTimings().getBytes();
+    }
+
+    public void testUnchangedDocumentIsSkipped() throws Exception {
+        assertTrue(run("valid.xml", App.STATUS_OK, false) > 0);
+        assertEquals(0, run("valid.xml", App.STATUS_OK, false));
+        assertTrue(run("invalid.xml", App.STATUS_ERRORS, false) > 0);
+        assertEquals(0, run("invalid.xml", App.STATUS_ERRORS, false));
+        assertTrue(run("invalid.xml", App.STATUS_ERRORS, true) > 0);
+    }
+
+    public void testSkippedDocumentIsStillReported() throws Exception {
+        String[] reports = new String[2];
+        for (int i = 0; i < reports.length; i++) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            ReportWriter reportWriter = new JsonLinesReportWriter(os);
+            long bytes = run("invalid.xml", App.STATUS_ERRORS, false, reportWriter);
+            assertEquals(i == 0, bytes > 0);
+            reportWriter.close();
+            reports[i] = os.toString("UTF-8");
+        }
+
+        String[] lines = reports[1].split("\n");
+        assertEquals(5, lines.length);
+        assertTrue(lines[4].contains("\"error\":4"));
+        assertEquals(reports[0], reports[1]);
+    }
+
+    public void testKeptFindingsAreCapped() throws Exception {
+        StringBuilder sb = new StringBuilder("<notes xmlns=\"urn:jxmlvalidator:note\" "
+                + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" "
+                + "xsi:schemaLocation=\"urn:jxmlvalidator:note note.xsd\">\n");
+        for (int i = 0; i < ErrorReport.MAX_KEPT_FINDINGS + 100; i++) {
+            sb.append("<note id=\"").append(i).append("\"><body>no to</body></note>\n");
+        }
+        sb.append("</notes>\n");
+        FileUtils.writeStringToFile(new File(dir, "many.xml"), sb.toString(), "UTF-8");
+        run("many.xml", App.STATUS_ERRORS, false);
+
+        ValidationIndex validationIndex = new ValidationIndex(indexFile);
+        ValidationIndex.Entry entry = validationIndex.lookup(new File(dir, "many.xml"));
+        assertEquals(ErrorReport.MAX_KEPT_FINDINGS, entry.getFindings().size());
+        assertEquals(100, entry.getDroppedFindings());
+        assertEquals(0, run("many.xml", App.STATUS_ERRORS, false));
+    }
+
+    public void testChangesAreNoticed() throws Exception {
+        run("valid.xml", App.STATUS_OK, false);
+
+        // touched but the same content
+        File valid = new File(dir, "valid.xml");
+        valid.setLastModified(valid.lastModified() - 10000);
+        assertEquals(0, run("valid.xml", App.STATUS_OK, false));
+
+        // schema edited
+        File schema = new File(dir, "note.xsd");
+        FileUtils.writeStringToFile(schema, FileUtils.readFileToString(schema, "UTF-8") + "<!-- edited -->\n", "UTF-8");
+        assertTrue(run("valid.xml", App.STATUS_OK, false) > 0);
+
+        // document edited
+        FileUtils.writeStringToFile(valid, FileUtils.readFileToString(valid, "UTF-8").replace("Tove", "<bad/>"), "UTF-8");
+        assertTrue(run("valid.xml", App.STATUS_ERRORS, false) > 0);
+    }
+
+    public void testCompactKeepsLatestRecords() throws Exception {
+        run("valid.xml", App.STATUS_OK, true);
+        run("valid.xml", App.STATUS_OK, true);
+        run("invalid.xml", App.STATUS_ERRORS, true);
+        assertTrue(new File(dir, "invalid.xml").delete());
+
+        ValidationIndex validationIndex = new ValidationIndex(indexFile);
+        assertEquals(2, validationIndex.size());
+        ValidationIndex.Entry entry = validationIndex.lookup(new File(dir, "valid.xml"));
+        assertEquals(ValidationIndex.hash(new File(dir, "valid.xml")), entry.getContentHash());
+        validationIndex.compact();
+        assertEquals(1, validationIndex.size());
+        assertEquals(2, FileUtils.readLines(indexFile, "UTF-8").size());
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLEncoder;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import junit.framework.TestCase;
+
+/**
+ * Tests for the HTTP validation server
+ */
+public class ValidationServerTest extends TestCase {
+    private ValidationServer server;
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private ValidationServer start(int threads, int queueDepth, boolean allowUri) throws IOException {
+        server = new ValidationServer(new Validator(), 0, threads, queueDepth, allowUri);
+        server.start();
+        return server;
+    }
+
+    private HttpURLConnection request(String path, String resource) throws Exception {
+        byte[] content = resource == null ? null : FileUtils.readFileToByteArray(TestResources.resourceFile(resource));
+        return post(path, content);
+    }
+
+    private HttpURLConnection post(String path, byte[] content) throws Exception {
+        URL url = new URL("http://localhost:" + server.getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (content != null) {
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            OutputStream os = connection.getOutputStream();
+            try {
+                os.write(content);
+            } finally {
+                os.close();
+            }
+        }
+        return connection;
+    }
+
+    private String body(HttpURLConnection connection) throws IOException {
+        InputStream is = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream();
+        try {
+            return IOUtils.toString(is, "UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * A base for relative schema locations, only allowed with allowUri
+     */
+    private String systemId() throws Exception {
+        return "?systemId=" + URLEncoder.encode(TestResources.resourceFile("valid.xml").toURI().toString(), "UTF-8");
+    }
+
+    public void testValidAndInvalidDocuments() throws Exception {
+        start(2, 4, true);
+        HttpURLConnection valid = request("/validate" + systemId(), "valid.xml");
+        assertEquals(200, valid.getResponseCode());
+        assertTrue(body(valid).contains("\"valid\":true"));
+
+        HttpURLConnection invalid = request("/validate" + systemId(), "invalid.xml");
+        assertEquals(422, invalid.getResponseCode());
+        String json = body(invalid);
+        assertTrue(json.contains("\"valid\":false"));
+        assertTrue(json.contains("\"status\":" + App.STATUS_ERRORS));
+
+        HttpURLConnection health = request("/health", null);
+        assertEquals(200, health.getResponseCode());
+    }
+
+    public void testListensOnLoopbackOnly() throws Exception {
+        start(1, 1, false);
+        assertTrue(server.getAddress().getAddress().isLoopbackAddress());
+    }
+
+    public void testUriAndSystemIdNeedAllowUri() throws Exception {
+        start(1, 4, false);
+        String uri = "?uri=" + URLEncoder.encode(TestResources.resource("valid.xml"), "UTF-8");
+        assertEquals(403, request("/validate" + uri, null).getResponseCode());
+        assertEquals(403, request("/validate" + systemId(), "valid.xml").getResponseCode());
+        server.stop();
+
+        start(1, 4, true);
+        assertEquals(200, request("/validate" + uri, null).getResponseCode());
+    }
+
+    /**
+     * Body whose only content is an external entity
+     */
+    private byte[] entity(File file) throws Exception {
+        return ("<!DOCTYPE a [<!ENTITY e SYSTEM \"" + file.toURI() + "\">]><a>&e;</a>").getBytes("UTF-8");
+    }
+
+    public void testExternalEntitiesNeedAllowUri() throws Exception {
+        File present = File.createTempFile("present", ".txt");
+        File missing = new File(present.getParentFile(), "missing-" + present.getName());
+        try {
+            start(1, 4, false);
+            String json = body(post("/validate", entity(present)));
+            assertTrue(json.contains("accessExternalDTD"));
+            // the same answer whether or not the file is there
+            assertEquals(json, body(post("/validate", entity(missing))).replace(missing.getName(), 
+                    present.getName()));
+            server.stop();
+
+            start(1, 4, true);
+            assertFalse(body(post("/validate", entity(present))).contains("accessExternalDTD"));
+        } finally {
+            present.delete();
+        }
+    }
+
+    public void testBusyWhenQueueIsFull() throws Exception {
+        start(1, 1, false);
+        // two requests whose bodies never finish arriving: one holds the
+        // worker, the other the only queue slot
+        Socket[] stalled = new Socket[2];
+        try {
+            for (int i = 0; i < stalled.length; i++) {
+                stalled[i] = new Socket("localhost", server.getPort());
+                OutputStream os = stalled[i].getOutputStream();
+                os.write(("POST /validate HTTP/1.1\r\nHost: localhost\r\nContent-Length: 1000\r\n\r\n<notes").getBytes("UTF-8"));
+                os.flush();
+            }
+            HttpURLConnection busy = null;
+            for (int attempt = 0; attempt < 50; attempt++) {
+                busy = request("/validate", "valid.xml");
+                if (busy.getResponseCode() == 503) {
+                    break;
+                }
+                Thread.sleep(100);
+            }
+            assertEquals(503, busy.getResponseCode());
+            assertEquals("1", busy.getHeaderField("Retry-After"));
+        } finally {
+            for (Socket socket : stalled) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+import junit.framework.TestCase;
+
+/**
+ * Tests for progress reporting and cancelling a validation
+ */
+public class ValidatorProgressTest extends TestCase {
+
+    public void testProgressReachesFileSize() throws Exception {
+        final File file = TestResources.resourceFile("valid.xml");
+        final long[] last = {0, 0};
+        Validator validator = new Validator();
+        validator.setProgressListener(new ProgressListener() {
+            public void progress(long bytesRead, long totalBytes) {
+                assertTrue(bytesRead > last[0]);
+                last[0] = bytesRead;
+                last[1] = totalBytes;
+            }
+        });
+
+        assertEquals(App.STATUS_OK, validator.validate(file.getPath()));
+        assertEquals(file.length(), last[0]);
+        assertEquals(file.length(), last[1]);
+    }
+
+    public void testInterruptCancels() throws Exception {
+        Validator validator = new Validator();
+        validator.setProgressListener(new ProgressListener() {
+            public void progress(long bytesRead, long totalBytes) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            assertEquals(App.STATUS_EXCEPTION, validator.validate(TestResources.resourceFile("valid.xml").getPath()));
+            assertEquals("IO error: validation cancelled", validator.getExceptionMessage());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}
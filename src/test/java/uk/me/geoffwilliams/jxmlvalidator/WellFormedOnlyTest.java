@@ -0,0 +1,60 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.ByteArrayInputStream;
+import junit.framework.TestCase;
+
+/**
+ * Tests for checking documents are well-formed without validating them
+ */
+public class WellFormedOnlyTest extends TestCase {
+
+    private Validator validator() {
+        Validator validator = new Validator();
+        validator.setWellFormedOnly(true);
+        return validator;
+    }
+
+    public void testInvalidButWellFormed() throws Exception {
+        Validator validator = validator();
+
+        assertEquals(App.STATUS_OK, validator.validate(TestResources.resource("invalid.xml")));
+        assertTrue(validator.getValidationErrorHandler().isValid());
+    }
+
+    public void testMalformed() throws Exception {
+        Validator validator = validator();
+
+        assertEquals(App.STATUS_EXCEPTION, validator.validate(TestResources.resource("malformed.xml")));
+        assertEquals(1, validator.getValidationErrorHandler().getFatalCount());
+    }
+
+    public void testExternalDtdAndEntitiesNotLoaded() throws Exception {
+        String document = "<?xml version=\"1.0\"?>\n" + 
+                "<!DOCTYPE doc SYSTEM \"http://no-such-host.invalid/doc.dtd\" [\n" + 
+                "  <!ENTITY external SYSTEM \"file:///no/such/file.xml\">\n" + 
+                "]>\n" + 
+                "<doc xmlns=\"urn:test\">&external;</doc>\n";
+        Validator validator = validator();
+
+        assertEquals(App.STATUS_OK, validator.validate(new ByteArrayInputStream(document.getBytes("UTF-8")), 
+                "file:/tmp/doc.xml"));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * JXMLValidator -- command line XML tool to validate files to schema
+ * Copyright (C) 2013  Geoff Williams<geoff@geoffwilliams.me.uk>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package uk.me.geoffwilliams.jxmlvalidator;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.apache.commons.io.FileUtils;
+import junit.framework.TestCase;
+
+/**
+ * Tests for reading OASIS XML catalogs
+ */
+public class XmlCatalogTest extends TestCase {
+    private static final String HEADER = "<?xml version=\"1.0\"?>\n" +
+            "<catalog xmlns=\"urn:oasis:names:tc:entity:xmlns:xml:catalog\">\n";
+    private static final String FOOTER = "</catalog>\n";
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Files.createTempDirectory("xml-catalog-test").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private File catalog(String name, String entries) throws Exception {
+        File file = new File(dir, name);
+        FileUtils.writeStringToFile(file, HEADER + entries + FOOTER, "UTF-8");
+        return file;
+    }
+
+    private String local(String name) {
+        return new File(dir, name).toURI().toString();
+    }
+
+    public void testEarlierEntriesAndFilesWin() throws Exception {
+        File first = catalog("first.xml", 
+                "<system systemId=\"http://example.com/a.xsd\" uri=\"first-a.xsd\"/>\n" +
+                "<system systemId=\"http://example.com/a.xsd\" uri=\"first-a-again.xsd\"/>\n" +
+                "<public publicId=\"-//EXAMPLE//A\" uri=\"first-public.dtd\"/>\n");
+        File second = catalog("second.xml", 
+                "<system systemId=\"http://example.com/a.xsd\" uri=\"second-a.xsd\"/>\n" +
+                "<system systemId=\"http://example.com/b.xsd\" uri=\"second-b.xsd\"/>\n" +
+                "<public publicId=\"-//EXAMPLE//A\" uri=\"second-public.dtd\"/>\n");
+        XmlCatalog catalog = new XmlCatalog(Arrays.asList(first, second));
+
+        assertEquals(local("first-a.xsd"), catalog.resolveSystem("http://example.com/a.xsd"));
+        assertEquals(local("second-b.xsd"), catalog.resolveSystem("http://example.com/b.xsd"));
+        assertEquals(local("first-public.dtd"), catalog.resolvePublic("-//EXAMPLE//A"));
+        assertNull(catalog.resolveSystem("http://example.com/c.xsd"));
+    }
+
+    public void testRewriteAndSuffix() throws Exception {
+        XmlCatalog catalog = new XmlCatalog(Arrays.asList(catalog("catalog.xml", 
+                "<rewriteSystem systemIdStartString=\"http://example.com/\" rewritePrefix=\"mirror/\"/>\n" +
+                "<rewriteSystem systemIdStartString=\"http://example.com/deep/\" rewritePrefix=\"deep/\"/>\n" +
+                "<rewriteURI uriStartString=\"urn:example:\" rewritePrefix=\"urn/\"/>\n" +
+                "<group xml:base=\"suffixes/\">\n" +
+                "<systemSuffix systemIdSuffix=\"/common.xsd\" uri=\"common.xsd\"/>\n" +
+                "</group>\n")));
+
+        assertEquals(local("mirror/a.xsd"), catalog.resolve("http://example.com/a.xsd"));
+        // longest prefix wins
+        assertEquals(local("deep/b.xsd"), catalog.resolve("http://example.com/deep/b.xsd"));
+        assertEquals(local("urn/note"), catalog.resolve("urn:example:note"));
+        assertEquals(local("suffixes/common.xsd"), catalog.resolve("http://elsewhere.org/v1/common.xsd"));
+    }
+
+    public void testNextCatalogBeforeLaterFiles() throws Exception {
+        catalog("next.xml", 
+                "<system systemId=\"http://example.com/a.xsd\" uri=\"next-a.xsd\"/>\n" +
+                "<rewriteSystem systemIdStartString=\"http://example.com/\" rewritePrefix=\"next/\"/>\n");
+        File first = catalog("first.xml", 
+                "<system systemId=\"http://example.com/b.xsd\" uri=\"first-b.xsd\"/>\n" +
+                "<nextCatalog catalog=\"next.xml\"/>\n");
+        File second = catalog("second.xml", 
+                "<system systemId=\"http://example.com/a.xsd\" uri=\"second-a.xsd\"/>\n" +
+                "<rewriteSystem systemIdStartString=\"http://example.com/long/\" rewritePrefix=\"second/\"/>\n");
+        XmlCatalog catalog = new XmlCatalog(Arrays.asList(first, second));
+
+        assertEquals(local("first-b.xsd"), catalog.resolveSystem("http://example.com/b.xsd"));
+        assertEquals(local("next-a.xsd"), catalog.resolveSystem("http://example.com/a.xsd"));
+        // the first catalog with a match decides, even if a later one has a longer prefix
+        assertEquals(local("next/long/c.xsd"), catalog.resolveSystem("http://example.com/long/c.xsd"));
+    }
+
+    public void testCatalogDtdNotFetched() throws Exception {
+        File file = new File(dir, "catalog.xml");
+        FileUtils.writeStringToFile(file, "<?xml version=\"1.0\"?>\n" +
+                "<!DOCTYPE catalog PUBLIC \"-//OASIS//DTD XML Catalogs V1.1//EN\" " +
+                "\"http://127.0.0.1:1/catalog.dtd\">\n" + HEADER.substring(HEADER.indexOf('\n') + 1) +
+                "<system systemId=\"http://example.com/a.xsd\" uri=\"a.xsd\"/>\n" + FOOTER, "UTF-8");
+
+        assertEquals(local("a.xsd"), new XmlCatalog(Arrays.asList(file)).resolve("http://example.com/a.xsd"));
+    }
+}